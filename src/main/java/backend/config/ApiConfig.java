@@ -19,13 +19,17 @@ import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InjectionPoint;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Scope;
 import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.ipc.netty.resources.PoolResources;
 
 import javax.net.ssl.SSLException;
 import java.io.IOException;
@@ -55,8 +59,63 @@ public class ApiConfig {
         return objectMapper.writerWithDefaultPrettyPrinter();
     }
 
+    /**
+     * Connection pool of monitoring checks, sized per target host.
+     */
+    @Bean(destroyMethod = "dispose")
+    public InstrumentedPoolResources checkPoolResources(
+            @Value("${http.check.pool.max.connections.per.host: 64}") int maxConnections,
+            @Value("${http.check.pool.acquire.timeout.millis: 3000}") long acquireTimeout,
+            @Value("${http.check.pool.max.idle.seconds: 30}") int maxIdleSeconds) {
+        return new InstrumentedPoolResources(PoolResources.fixed("check", maxConnections, acquireTimeout), maxIdleSeconds,
+                true);
+    }
+
+    /**
+     * Connection pool of auth server calls, kept apart from checks so a burst of checks cannot take its connections.
+     */
+    @Bean(destroyMethod = "dispose")
+    public InstrumentedPoolResources authPoolResources(
+            @Value("${http.auth.pool.max.connections.per.host: 32}") int maxConnections,
+            @Value("${http.auth.pool.acquire.timeout.millis: 1000}") long acquireTimeout,
+            @Value("${http.auth.pool.max.idle.seconds: 60}") int maxIdleSeconds) {
+        return new InstrumentedPoolResources(PoolResources.fixed("auth", maxConnections, acquireTimeout), maxIdleSeconds,
+                false);
+    }
+
+    /**
+     * Client of monitoring checks.
+     */
+    @Bean
+    @Primary
+    public WebClient webClient(@Qualifier("checkPoolResources") InstrumentedPoolResources checkPoolResources,
+                               @Value("${http.check.connect.timeout.millis: 2000}") int connectTimeout,
+                               @Value("${http.check.read.timeout.millis: 5000}") int readTimeout) throws SSLException {
+        return buildWebClient(checkPoolResources, connectTimeout, readTimeout)
+                .mutate()
+                .filter(checkPoolResources.timingIdFilter())
+                .build();
+    }
+
+    /**
+     * Client of auth server calls.
+     */
     @Bean
-    public WebClient webClient() throws SSLException {
+    public WebClient authWebClient(@Qualifier("authPoolResources") InstrumentedPoolResources authPoolResources,
+                                   @Value("${http.auth.connect.timeout.millis: 2000}") int connectTimeout,
+                                   @Value("${http.auth.read.timeout.millis: 5000}") int readTimeout) throws SSLException {
+        return buildWebClient(authPoolResources, connectTimeout, readTimeout);
+    }
+
+    @Bean
+    @Scope("prototype")
+    public Logger produceLogger(InjectionPoint injectionPoint) {
+        Class<?> declaringClass = injectionPoint.getMember().getDeclaringClass();
+        return LoggerFactory.getLogger(declaringClass);
+    }
+
+    private WebClient buildWebClient(PoolResources poolResources, int connectTimeout, int readTimeout)
+            throws SSLException {
         SslContext sslContext = SslContextBuilder
                 .forClient()
                 .trustManager(InsecureTrustManagerFactory.INSTANCE)
@@ -64,23 +123,18 @@ public class ApiConfig {
 
         ClientHttpConnector httpConnector = new ReactorClientHttpConnector(opt -> {
             opt.sslContext(sslContext);
-            opt.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 2000)
+            opt.poolResources(poolResources)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                    .option(ChannelOption.SO_KEEPALIVE, true)
                     .compression(true)
                     .afterNettyContextInit(ctx -> {
-                        ctx.addHandlerLast(new ReadTimeoutHandler(5000, TimeUnit.MILLISECONDS));
+                        ctx.addHandlerLast(new ReadTimeoutHandler(readTimeout, TimeUnit.MILLISECONDS));
                     });
         });
 
         return WebClient.builder().clientConnector(httpConnector).build();
     }
 
-    @Bean
-    @Scope("prototype")
-    public Logger produceLogger(InjectionPoint injectionPoint) {
-        Class<?> declaringClass = injectionPoint.getMember().getDeclaringClass();
-        return LoggerFactory.getLogger(declaringClass);
-    }
-
     /**
      * Method returns {@link JavaTimeModule} configured to (de)serialize {@link LocalDateTime} to
      * UTC format, such as '2011-12-03T10:15:30Z' which not supported by default.
@@ -0,0 +1,391 @@
+package backend.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.resources.PoolResources;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link PoolResources} decorator which measures how long connection acquires take, how many are waiting and how
+ * many connections are in use, and closes pooled connections that stayed idle for too long. When asked to, it also
+ * times the DNS, connect and TLS phases of every new connection and hands them to the request sent over it, see
+ * {@link #claimConnectionTimings(String)}.
+ */
+public class InstrumentedPoolResources implements PoolResources {
+
+    /**
+     * Request header carrying the id to claim connection timings with, removed before the request is sent.
+     */
+    public static final String TIMING_ID_HEADER = "X-Connection-Timing-Id";
+
+    /**
+     * Subscriber context key of the timing id that {@link #timingIdFilter()} sends along with a request.
+     */
+    public static final String TIMING_ID_CONTEXT_KEY = InstrumentedPoolResources.class.getName() + ".timingId";
+
+    private static final AttributeKey<Boolean> IN_USE = AttributeKey.valueOf("instrumentedPoolInUse");
+
+    private static final AttributeKey<ConnectionTimings> CONNECTION_TIMINGS =
+            AttributeKey.valueOf("instrumentedPoolConnectionTimings");
+
+    private static final int MAX_UNCLAIMED_TIMINGS = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstrumentedPoolResources.class);
+
+    private final PoolResources delegate;
+
+    private final int maxIdleSeconds;
+
+    private final boolean timeConnections;
+
+    private final Map<ChannelPool, ChannelPool> pools = new ConcurrentHashMap<>();
+
+    private final LongAdder pendingAcquires = new LongAdder();
+
+    private final LongAdder activeConnections = new LongAdder();
+
+    private final LongAdder acquires = new LongAdder();
+
+    private final LongAdder acquireNanos = new LongAdder();
+
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+
+    private final LongAdder failedAcquires = new LongAdder();
+
+    private final LongAdder evictedConnections = new LongAdder();
+
+    private final AtomicLong timingIds = new AtomicLong();
+
+    // timings of requests that failed before they were claimed expire here
+    private final Cache<String, ConnectionTimings> unclaimedTimings = Caffeine.newBuilder()
+            .maximumSize(MAX_UNCLAIMED_TIMINGS)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * @param timeConnections true when requests sent through this pool carry the {@link #TIMING_ID_HEADER} header,
+     *                        see {@link #timingIdFilter()}.
+     */
+    public InstrumentedPoolResources(PoolResources delegate, int maxIdleSeconds, boolean timeConnections) {
+        this.delegate = delegate;
+        this.maxIdleSeconds = maxIdleSeconds;
+        this.timeConnections = timeConnections;
+    }
+
+    @Override
+    public ChannelPool selectOrCreate(SocketAddress address, Supplier<? extends Bootstrap> bootstrap,
+                                      Consumer<? super Channel> onChannelCreate, EventLoopGroup group) {
+        ChannelPool pool = delegate.selectOrCreate(address, bootstrap, channel -> {
+            onChannelCreate.accept(channel);
+            if (timeConnections) {
+                addTimingHandlers(channel);
+            }
+            if (maxIdleSeconds > 0) {
+                channel.pipeline().addFirst(new IdleStateHandler(0, 0, maxIdleSeconds, TimeUnit.SECONDS),
+                        new IdleConnectionEvictor());
+            }
+        }, group);
+        return pools.computeIfAbsent(pool, InstrumentedChannelPool::new);
+    }
+
+    /**
+     * Anywhere but in front of the codec the request handler would not see requests, which would then carry the
+     * internal timing id header to the target; such a connection is refused instead.
+     */
+    private void addTimingHandlers(Channel channel) {
+        ChannelHandlerContext codecContext = channel.pipeline().context(HttpClientCodec.class);
+        if (codecContext == null) {
+            LOGGER.error(String.format("No HTTP codec in the pipeline of a new connection, cannot strip the %s " +
+                    "header, closing it. Pipeline: %s", TIMING_ID_HEADER, channel.pipeline().names()));
+            throw new IllegalStateException("Connection timing needs the HTTP codec in the pipeline");
+        }
+        // in front of the codec, to see requests before they are encoded
+        channel.pipeline().addAfter(codecContext.name(), null, new RequestTimingHandler());
+        // right behind the TLS handler, if there is one, to see its handshake completion
+        ChannelHandlerContext sslContext = channel.pipeline().context(SslHandler.class);
+        if (sslContext != null) {
+            channel.pipeline().addAfter(sslContext.name(), null, new ConnectionTimingHandler(true));
+        } else {
+            channel.pipeline().addFirst(new ConnectionTimingHandler(false));
+        }
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate.isDisposed();
+    }
+
+    public long getPendingAcquires() {
+        return pendingAcquires.sum();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    public long getAcquireCount() {
+        return acquires.sum();
+    }
+
+    public long getFailedAcquires() {
+        return failedAcquires.sum();
+    }
+
+    public long getAverageAcquireMillis() {
+        long count = acquires.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(acquireNanos.sum() / count);
+    }
+
+    public long getMaxAcquireMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxAcquireNanos.get());
+    }
+
+    public long getEvictedConnections() {
+        return evictedConnections.sum();
+    }
+
+    /**
+     * @return id to send in the {@link #TIMING_ID_HEADER} header of a request, to claim its timings with.
+     */
+    public String newTimingId() {
+        return Long.toString(timingIds.incrementAndGet());
+    }
+
+    /**
+     * Adds the {@link #TIMING_ID_HEADER} header to requests subscribed with a {@link #TIMING_ID_CONTEXT_KEY} in their
+     * context, so callers claim timings without adding the header themselves.
+     */
+    public ExchangeFilterFunction timingIdFilter() {
+        return (request, next) -> Mono.subscriberContext()
+                .flatMap(context -> {
+                    if (!context.hasKey(TIMING_ID_CONTEXT_KEY)) {
+                        return next.exchange(request);
+                    }
+                    return next.exchange(ClientRequest.from(request)
+                            .header(TIMING_ID_HEADER, context.<String>get(TIMING_ID_CONTEXT_KEY))
+                            .build());
+                });
+    }
+
+    /**
+     * A new connection is opened for the request that needs it, and that first request sent over it takes the
+     * phases of the connection along, identified by its {@link #TIMING_ID_HEADER} header.
+     *
+     * @return phases of the connection the request opened, or null when it reused a pooled connection or was never
+     * sent.
+     */
+    public ConnectionTimings claimConnectionTimings(String timingId) {
+        ConnectionTimings timings = unclaimedTimings.getIfPresent(timingId);
+        if (timings != null) {
+            unclaimedTimings.invalidate(timingId);
+        }
+        return timings;
+    }
+
+    private class InstrumentedChannelPool implements ChannelPool {
+
+        private final ChannelPool pool;
+
+        InstrumentedChannelPool(ChannelPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public Future<Channel> acquire() {
+            return track(pool.acquire());
+        }
+
+        @Override
+        public Future<Channel> acquire(Promise<Channel> promise) {
+            return track(pool.acquire(promise));
+        }
+
+        @Override
+        public Future<Void> release(Channel channel) {
+            released(channel);
+            return pool.release(channel);
+        }
+
+        @Override
+        public Future<Void> release(Channel channel, Promise<Void> promise) {
+            released(channel);
+            return pool.release(channel, promise);
+        }
+
+        @Override
+        public void close() {
+            pool.close();
+        }
+
+        private Future<Channel> track(Future<Channel> acquire) {
+            long startedAt = System.nanoTime();
+            pendingAcquires.increment();
+            acquire.addListener(future -> {
+                pendingAcquires.decrement();
+                long elapsed = System.nanoTime() - startedAt;
+                acquires.increment();
+                acquireNanos.add(elapsed);
+                maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+                if (future.isSuccess()) {
+                    Channel channel = (Channel) future.getNow();
+                    channel.attr(IN_USE).set(Boolean.TRUE);
+                    activeConnections.increment();
+                } else {
+                    failedAcquires.increment();
+                }
+            });
+            return acquire;
+        }
+
+        private void released(Channel channel) {
+            if (Boolean.TRUE.equals(channel.attr(IN_USE).getAndSet(Boolean.FALSE))) {
+                activeConnections.decrement();
+            }
+        }
+    }
+
+    /**
+     * Times name resolution (from channel creation until connect is issued), TCP connect and the TLS handshake.
+     */
+    private static class ConnectionTimingHandler extends ChannelDuplexHandler {
+
+        private final boolean secure;
+        private final long createdAt = System.nanoTime();
+        private long connectStartedAt;
+        private long connectedAt;
+
+        ConnectionTimingHandler(boolean secure) {
+            this.secure = secure;
+        }
+
+        @Override
+        public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress, SocketAddress localAddress,
+                            ChannelPromise promise) throws Exception {
+            connectStartedAt = System.nanoTime();
+            super.connect(ctx, remoteAddress, localAddress, promise);
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            connectedAt = System.nanoTime();
+            if (!secure) {
+                established(ctx, connectedAt);
+            }
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof SslHandshakeCompletionEvent && ((SslHandshakeCompletionEvent) evt).isSuccess()) {
+                established(ctx, System.nanoTime());
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        private void established(ChannelHandlerContext ctx, long establishedAt) {
+            long connectStarted = connectStartedAt == 0 ? createdAt : connectStartedAt;
+            ctx.channel().attr(CONNECTION_TIMINGS).set(new ConnectionTimings(
+                    TimeUnit.NANOSECONDS.toMillis(connectStarted - createdAt),
+                    TimeUnit.NANOSECONDS.toMillis(connectedAt - connectStarted),
+                    TimeUnit.NANOSECONDS.toMillis(establishedAt - connectedAt)));
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    /**
+     * Takes the timing id header off every request and hands the connection phases, if the connection still has
+     * them, to that id; only the first request over a connection finds them.
+     */
+    private class RequestTimingHandler extends ChannelDuplexHandler {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof HttpRequest) {
+                String timingId = ((HttpRequest) msg).headers().get(TIMING_ID_HEADER);
+                if (timingId != null) {
+                    ((HttpRequest) msg).headers().remove(TIMING_ID_HEADER);
+                    ConnectionTimings timings = ctx.channel().attr(CONNECTION_TIMINGS).getAndSet(null);
+                    if (timings != null) {
+                        unclaimedTimings.put(timingId, timings);
+                    }
+                }
+            }
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    public static class ConnectionTimings {
+
+        private final long dnsMillis;
+        private final long connectMillis;
+        private final long tlsMillis;
+
+        ConnectionTimings(long dnsMillis, long connectMillis, long tlsMillis) {
+            this.dnsMillis = dnsMillis;
+            this.connectMillis = connectMillis;
+            this.tlsMillis = tlsMillis;
+        }
+
+        public long getDnsMillis() {
+            return dnsMillis;
+        }
+
+        public long getConnectMillis() {
+            return connectMillis;
+        }
+
+        public long getTlsMillis() {
+            return tlsMillis;
+        }
+    }
+
+    /**
+     * Closes a connection that has been idle in the pool; the pool drops closed connections on the next acquire.
+     */
+    private class IdleConnectionEvictor extends ChannelDuplexHandler {
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent && !Boolean.TRUE.equals(ctx.channel().attr(IN_USE).get())) {
+                evictedConnections.increment();
+                ctx.close();
+                return;
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package backend.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Verifies RS256 signed bearer tokens locally, without a call to the auth server. Public keys are either configured
+ * or fetched from the auth module as a JWK set; the list of revoked token ids is polled in the background.
+ */
+@Component
+public class LocalTokenVerifier {
+
+    private static final String LOCAL_MODE = "local";
+
+    private static final String DEFAULT_KEY_ID = "default";
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    @Qualifier("authWebClient")
+    private WebClient webClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${auth.token.verification:remote}")
+    private String verificationMode;
+
+    @Value("${auth.server.url}")
+    private String authServer;
+
+    @Value("${auth.token.keys.endpoint:/api/auth/keys}")
+    private String keysEndpoint;
+
+    @Value("${auth.token.revocations.endpoint:/api/auth/revoked}")
+    private String revocationsEndpoint;
+
+    @Value("${auth.token.public.key:}")
+    private String configuredPublicKey;
+
+    @Value("${auth.token.public.key.id:default}")
+    private String configuredPublicKeyId;
+
+    @Value("${auth.token.revocations.poll.millis:30000}")
+    private long revocationsPollMillis;
+
+    @Value("${auth.token.revocations.max.missed.polls:3}")
+    private int maxMissedRevocationPolls;
+
+    private volatile Map<String, PublicKey> publicKeys = Collections.emptyMap();
+
+    private volatile Set<String> revokedTokenIds = Collections.emptySet();
+
+    private volatile long revocationsFetchedAtMillis;
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!configuredPublicKey.isEmpty()) {
+            try {
+                byte[] encodedKey = Base64.getMimeDecoder().decode(configuredPublicKey
+                        .replace("-----BEGIN PUBLIC KEY-----", "")
+                        .replace("-----END PUBLIC KEY-----", ""));
+                publicKeys = Collections.singletonMap(configuredPublicKeyId,
+                        KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encodedKey)));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IllegalStateException("Wrong auth.token.public.key value", e);
+            }
+        }
+        refreshPublicKeys();
+        refreshRevocations();
+    }
+
+    public boolean isEnabled() {
+        return LOCAL_MODE.equalsIgnoreCase(verificationMode);
+    }
+
+    /**
+     * @return true while public keys are available and the revoked tokens were fetched within the last
+     * {@code auth.token.revocations.max.missed.polls} polls; otherwise tokens have to be validated remotely, so a
+     * revoked token is never accepted because the list could not be fetched.
+     */
+    public boolean isReady() {
+        long revocationsAgeMillis = System.currentTimeMillis() - revocationsFetchedAtMillis;
+        return !publicKeys.isEmpty() && revocationsFetchedAtMillis > 0
+                && revocationsAgeMillis <= revocationsPollMillis * maxMissedRevocationPolls;
+    }
+
+    @Scheduled(fixedDelayString = "${auth.token.keys.refresh.millis:300000}")
+    public void refreshPublicKeys() {
+        if (!isEnabled() || !configuredPublicKey.isEmpty()) {
+            return;
+        }
+        webClient.get()
+                .uri(authServer + keysEndpoint)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(this::parseJsonWebKeys)
+                .subscribe(keys -> {
+                    if (!keys.isEmpty()) {
+                        publicKeys = keys;
+                    }
+                }, throwable -> logger.warn("Cannot fetch token public keys from auth server: " + throwable.getMessage()));
+    }
+
+    @Scheduled(fixedDelayString = "${auth.token.revocations.poll.millis:30000}")
+    public void refreshRevocations() {
+        if (!isEnabled()) {
+            return;
+        }
+        webClient.get()
+                .uri(authServer + revocationsEndpoint)
+                .retrieve()
+                .bodyToMono(String[].class)
+                .subscribe(tokenIds -> {
+                    Set<String> revoked = new HashSet<>(tokenIds.length);
+                    Collections.addAll(revoked, tokenIds);
+                    revokedTokenIds = revoked;
+                    revocationsFetchedAtMillis = System.currentTimeMillis();
+                }, throwable -> logger.warn("Cannot fetch revoked tokens from auth server: " + throwable.getMessage()));
+    }
+
+    public Optional<VerifiedToken> verify(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return Optional.empty();
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            JsonNode header = objectMapper.readTree(decoder.decode(parts[0]));
+            if (!"RS256".equals(header.path("alg").asText())) {
+                return Optional.empty();
+            }
+            // a token is only checked against the key it names, tokens without kid against the default key
+            PublicKey publicKey = publicKeys.get(header.path("kid").asText(DEFAULT_KEY_ID));
+            if (publicKey == null) {
+                return Optional.empty();
+            }
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(publicKey);
+            signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+            if (!signature.verify(decoder.decode(parts[2]))) {
+                return Optional.empty();
+            }
+
+            JsonNode claims = objectMapper.readTree(decoder.decode(parts[1]));
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            if (claims.path("exp").asLong(0) <= nowSeconds
+                    || claims.path("nbf").asLong(0) > nowSeconds
+                    || revokedTokenIds.contains(claims.path("jti").asText())
+                    || claims.path("sub").asText().isEmpty()) {
+                return Optional.empty();
+            }
+
+            List<String> roles = new ArrayList<>();
+            claims.path("roles").forEach(role -> roles.add(role.asText()));
+            return Optional.of(new VerifiedToken(claims.path("sub").asText(), roles));
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            logger.warn("Cannot verify token locally: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Map<String, PublicKey> parseJsonWebKeys(JsonNode jwks) {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            if (!"RSA".equals(jwk.path("kty").asText())) {
+                continue;
+            }
+            try {
+                Base64.Decoder decoder = Base64.getUrlDecoder();
+                BigInteger modulus = new BigInteger(1, decoder.decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, decoder.decode(jwk.path("e").asText()));
+                keys.put(jwk.path("kid").asText(DEFAULT_KEY_ID),
+                        KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                logger.warn("Skipping wrong public key from auth server: " + e.getMessage());
+            }
+        }
+        return keys;
+    }
+
+    public static class VerifiedToken {
+
+        private final String userId;
+        private final List<String> roles;
+
+        VerifiedToken(String userId, List<String> roles) {
+            this.userId = userId;
+            this.roles = roles;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package backend.config;
+
+import backend.model.Account;
+import backend.model.Company;
+import backend.model.Incident;
+import backend.model.Job;
+import backend.model.JobRunClaim;
+import backend.model.MetricsBucket;
+import backend.model.MetricsRollup;
+import backend.model.MetricsStats;
+import backend.model.NodeLease;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the indexes declared on the model classes, plus the ones of collections written without a mapped class,
+ * so no hot query keeps running as a collection scan. Indexes are built in the background, by Mongo and off the
+ * startup path: a node starts serving right away, without locking the collections of an index still being built,
+ * and a build taking longer than {@code mongo.indexes.ensure.timeout.seconds} is logged and left to finish on the
+ * server. Creating an index that already exists is a no-op, so this is safe on every start of every node.
+ */
+@Component
+public class MongoIndexInitializer {
+
+    static final List<Class<?>> INDEXED_TYPES = Arrays.asList(Incident.class, Job.class, Account.class,
+            Company.class, MetricsBucket.class, MetricsRollup.class, NodeLease.class, JobRunClaim.class);
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mongoMappingContext;
+
+    @Value("${mongo.indexes.ensure.enabled: true}")
+    private Boolean enabled;
+
+    @Value("${mongo.indexes.ensure.timeout.seconds: 120}")
+    private long timeoutSeconds;
+
+    @PostConstruct
+    public void ensureIndexes() {
+        if (!enabled) {
+            return;
+        }
+        MongoPersistentEntityIndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
+        Flux<Tuple2<String, IndexDefinition>> declaredIndexes = Flux.fromIterable(INDEXED_TYPES)
+                .flatMapIterable(type -> indexResolver.resolveIndexForEntity(
+                        mongoMappingContext.getRequiredPersistentEntity(type)))
+                .map(holder -> Tuples.of(holder.getCollection(), background(holder)));
+        // raw check results are inserted as plain documents, history is read per job in insertion (_id) order and
+        // expires like the hour buckets
+        String rawMetricsCollection = reactiveMongoTemplate.getCollectionName(MetricsStats.class);
+        Flux<Tuple2<String, IndexDefinition>> rawMetricsIndexes = Flux.just(
+                Tuples.<String, IndexDefinition>of(rawMetricsCollection,
+                        new Index().on("jobId", Sort.Direction.ASC).on("_id", Sort.Direction.DESC).named("jobId_id").background()),
+                Tuples.<String, IndexDefinition>of(rawMetricsCollection,
+                        new Index().on("expireAt", Sort.Direction.ASC).expire(0).named("expireAt").background()));
+
+        Flux.concat(declaredIndexes, rawMetricsIndexes)
+                .concatMap(collectionAndIndex -> reactiveMongoTemplate.indexOps(collectionAndIndex.getT1())
+                        .ensureIndex(collectionAndIndex.getT2()))
+                .count()
+                .timeout(Duration.ofSeconds(timeoutSeconds))
+                .subscribe(created -> logger.info(String.format("Mongo indexes ensured: %s", created)),
+                        throwable -> logger.warn("Cannot ensure Mongo indexes: " + throwable.getMessage()));
+    }
+
+    /**
+     * The resolved index with the background option, which the index annotations of the model classes do not set.
+     */
+    private static IndexDefinition background(IndexDefinition index) {
+        Document options = new Document(index.getIndexOptions());
+        options.put("background", true);
+        return new IndexDefinition() {
+            @Override
+            public Document getIndexKeys() {
+                return index.getIndexKeys();
+            }
+
+            @Override
+            public Document getIndexOptions() {
+                return options;
+            }
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package backend.config;
+
+import backend.service.TenantContext;
+import backend.service.TenantContextService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Puts the tenant of the current user into the Reactor context of the request. The tenant is resolved on first
+ * use only and then shared by everything within the request.
+ */
+@Component
+public class TenantContextWebFilter implements WebFilter {
+
+    @Autowired
+    private TenantContextService tenantContextService;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange)
+                .subscriberContext(context -> context.put(TenantContext.class,
+                        tenantContextService.resolveCurrentTenant().cache()));
+    }
+}
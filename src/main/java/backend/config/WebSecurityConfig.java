@@ -1,7 +1,12 @@
 package backend.config;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpHeaders;
@@ -23,12 +28,9 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.Date;
-import java.util.LinkedHashMap;
+import javax.annotation.PostConstruct;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
@@ -52,10 +54,19 @@ public class WebSecurityConfig {
                 .authorizeExchange()
                 .pathMatchers(HttpMethod.OPTIONS).permitAll()
                 .pathMatchers("/api/register", "/api/quickSetup/validateSession/*").permitAll()
+                .pathMatchers(HttpMethod.GET, "/api/status/public/*").permitAll()
                 .anyExchange().authenticated()
                 .and().build();
     }
 
+    /**
+     * Time source of the token cache.
+     */
+    @Bean
+    public Ticker tokenCacheTicker() {
+        return Ticker.systemTicker();
+    }
+
     @Component
     protected class SecurityContextRepository implements ServerSecurityContextRepository {
 
@@ -70,14 +81,47 @@ public class WebSecurityConfig {
         private Logger logger;
 
         @Autowired
+        @Qualifier("authWebClient")
         private WebClient webClient;
 
-        private final Map<String, TokenInfo> tokenCache = Collections.synchronizedMap(new LinkedHashMap<String, TokenInfo>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, TokenInfo> eldest) {
-                return size() > 5000;
-            }
-        });
+        @Autowired
+        private LocalTokenVerifier localTokenVerifier;
+
+        @Value("${auth.token.cache.size: 5000}")
+        private long tokenCacheSize;
+
+        @Value("${auth.token.cache.expire.minutes: 15}")
+        private long tokenCacheExpireMinutes;
+
+        @Value("${auth.token.cache.refresh.minutes: 12}")
+        private long tokenCacheRefreshMinutes;
+
+        @Autowired
+        @Qualifier("tokenCacheTicker")
+        private Ticker ticker;
+
+        private AsyncLoadingCache<String, TokenInfo> tokenCache;
+
+        /**
+         * Concurrent requests with the same uncached token share a single validation call. Tokens used after the
+         * refresh time are revalidated in the background while the cached value keeps being served.
+         */
+        @PostConstruct
+        public void init() {
+            tokenCache = Caffeine.newBuilder()
+                    .maximumSize(tokenCacheSize)
+                    .expireAfterWrite(tokenCacheExpireMinutes, TimeUnit.MINUTES)
+                    .refreshAfterWrite(tokenCacheRefreshMinutes, TimeUnit.MINUTES)
+                    .ticker(ticker)
+                    .recordStats()
+                    .buildAsync((token, executor) -> validateToken(token)
+                            .map(TokenInfo::new)
+                            .toFuture());
+        }
+
+        public CacheStats getTokenCacheStats() {
+            return tokenCache.synchronous().stats();
+        }
 
         @Override
         public Mono<Void> save(ServerWebExchange swe, SecurityContext sc) {
@@ -91,11 +135,7 @@ public class WebSecurityConfig {
 
             if (authHeader != null && authHeader.startsWith(BEARER_PREFIX)) {
                 String authToken = authHeader.substring(BEARER_PREFIX.length());
-                return Mono.justOrEmpty(tokenCache.get(authToken))
-                        .filter(TokenInfo::isValid)
-                        .switchIfEmpty(validateToken(authToken)
-                                .map(TokenInfo::new)
-                                .doOnNext(tokenInfo -> tokenCache.put(authToken, tokenInfo)))
+                return resolveToken(authToken)
                         .map(tokenInfo -> new UsernamePasswordAuthenticationToken(
                                 tokenInfo.getUserId(), authToken,
                                 tokenInfo.getGrantedAuthorities()))
@@ -106,6 +146,15 @@ public class WebSecurityConfig {
             }
         }
 
+        private Mono<TokenInfo> resolveToken(String authToken) {
+            if (localTokenVerifier.isEnabled() && localTokenVerifier.isReady()) {
+                return Mono.justOrEmpty(localTokenVerifier.verify(authToken))
+                        .map(token -> new TokenInfo(token.getUserId(), token.getRoles()));
+            }
+            // an empty validation result completes with null and is not kept in the cache
+            return Mono.fromFuture(tokenCache.get(authToken));
+        }
+
         private Mono<ValidationResponse> validateToken(String token) {
             return webClient.get()
                     .uri(authServer + VALIDATE_TOKEN_ENDPOINT, token)
@@ -120,20 +169,18 @@ public class WebSecurityConfig {
 
     private static class TokenInfo {
 
-        private static final int TOKEN_NEXT_VALIDATION_MINUTES = 15;
-
         private String userId;
         private List<SimpleGrantedAuthority> grantedAuthorities;
-        private Date revalidateAt;
 
         public TokenInfo(ValidationResponse validationResponse) {
-            this.userId = validationResponse.getId();
-            this.grantedAuthorities = validationResponse.getRoles().stream()
+            this(validationResponse.getId(), validationResponse.getRoles());
+        }
+
+        public TokenInfo(String userId, List<String> roles) {
+            this.userId = userId;
+            this.grantedAuthorities = roles.stream()
                     .map(SimpleGrantedAuthority::new)
                     .collect(Collectors.toList());
-            Calendar now = Calendar.getInstance();
-            now.add(Calendar.MINUTE, TOKEN_NEXT_VALIDATION_MINUTES);
-            this.revalidateAt = now.getTime();
         }
 
         public String getUserId() {
@@ -143,10 +190,6 @@ public class WebSecurityConfig {
         public List<SimpleGrantedAuthority> getGrantedAuthorities() {
             return grantedAuthorities;
         }
-
-        public boolean isValid() {
-            return revalidateAt.after(new Date());
-        }
     }
 
     private static class ValidationResponse {
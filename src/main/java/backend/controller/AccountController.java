@@ -1,6 +1,7 @@
 package backend.controller;
 
 
+import backend.service.TenantContextService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +21,9 @@ public class AccountController {
     @Autowired
     private AccountService accountService;
 
+    @Autowired
+    private TenantContextService tenantContextService;
+
     @GetMapping
     public Mono<ResponseEntity<Account>> getCurrentUserAccount() {
         return accountService.getCurrentUserAccount()
@@ -30,6 +34,7 @@ public class AccountController {
     @PostMapping
     public Mono<ResponseEntity<Account>> updateCurrentUserAccount(@RequestBody Account account) {
         return accountService.updateCurrentAccountInfo(account)
+                .flatMap(updated -> tenantContextService.invalidateCurrent().thenReturn(updated))
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
@@ -37,6 +42,7 @@ public class AccountController {
     @DeleteMapping("{id}")
     public Mono<ResponseEntity<Void>> deleteAccountById(@PathVariable("id") String id) {
         return accountService.deleteMemberAccount(id)
+                .doOnNext(isDeleted -> tenantContextService.invalidateAll())
                 .map(isDeleted -> {
                     if (isDeleted) {
                         return new ResponseEntity<>(HttpStatus.OK);
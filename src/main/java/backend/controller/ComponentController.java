@@ -1,5 +1,6 @@
 package backend.controller;
 
+import backend.service.TenantContextService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,11 +16,11 @@ public class ComponentController {
     private ComponentService componentService;
 
     @Autowired
-    private ProjectService projectService;
+    private TenantContextService tenantContextService;
 
     @PostMapping
     public Mono<ResponseEntity<Component>> addComponent(@RequestBody Component component) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> componentService.createComponent(projectId, component))
                 .map(c -> new ResponseEntity<>(c, HttpStatus.CREATED))
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
@@ -27,13 +28,13 @@ public class ComponentController {
 
     @GetMapping
     public Flux<Component> getAllComponents() {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMapMany(projectId -> componentService.getAllComponents(projectId));
     }
 
     @GetMapping("/{id}")
     public Mono<ResponseEntity<Component>> getComponentById(@PathVariable String id) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> componentService.findComponentById(projectId, id))
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
@@ -41,18 +42,10 @@ public class ComponentController {
 
     @PutMapping("/{id}")
     public Mono<ResponseEntity<Component>> update(@PathVariable("id") String id, @RequestBody Component component) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> componentService.updateComponent(projectId, id, component))
                 .map(c -> new ResponseEntity<>(c, HttpStatus.OK))
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
-
-    // TODO refactor when project context selection will be implemented, now it just takes first available project ID
-    private Mono<String> getCurrentUserFirstProjectId() {
-        return projectService.getCurrentUserProjects()
-                .map(Project::getId)
-                .next()
-                .switchIfEmpty(Mono.error(new IllegalStateException("Current user has no available projects")));
-    }
 }
 
@@ -2,9 +2,11 @@ package backend.controller;
 
 
 import backend.model.Incident;
+import backend.model.ScrollResponse;
+import backend.service.IncidentScrollService;
+import backend.service.StatusEventBus;
+import backend.service.TenantContextService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -23,11 +26,26 @@ import reactor.core.publisher.Mono;
 public class IncidentController {
 
     @Autowired
-    private ProjectService projectService;
+    private TenantContextService tenantContextService;
 
     @Autowired
     private IncidentService incidentService;
 
+    @Autowired
+    private IncidentStateCache incidentStateCache;
+
+    @Autowired
+    private IncidentScrollService incidentScrollService;
+
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    /**
+     * Classic offset pages. The page size is capped at {@code incident.page.max.size} and the response carries the
+     * page size actually applied, which is what page numbers count in; pages deeper than
+     * {@code incident.page.max.offset} incidents are answered with 400. Both limits are new, clients that relied on
+     * larger or deeper pages have to follow the returned page size or move to {@code /scroll}.
+     */
     @GetMapping
     public Mono<PageResponse<Incident>> getIncidentsSortedByPage(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
@@ -35,20 +53,41 @@ public class IncidentController {
             @RequestParam(value = "sortFields", defaultValue = "name") String sortFields,
             @RequestParam(value = "sortDirection", defaultValue = "asc") String sortDirection,
             @RequestParam(value = "filters", required = false) String filters) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> {
-                    Flux<Incident> incidentList = incidentService.retrieveAllIncidentsPaged(projectId, filters,
-                            PageRequest.of(page - 1, pageSize, Sort.by(Sort.Direction.fromString(sortDirection), sortFields)));
-                    Mono<Long> incidentCount = incidentService.countAllIncidents(projectId, filters);
+                    int servedPageSize = incidentScrollService.getPageSize(pageSize);
+                    Flux<Incident> incidentList = incidentScrollService.findPage(projectId, filters, page,
+                            servedPageSize, sortFields, sortDirection);
+                    Mono<Long> incidentCount = incidentScrollService.countIncidents(projectId, filters);
                     return incidentList
                             .collectList()
-                            .zipWith(incidentCount, (incidents, count) -> new PageResponse<>(page, count, pageSize, sortFields, sortDirection, incidents));
-                });
+                            .zipWith(incidentCount, (incidents, count) -> new PageResponse<>(page, count, servedPageSize, sortFields, sortDirection, incidents));
+                })
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+
+    /**
+     * Keyset paginated alternative to the offset pages above, pass the {@code nextCursor} of a page to get the next.
+     */
+    @GetMapping("/scroll")
+    public Mono<ScrollResponse<Incident>> scrollIncidents(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", defaultValue = "10") Integer pageSize,
+            @RequestParam(value = "sortField", defaultValue = "name") String sortField,
+            @RequestParam(value = "sortDirection", defaultValue = "asc") String sortDirection,
+            @RequestParam(value = "filters", required = false) String filters,
+            @RequestParam(value = "withCount", defaultValue = "false") Boolean withCount) {
+        return tenantContextService.getCurrentUserFirstProjectId()
+                .flatMap(projectId -> incidentScrollService.scroll(projectId, filters, cursor, pageSize, sortField,
+                        sortDirection, withCount))
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
     }
 
     @GetMapping("/{id}")
     public Mono<ResponseEntity<Incident>> getIncidentById(@PathVariable String id) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> incidentService.findIncidentById(projectId, id))
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
@@ -56,38 +95,38 @@ public class IncidentController {
 
     @PostMapping
     public Mono<ResponseEntity<Incident>> createIncident(@RequestBody Incident incident) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> incidentService.createIncident(projectId, incident))
+                .doOnNext(i -> {
+                    incidentStateCache.invalidate(i.getJobId());
+                    statusEventBus.publishIncident(i);
+                })
                 .map(i -> new ResponseEntity<>(i, HttpStatus.CREATED))
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @PutMapping("/{id}")
     public Mono<ResponseEntity<Incident>> updateIncident(@PathVariable("id") String id, @RequestBody Incident incident) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMap(projectId -> incidentService.updateIncident(projectId, id, incident))
+                .doOnNext(i -> {
+                    incidentStateCache.invalidate(i.getJobId());
+                    statusEventBus.publishIncident(i);
+                })
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @GetMapping("component/{componentId}")
     public Flux<Incident> getAllIncidentsByComponentId(@PathVariable String componentId) {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMapMany(projectId -> incidentService.findAllIncidentsByComponentId(projectId, componentId));
     }
 
     @GetMapping("/active")
     public Flux<Incident> getAllActiveIncidents() {
-        return getCurrentUserFirstProjectId()
+        return tenantContextService.getCurrentUserFirstProjectId()
                 .flatMapMany(projectId -> incidentService.findAllActiveIncidents(projectId));
     }
-
-    // TODO refactor when project context selection will be implemented, now it just takes first available project ID
-    private Mono<String> getCurrentUserFirstProjectId() {
-        return projectService.getCurrentUserProjects()
-                .map(Project::getId)
-                .next()
-                .switchIfEmpty(Mono.error(new IllegalStateException("Current user has no available projects")));
-    }
 }
 
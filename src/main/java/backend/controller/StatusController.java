@@ -0,0 +1,92 @@
+package backend.controller;
+
+import backend.model.StatusEvent;
+import backend.model.StatusPage;
+import backend.service.StatusEventBus;
+import backend.service.StatusSnapshotService;
+import backend.service.TenantContextService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+@RestController
+@RequestMapping(value = "/api/status")
+public class StatusController {
+
+    @Autowired
+    private TenantContextService tenantContextService;
+
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    @Autowired
+    private StatusSnapshotService statusSnapshotService;
+
+    @Value("${status.stream.heartbeat.seconds: 15}")
+    private long heartbeatSeconds;
+
+    /**
+     * Pushes incident and component changes of the project instead of having status pages poll for them. Comment
+     * only heartbeats keep idle connections open through proxies.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StatusEvent>> streamStatusEvents() {
+        return tenantContextService.getCurrentUserFirstProjectId()
+                .flatMapMany(projectId -> Flux.merge(
+                        statusEventBus.subscribe(projectId)
+                                .map(event -> ServerSentEvent.builder(event)
+                                        .event(event.getType().name().toLowerCase())
+                                        .build()),
+                        Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+                                .onBackpressureDrop()
+                                .map(tick -> ServerSentEvent.<StatusEvent>builder().comment("heartbeat").build())));
+    }
+
+    /**
+     * Publishes or hides the public status page of the current project.
+     */
+    @PutMapping("/public")
+    public Mono<StatusPage> publishStatusPage(@RequestParam("published") Boolean published) {
+        return tenantContextService.getCurrentUserFirstProjectId()
+                .flatMap(projectId -> statusSnapshotService.setPublished(projectId, published));
+    }
+
+    /**
+     * Public status page data of the project, served from memory as pre-serialized JSON. Clients revalidate with
+     * If-None-Match and get 304 while nothing changed. Projects that are not published are not found.
+     */
+    @GetMapping("/public/{projectId}")
+    public Mono<ResponseEntity<byte[]>> getStatusSnapshot(@PathVariable String projectId,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return statusSnapshotService.getSnapshot(projectId)
+                .map(snapshot -> {
+                    if (ifNoneMatch != null && ifNoneMatch.contains(snapshot.getETag())) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(snapshot.getETag())
+                                .<byte[]>build();
+                    }
+                    return ResponseEntity.ok()
+                            .eTag(snapshot.getETag())
+                            .cacheControl(CacheControl.noCache())
+                            .contentType(MediaType.APPLICATION_JSON_UTF8)
+                            .body(snapshot.getBody());
+                })
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+}
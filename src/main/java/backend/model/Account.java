@@ -3,6 +3,7 @@ package backend.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
@@ -13,7 +14,9 @@ public class Account {
 
     @Id
     private String id;
+    @Indexed
     private String companyId;
+    @Indexed
     private String userId;
 
     // this properties should match to the auth user ones
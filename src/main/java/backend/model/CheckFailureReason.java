@@ -0,0 +1,14 @@
+package backend.model;
+
+/**
+ * Why a monitoring check failed, recorded with its metric so that limit violations can be told apart from a
+ * target that is simply down.
+ */
+public enum CheckFailureReason {
+    UNEXPECTED_STATUS,
+    SELECTOR_NOT_FOUND,
+    RESPONSE_TOO_LARGE,
+    TIME_TO_FIRST_BYTE_EXCEEDED,
+    TOTAL_TIME_EXCEEDED,
+    ERROR
+}
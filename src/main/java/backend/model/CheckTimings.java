@@ -0,0 +1,68 @@
+package backend.model;
+
+/**
+ * Phases of one HTTP check in milliseconds. Connection phases are 0 when a pooled connection was reused,
+ * a negative value means the phase was not measured.
+ */
+public class CheckTimings {
+
+    private long dnsMillis = -1;
+    private long connectMillis = -1;
+    private long tlsMillis = -1;
+    private long timeToFirstByteMillis = -1;
+    private long totalMillis = -1;
+
+    public CheckTimings() {
+    }
+
+    public long getDnsMillis() {
+        return dnsMillis;
+    }
+
+    public void setDnsMillis(long dnsMillis) {
+        this.dnsMillis = dnsMillis;
+    }
+
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    public void setConnectMillis(long connectMillis) {
+        this.connectMillis = connectMillis;
+    }
+
+    public long getTlsMillis() {
+        return tlsMillis;
+    }
+
+    public void setTlsMillis(long tlsMillis) {
+        this.tlsMillis = tlsMillis;
+    }
+
+    public long getTimeToFirstByteMillis() {
+        return timeToFirstByteMillis;
+    }
+
+    public void setTimeToFirstByteMillis(long timeToFirstByteMillis) {
+        this.timeToFirstByteMillis = timeToFirstByteMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public void setTotalMillis(long totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckTimings{" +
+                "dnsMillis=" + dnsMillis +
+                ", connectMillis=" + connectMillis +
+                ", tlsMillis=" + tlsMillis +
+                ", timeToFirstByteMillis=" + timeToFirstByteMillis +
+                ", totalMillis=" + totalMillis +
+                '}';
+    }
+}
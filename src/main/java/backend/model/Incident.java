@@ -2,17 +2,33 @@ package backend.model;
 
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Incidents are listed per project through the project's component ids, so every listing index starts with
+ * {@code componentIds} followed by the sort field and {@code _id} as the tie breaker of keyset pages.
+ */
 @Document
+@CompoundIndexes({
+        @CompoundIndex(name = "componentIds_status_id", def = "{'componentIds': 1, 'status': 1, '_id': 1}"),
+        @CompoundIndex(name = "componentIds_name_id", def = "{'componentIds': 1, 'name': 1, '_id': 1}"),
+        @CompoundIndex(name = "componentIds_dateStart_id", def = "{'componentIds': 1, 'dateStart': 1, '_id': 1}"),
+        @CompoundIndex(name = "componentIds_dateEnd_id", def = "{'componentIds': 1, 'dateEnd': 1, '_id': 1}"),
+        @CompoundIndex(name = "componentIds_updatedAt_id", def = "{'componentIds': 1, 'updatedAt': 1, '_id': 1}"),
+        @CompoundIndex(name = "status_jobId", def = "{'status': 1, 'jobId': 1}")
+})
 public class Incident {
 
     @Id
     private String id;
+    @Indexed
     private String jobId;
     private String name;
     private String description;
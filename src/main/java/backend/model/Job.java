@@ -1,6 +1,7 @@
 package backend.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -22,9 +23,14 @@ public class Job {
     private SelectorType selectorType;
     private EndpointResponseType endpointResponseType;
     private byte[] image;
+    @Indexed
     private Set<String> componentIds = new HashSet<>();
     private LocalDateTime startOn;
     private LocalDateTime endOn;
+    private Integer intervalSeconds;
+    private Long maxResponseBytes;
+    private Long maxTimeToFirstByteMillis;
+    private Long maxTotalTimeMillis;
 
     public Job() {
     }
@@ -151,6 +157,38 @@ public class Job {
         this.endOn = endOn;
     }
 
+    public Integer getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public void setIntervalSeconds(Integer intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public Long getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    public void setMaxResponseBytes(Long maxResponseBytes) {
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    public Long getMaxTimeToFirstByteMillis() {
+        return maxTimeToFirstByteMillis;
+    }
+
+    public void setMaxTimeToFirstByteMillis(Long maxTimeToFirstByteMillis) {
+        this.maxTimeToFirstByteMillis = maxTimeToFirstByteMillis;
+    }
+
+    public Long getMaxTotalTimeMillis() {
+        return maxTotalTimeMillis;
+    }
+
+    public void setMaxTotalTimeMillis(Long maxTotalTimeMillis) {
+        this.maxTotalTimeMillis = maxTotalTimeMillis;
+    }
+
     public EndpointResponseType getEndpointResponseType() {
         return endpointResponseType;
     }
@@ -174,6 +212,10 @@ public class Job {
                 ", componentIds=" + componentIds +
                 ", startOn=" + startOn +
                 ", endOn=" + endOn +
+                ", intervalSeconds=" + intervalSeconds +
+                ", maxResponseBytes=" + maxResponseBytes +
+                ", maxTimeToFirstByteMillis=" + maxTimeToFirstByteMillis +
+                ", maxTotalTimeMillis=" + maxTotalTimeMillis +
                 '}';
     }
 }
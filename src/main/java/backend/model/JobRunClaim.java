@@ -0,0 +1,49 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Claim of the next run of a job by a backend node, written only while a rebalance is handed over. While the claim
+ * holds no other node runs the job, even when both consider the job theirs; expired claims are removed by the TTL
+ * index.
+ */
+@Document
+public class JobRunClaim {
+
+    @Id
+    private String id;
+    private String nodeId;
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime claimedUntil;
+
+    public JobRunClaim() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public LocalDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(LocalDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+}
@@ -0,0 +1,181 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Raw check samples of one job within one hour. Samples are kept as parallel arrays (time, status, latency and
+ * the phases of HTTP checks, -1 when not measured) so an hour of checks is a single document.
+ */
+@Document
+@CompoundIndexes({
+        @CompoundIndex(name = "jobId_bucketStart", def = "{'jobId': 1, 'bucketStart': 1}"),
+        // buckets still waiting for their rollups, past hours first
+        @CompoundIndex(name = "rolledUp_bucketStart", def = "{'rolledUp': 1, 'bucketStart': 1}")
+})
+public class MetricsBucket {
+
+    public static final int STATUS_FAIL = 0;
+    public static final int STATUS_SUCCESS = 1;
+
+    @Id
+    private String id;
+    private String jobId;
+    @Indexed
+    private LocalDateTime bucketStart;
+    private int count;
+    private int successCount;
+    private List<Long> timestamps = new ArrayList<>();
+    private List<Integer> statuses = new ArrayList<>();
+    private List<Long> latencies = new ArrayList<>();
+    private List<Long> dnsLatencies = new ArrayList<>();
+    private List<Long> connectLatencies = new ArrayList<>();
+    private List<Long> tlsLatencies = new ArrayList<>();
+    private List<Long> ttfbLatencies = new ArrayList<>();
+    private Map<String, Integer> failureReasons = new HashMap<>();
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expireAt;
+    private Boolean rolledUp;
+
+    public MetricsBucket() {
+    }
+
+    public static String buildId(String jobId, LocalDateTime bucketStart) {
+        return jobId + ":" + bucketStart;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(int successCount) {
+        this.successCount = successCount;
+    }
+
+    public List<Long> getTimestamps() {
+        return timestamps;
+    }
+
+    public void setTimestamps(List<Long> timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    public List<Integer> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Integer> statuses) {
+        this.statuses = statuses;
+    }
+
+    public List<Long> getLatencies() {
+        return latencies;
+    }
+
+    public void setLatencies(List<Long> latencies) {
+        this.latencies = latencies;
+    }
+
+    public List<Long> getDnsLatencies() {
+        return dnsLatencies;
+    }
+
+    public void setDnsLatencies(List<Long> dnsLatencies) {
+        this.dnsLatencies = dnsLatencies;
+    }
+
+    public List<Long> getConnectLatencies() {
+        return connectLatencies;
+    }
+
+    public void setConnectLatencies(List<Long> connectLatencies) {
+        this.connectLatencies = connectLatencies;
+    }
+
+    public List<Long> getTlsLatencies() {
+        return tlsLatencies;
+    }
+
+    public void setTlsLatencies(List<Long> tlsLatencies) {
+        this.tlsLatencies = tlsLatencies;
+    }
+
+    public List<Long> getTtfbLatencies() {
+        return ttfbLatencies;
+    }
+
+    public void setTtfbLatencies(List<Long> ttfbLatencies) {
+        this.ttfbLatencies = ttfbLatencies;
+    }
+
+    /**
+     * @return number of failed checks per {@link CheckFailureReason} name.
+     */
+    public Map<String, Integer> getFailureReasons() {
+        return failureReasons;
+    }
+
+    public void setFailureReasons(Map<String, Integer> failureReasons) {
+        this.failureReasons = failureReasons;
+    }
+
+    public LocalDateTime getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(LocalDateTime expireAt) {
+        this.expireAt = expireAt;
+    }
+
+    /**
+     * @return true once the minute and hour rollups of the bucket are stored; null or false until then.
+     */
+    public Boolean getRolledUp() {
+        return rolledUp;
+    }
+
+    public void setRolledUp(Boolean rolledUp) {
+        this.rolledUp = rolledUp;
+    }
+}
@@ -0,0 +1,144 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated check results of one job for one minute, hour or day.
+ */
+@Document
+@CompoundIndexes({
+        @CompoundIndex(name = "jobId_resolution_periodStart", def = "{'jobId': 1, 'resolution': 1, 'periodStart': 1}"),
+        // day rollups read the hour rollups of a day ordered by job, equality, sort, then range
+        @CompoundIndex(name = "resolution_jobId_periodStart", def = "{'resolution': 1, 'jobId': 1, 'periodStart': 1}"),
+        // hour rollups not yet included in a day rollup
+        @CompoundIndex(name = "resolution_rolledUp_periodStart", def = "{'resolution': 1, 'rolledUp': 1, 'periodStart': 1}")
+})
+public class MetricsRollup {
+
+    @Id
+    private String id;
+    private String jobId;
+    private RollupResolution resolution;
+    private LocalDateTime periodStart;
+    private long total;
+    private long success;
+    private double successRatio;
+    private long latencyP50;
+    private long latencyP95;
+    private long latencyP99;
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expireAt;
+    private Boolean rolledUp;
+
+    public MetricsRollup() {
+    }
+
+    public static String buildId(String jobId, RollupResolution resolution, LocalDateTime periodStart) {
+        return jobId + ":" + resolution + ":" + periodStart;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public RollupResolution getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(RollupResolution resolution) {
+        this.resolution = resolution;
+    }
+
+    public LocalDateTime getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(LocalDateTime periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getSuccess() {
+        return success;
+    }
+
+    public void setSuccess(long success) {
+        this.success = success;
+    }
+
+    public double getSuccessRatio() {
+        return successRatio;
+    }
+
+    public void setSuccessRatio(double successRatio) {
+        this.successRatio = successRatio;
+    }
+
+    public long getLatencyP50() {
+        return latencyP50;
+    }
+
+    public void setLatencyP50(long latencyP50) {
+        this.latencyP50 = latencyP50;
+    }
+
+    public long getLatencyP95() {
+        return latencyP95;
+    }
+
+    public void setLatencyP95(long latencyP95) {
+        this.latencyP95 = latencyP95;
+    }
+
+    public long getLatencyP99() {
+        return latencyP99;
+    }
+
+    public void setLatencyP99(long latencyP99) {
+        this.latencyP99 = latencyP99;
+    }
+
+    public LocalDateTime getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(LocalDateTime expireAt) {
+        this.expireAt = expireAt;
+    }
+
+    /**
+     * @return true once an hour rollup is included in the day rollup of its day; null or false until then.
+     */
+    public Boolean getRolledUp() {
+        return rolledUp;
+    }
+
+    public void setRolledUp(Boolean rolledUp) {
+        this.rolledUp = rolledUp;
+    }
+}
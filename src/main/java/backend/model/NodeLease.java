@@ -0,0 +1,61 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Heartbeat record of a running backend node. Live leases define which nodes take part in job partitioning,
+ * expired ones are removed by the TTL index.
+ */
+@Document
+public class NodeLease {
+
+    @Id
+    private String id;
+    private LocalDateTime heartbeatAt;
+    @Indexed(expireAfterSeconds = 0)
+    private LocalDateTime expiresAt;
+    private String ringVersion;
+
+    public NodeLease() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return version of the hash ring the node currently partitions jobs with; a rebalance is handed over once
+     * every live lease reports the same version.
+     */
+    public String getRingVersion() {
+        return ringVersion;
+    }
+
+    public void setRingVersion(String ringVersion) {
+        this.ringVersion = ringVersion;
+    }
+}
@@ -0,0 +1,93 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * {@link StatusEvent} written to a capped collection by the node where the change happened, so that the status
+ * event bus of every other node can tail it and push the change to its own viewers.
+ */
+@Document
+public class RelayedStatusEvent {
+
+    @Id
+    private String id;
+    private String nodeId;
+    private StatusEvent.Type type;
+    private String projectId;
+    private Incident incident;
+    private Component component;
+    private long createdAt;
+
+    public RelayedStatusEvent() {
+    }
+
+    public RelayedStatusEvent(String nodeId, StatusEvent.Type type, String projectId, Incident incident,
+                              Component component) {
+        this.nodeId = nodeId;
+        this.type = type;
+        this.projectId = projectId;
+        this.incident = incident;
+        this.component = component;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public StatusEvent.Type getType() {
+        return type;
+    }
+
+    public void setType(StatusEvent.Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return project of a component event; incidents are routed by every node from its own component index.
+     */
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(String projectId) {
+        this.projectId = projectId;
+    }
+
+    public Incident getIncident() {
+        return incident;
+    }
+
+    public void setIncident(Incident incident) {
+        this.incident = incident;
+    }
+
+    public Component getComponent() {
+        return component;
+    }
+
+    public void setComponent(Component component) {
+        this.component = component;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+}
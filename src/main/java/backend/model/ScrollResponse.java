@@ -0,0 +1,54 @@
+package backend.model;
+
+import java.util.List;
+
+/**
+ * Page of a keyset paginated listing. {@code nextCursor} is null on the last page; {@code totalCount} is only set
+ * when it was asked for.
+ */
+public class ScrollResponse<T> {
+
+    private List<T> items;
+    private String nextCursor;
+    private int pageSize;
+    private String sortField;
+    private String sortDirection;
+    private Long totalCount;
+
+    public ScrollResponse() {
+    }
+
+    public ScrollResponse(List<T> items, String nextCursor, int pageSize, String sortField, String sortDirection,
+                          Long totalCount) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.pageSize = pageSize;
+        this.sortField = sortField;
+        this.sortDirection = sortDirection;
+        this.totalCount = totalCount;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public String getSortDirection() {
+        return sortDirection;
+    }
+
+    public Long getTotalCount() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,61 @@
+package backend.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Change of an incident or a component pushed to status page viewers, exactly one of {@code incident} and
+ * {@code component} is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatusEvent {
+
+    public enum Type {
+        INCIDENT, COMPONENT
+    }
+
+    private final Type type;
+    private final Incident incident;
+    private final Component component;
+    private final String projectId;
+    private final long timestamp = System.currentTimeMillis();
+
+    private StatusEvent(Type type, Incident incident, Component component, String projectId) {
+        this.type = type;
+        this.incident = incident;
+        this.component = component;
+        this.projectId = projectId;
+    }
+
+    public static StatusEvent ofIncident(String projectId, Incident incident) {
+        return new StatusEvent(Type.INCIDENT, incident, null, projectId);
+    }
+
+    public static StatusEvent ofComponent(String projectId, Component component) {
+        return new StatusEvent(Type.COMPONENT, null, component, projectId);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Incident getIncident() {
+        return incident;
+    }
+
+    public Component getComponent() {
+        return component;
+    }
+
+    /**
+     * @return project of the event, null for an incident whose components belong to no project being streamed.
+     */
+    @JsonIgnore
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,52 @@
+package backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Public status page settings of a project, keyed by the project id. The status of a project is served without
+ * authentication only once it is published.
+ */
+@Document
+public class StatusPage {
+
+    @Id
+    private String projectId;
+    private boolean published;
+    private LocalDateTime updatedAt;
+
+    public StatusPage() {
+    }
+
+    public StatusPage(String projectId, boolean published) {
+        this.projectId = projectId;
+        this.published = published;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(String projectId) {
+        this.projectId = projectId;
+    }
+
+    public boolean isPublished() {
+        return published;
+    }
+
+    public void setPublished(boolean published) {
+        this.published = published;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
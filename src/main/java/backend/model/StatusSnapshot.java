@@ -0,0 +1,151 @@
+package backend.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Everything a public status page shows for a project: the component tree with a status rolled up from the open
+ * incidents of every node and its children, the open incidents and the uptime of every component. Only what is meant
+ * for the public is copied in, never the entities themselves.
+ */
+public class StatusSnapshot {
+
+    public enum Status {
+        OPERATIONAL, DEGRADED, OUTAGE
+    }
+
+    private String projectId;
+    private Status status;
+    /**
+     * When the visible content last changed. Not part of the ETag, a refresh that changes nothing keeps it.
+     */
+    private LocalDateTime generatedAt;
+    private List<ComponentStatus> components = new ArrayList<>();
+    private List<OpenIncident> openIncidents = new ArrayList<>();
+
+    public StatusSnapshot() {
+    }
+
+    public StatusSnapshot(String projectId, Status status, LocalDateTime generatedAt, List<ComponentStatus> components,
+                          List<OpenIncident> openIncidents) {
+        this.projectId = projectId;
+        this.status = status;
+        this.generatedAt = generatedAt;
+        this.components = components;
+        this.openIncidents = openIncidents;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getGeneratedAt() {
+        return generatedAt;
+    }
+
+    public List<ComponentStatus> getComponents() {
+        return components;
+    }
+
+    public List<OpenIncident> getOpenIncidents() {
+        return openIncidents;
+    }
+
+    /**
+     * Public part of an open incident, without the check details of its description and without the job.
+     */
+    public static class OpenIncident {
+
+        private String id;
+        private String name;
+        private IncidentStatus status;
+        private LocalDateTime dateStart;
+        private Set<String> componentIds = new HashSet<>();
+
+        public OpenIncident() {
+        }
+
+        public OpenIncident(Incident incident) {
+            this.id = incident.getId();
+            this.name = incident.getName();
+            this.status = incident.getStatus();
+            this.dateStart = incident.getDateStart();
+            this.componentIds = new HashSet<>(incident.getComponentIds());
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public IncidentStatus getStatus() {
+            return status;
+        }
+
+        public LocalDateTime getDateStart() {
+            return dateStart;
+        }
+
+        public Set<String> getComponentIds() {
+            return componentIds;
+        }
+    }
+
+    public static class ComponentStatus {
+
+        private String id;
+        private String name;
+        private String description;
+        private Status status;
+        /**
+         * Share of successful checks of the component's jobs over the uptime window, null without checks.
+         */
+        private Double uptimeRatio;
+        private List<ComponentStatus> children = new ArrayList<>();
+
+        public ComponentStatus() {
+        }
+
+        public ComponentStatus(Component component, Status status, Double uptimeRatio) {
+            this.id = component.getId();
+            this.name = component.getName();
+            this.description = component.getDescription();
+            this.status = status;
+            this.uptimeRatio = uptimeRatio;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Double getUptimeRatio() {
+            return uptimeRatio;
+        }
+
+        public List<ComponentStatus> getChildren() {
+            return children;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package backend.service;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs blocking checks (Selenium) on a dedicated, bounded pool of worker threads so they never occupy
+ * the Netty event loop. When all workers are busy and the queue is full new tasks are rejected right away.
+ * A task that times out or is cancelled is interrupted, so its worker and whatever it holds are freed.
+ */
+@Component
+public class BlockingJobScheduler {
+
+    @Value("${job.blocking.workers: 8}")
+    private int workers;
+
+    @Value("${job.blocking.queue.size: 200}")
+    private int queueSize;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder rejectedTasks = new LongAdder();
+
+    private final LongAdder timedOutTasks = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new DefaultThreadFactory("blocking-job", true),
+                (runnable, pool) -> {
+                    rejectedTasks.increment();
+                    throw new RejectedExecutionException(String.format(
+                            "Blocking job queue is full (%s workers, %s queued)", workers, queueSize));
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public <T> Mono<T> execute(Callable<T> task, Duration timeout) {
+        return Mono.<T>create(sink -> {
+            Future<?> future;
+            try {
+                future = executor.submit(() -> {
+                    try {
+                        sink.success(task.call());
+                    } catch (Throwable throwable) {
+                        sink.error(throwable);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                sink.error(e);
+                return;
+            }
+            // a timed out or cancelled check interrupts its worker instead of keeping it busy
+            sink.onCancel(() -> future.cancel(true));
+        })
+                .timeout(timeout)
+                .doOnError(TimeoutException.class, e -> timedOutTasks.increment());
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    public long getTimedOutTasks() {
+        return timedOutTasks.sum();
+    }
+}
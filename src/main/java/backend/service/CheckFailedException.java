@@ -0,0 +1,20 @@
+package backend.service;
+
+import backend.model.CheckFailureReason;
+
+/**
+ * Aborts a check with a known {@link CheckFailureReason}.
+ */
+public class CheckFailedException extends RuntimeException {
+
+    private final CheckFailureReason reason;
+
+    public CheckFailedException(CheckFailureReason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public CheckFailureReason getReason() {
+        return reason;
+    }
+}
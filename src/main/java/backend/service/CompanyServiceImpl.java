@@ -10,15 +10,16 @@ import reactor.core.publisher.Mono;
 public class CompanyServiceImpl implements CompanyService {
 
     @Autowired
-    private AccountService accountService;
+    private TenantContextService tenantContextService;
 
     @Autowired
     private CompanyRepository companyRepository;
 
     @Override
     public Mono<Company> getCurrentUserCompany() {
-        return accountService.getCurrentUserAccount()
-                .flatMap(account -> companyRepository.findById(account.getCompanyId()));
+        return tenantContextService.getCurrentTenant()
+                .flatMap(tenant -> Mono.justOrEmpty(tenant.getCompanyId()))
+                .flatMap(companyRepository::findById);
     }
 
     @Override
@@ -32,7 +33,9 @@ public class CompanyServiceImpl implements CompanyService {
                     company.setNotifyFromEmail(newCompany.getNotifyFromEmail());
                     return companyRepository.save(company);
                 })
-                .switchIfEmpty(companyRepository.save(newCompany));
+                .switchIfEmpty(companyRepository.save(newCompany))
+                // cached tenants of the company members may point to the old company
+                .doOnSuccess(company -> tenantContextService.invalidateAll());
     }
 }
 
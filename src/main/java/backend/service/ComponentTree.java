@@ -0,0 +1,50 @@
+package backend.service;
+
+import backend.model.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only parent to children index of the components of one project, built with a single pass over the
+ * project's component list.
+ */
+class ComponentTree {
+
+    private final List<Component> components;
+
+    private final Map<String, Component> componentsById;
+
+    private final Map<String, List<Component>> childrenByParentId;
+
+    ComponentTree(List<Component> components) {
+        this.components = Collections.unmodifiableList(new ArrayList<>(components));
+        this.componentsById = new HashMap<>(components.size() * 2);
+        this.childrenByParentId = new HashMap<>();
+        for (Component component : components) {
+            componentsById.put(component.getId(), component);
+            if (component.getParentId() != null) {
+                childrenByParentId.computeIfAbsent(component.getParentId(), parentId -> new ArrayList<>())
+                        .add(component);
+            }
+        }
+    }
+
+    List<Component> getComponents() {
+        return components;
+    }
+
+    Component getComponent(String componentId) {
+        return componentsById.get(componentId);
+    }
+
+    /**
+     * @return direct children in the order they have in the project.
+     */
+    List<Component> getChildren(String componentId) {
+        return childrenByParentId.getOrDefault(componentId, Collections.emptyList());
+    }
+}
@@ -1,12 +1,21 @@
 package backend.service;
 
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Optional;
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ComponentServiceImpl implements ComponentService {
@@ -15,18 +24,52 @@ public class ComponentServiceImpl implements ComponentService {
     private ProjectService projectService;
 
     @Autowired
-    private ProjectRepository projectRepository;
+    private ReactiveMongoTemplate reactiveMongoTemplate;
 
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    @Value("${component.tree.cache.size: 1000}")
+    private long treeCacheSize;
+
+    @Value("${component.tree.cache.ttl.seconds: 60}")
+    private long treeCacheTtlSeconds;
+
+    /**
+     * Component trees per project id. Component writes of this service drop the project's tree right away,
+     * the TTL bounds staleness after project changes made elsewhere.
+     */
+    private Cache<String, ComponentTree> componentTrees;
+
+    /**
+     * Bumped by every component write before the tree is dropped. A tree read while a write completed may be older
+     * than the write, so it is not cached.
+     */
+    private final AtomicLong treeGeneration = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        componentTrees = Caffeine.newBuilder()
+                .maximumSize(treeCacheSize)
+                .expireAfterWrite(treeCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Appends the component with a single $push, the rest of the project document is neither read nor rewritten.
+     */
     @Override
     public Mono<Component> createComponent(String projectId, Component newComponent) {
         Component component = new Component();
         updateComponentInfo(component, newComponent);
-        return projectService.getProjectById(projectId)
-                .flatMap(project -> {
-                    project.getComponents().add(component);
-                    return saveProjectChanges(project);
-                })
-                .flatMap(project -> Mono.just(component));
+        return reactiveMongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(projectId)),
+                new Update().push("components", component),
+                Project.class)
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(result -> component)
+                .doOnNext(created -> statusEventBus.publishComponent(projectId, created))
+                .doFinally(signal -> invalidateTree(projectId));
     }
 
     @Override
@@ -37,30 +80,43 @@ public class ComponentServiceImpl implements ComponentService {
 
     @Override
     public Flux<Component> getAllComponentsWithChilds(String projectId) {
-        Flux<Component> componentFlux = projectService
-                .getProjectById(projectId)
-                .flatMapIterable(Project::getComponents);
-
-        return componentFlux
-                .expand(f -> findByParentId(componentFlux, f.getId()));
+        return getComponentTree(projectId)
+                .flatMapMany(tree -> Flux.fromIterable(tree.getComponents())
+                        .expand(component -> Flux.fromIterable(tree.getChildren(component.getId()))));
     }
 
     @Override
     public Flux<Component> getAllComponentsByIdWithChilds(String projectId, String componentId) {
-        Flux<Component> componentFlux = projectService
-                .getProjectById(projectId)
-                .flatMapIterable(Project::getComponents);
-
-        return componentFlux
-                .filter(c -> c.getId().equals(componentId))
-                .expand(f -> findByParentId(componentFlux, f.getId()));
+        return getComponentTree(projectId)
+                .flatMapMany(tree -> Mono.justOrEmpty(tree.getComponent(componentId))
+                        .expand(component -> Flux.fromIterable(tree.getChildren(component.getId()))));
     }
 
+    /**
+     * Reads the project once and indexes its components by parent, so a subtree is walked without going back to
+     * the database for every node.
+     */
+    private Mono<ComponentTree> getComponentTree(String projectId) {
+        return Mono.defer(() -> {
+            ComponentTree cachedTree = componentTrees.getIfPresent(projectId);
+            if (cachedTree != null) {
+                return Mono.just(cachedTree);
+            }
+            long generation = treeGeneration.get();
+            return projectService.getProjectById(projectId)
+                    .map(project -> {
+                        ComponentTree tree = new ComponentTree(project.getComponents());
+                        // atomic with the invalidation, so a write either stops the put or drops the put tree
+                        componentTrees.asMap().compute(projectId, (key, current) ->
+                                generation == treeGeneration.get() ? tree : current);
+                        return tree;
+                    });
+        });
+    }
 
-    private Flux<Component> findByParentId(Flux<Component> componentFlux, String componentId) {
-        return componentFlux
-                .filter(component -> component.getParentId() != null)
-                .filter(cid -> componentId.equals(cid.getParentId()));
+    private void invalidateTree(String projectId) {
+        treeGeneration.incrementAndGet();
+        componentTrees.invalidate(projectId);
     }
 
     @Override
@@ -70,24 +126,26 @@ public class ComponentServiceImpl implements ComponentService {
                 .filter(cid -> cid.getId().equals(componentId)).singleOrEmpty();
     }
 
+    /**
+     * Sets the fields of the matched array element in place with positional $set, so concurrent edits of other
+     * components or fields of the same project are not overwritten.
+     */
     @Override
     public Mono<Component> updateComponent(String projectId, String componentId, Component updatedComponent) {
-        return projectService.getProjectById(projectId)
-                .flatMap(project -> {
-                    Optional<Component> existingComponent = project.getComponents().stream()
-                            .filter(component -> component.getId().equals(componentId))
-                            .findFirst();
-                    if (existingComponent.isPresent()) {
-                        updateComponentInfo(existingComponent.get(), updatedComponent);
-                        return saveProjectChanges(project).flatMap(p -> Mono.just(updatedComponent));
-                    } else {
-                        return Mono.empty();
-                    }
-                });
-    }
-
-    private Mono<Project> saveProjectChanges(Project project) {
-        return projectRepository.save(project);
+        return reactiveMongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(projectId).and("components.id").is(componentId)),
+                new Update()
+                        .set("components.$.name", updatedComponent.getName())
+                        .set("components.$.description", updatedComponent.getDescription())
+                        .set("components.$.parentId", updatedComponent.getParentId()),
+                Project.class)
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(result -> {
+                    updatedComponent.setId(componentId);
+                    return updatedComponent;
+                })
+                .doOnNext(updated -> statusEventBus.publishComponent(projectId, updated))
+                .doFinally(signal -> invalidateTree(projectId));
     }
 
     private void updateComponentInfo(Component component, Component newComponent) {
@@ -13,6 +13,7 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
@@ -37,7 +38,7 @@ public class FixtureServiceImpl implements FixtureService {
     private JobRepository jobRepository;
 
     @Autowired
-    private MetricsStatsRepository metricsStatsRepository;
+    private MetricsStatsWriter metricsStatsWriter;
 
     @Value("${enable.fixture.bootstrap:false}")
     private Boolean bootstrapEnabled;
@@ -187,13 +188,14 @@ public class FixtureServiceImpl implements FixtureService {
                 LocalDateTime.now().minus(1, ChronoUnit.DAYS),
                 LocalDateTime.now()));
 
-        Flux<MetricsStats> metricsStatsPerJobFlux = Flux.fromStream(Stream.iterate(0, i -> i + 1)
-                .limit(METRICS_PER_JOB_AMOUNT)
-                .map(i -> new MetricsStats(job.getId(),
-                        MetricsStatus.SUCCESS,
-                        "Info " + i,
-                        LocalDateTime.now().minus(i, ChronoUnit.SECONDS))))
-                .flatMap(metricsStats -> metricsStatsRepository.save(metricsStats));
+        Flux<MetricsStats> metricsStatsPerJobFlux = Flux.defer(() -> metricsStatsWriter.writeAll(
+                Stream.iterate(0, i -> i + 1)
+                        .limit(METRICS_PER_JOB_AMOUNT)
+                        .map(i -> new MetricsStats(job.getId(),
+                                MetricsStatus.SUCCESS,
+                                "Info " + i,
+                                LocalDateTime.now().minus(i, ChronoUnit.SECONDS)))
+                        .collect(Collectors.toList())));
 
         return incidentMono.thenMany(metricsStatsPerJobFlux);
     }
@@ -0,0 +1,232 @@
+package backend.service;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket per target host. Checks do not wait for a token, they reserve the next free slot of their host and
+ * are started when it comes, so checks to the same host are spread over time in the order they asked for a slot.
+ * Limits are {@code job.host.rate.per.second} and {@code job.host.burst}, overridden per host by
+ * {@code job.host.limits}, e.g. {@code api.example.com=5:10,slow.example.com=0.5}.
+ */
+@Component
+public class HostRateLimiter {
+
+    @Autowired
+    private Logger logger;
+
+    @Value("${job.host.rate.limit.enabled: true}")
+    private Boolean enabled;
+
+    @Value("${job.host.rate.per.second: 2}")
+    private double defaultRatePerSecond;
+
+    @Value("${job.host.burst: 4}")
+    private double defaultBurst;
+
+    @Value("${job.host.limits:}")
+    private String hostLimits;
+
+    @Value("${job.host.max.wait.millis: 30000}")
+    private long maxWaitMillis;
+
+    private final Map<String, double[]> limitsByHost = new HashMap<>();
+
+    private final Map<String, HostBucket> buckets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String hostLimit : hostLimits.split(",")) {
+            if (hostLimit.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                String[] hostAndLimit = hostLimit.trim().split("=");
+                String[] rateAndBurst = hostAndLimit[1].split(":");
+                double rate = Double.parseDouble(rateAndBurst[0]);
+                double burst = rateAndBurst.length > 1 ? Double.parseDouble(rateAndBurst[1]) : Math.max(1, rate);
+                if (rate <= 0) {
+                    throw new IllegalArgumentException("rate has to be positive");
+                }
+                limitsByHost.put(hostAndLimit[0].trim().toLowerCase(Locale.ROOT), new double[]{rate, burst});
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Wrong job.host.limits entry: " + hostLimit, e);
+            }
+        }
+    }
+
+    /**
+     * @return reservation of the next slot of the URL's host, {@link Reservation#NONE} when the URL is not limited,
+     * or null when the host is already booked further ahead than {@code job.host.max.wait.millis}.
+     */
+    public Reservation reserve(String url) {
+        String host = hostOf(url);
+        if (!enabled || host == null) {
+            return Reservation.NONE;
+        }
+        HostBucket bucket = buckets.computeIfAbsent(host, this::newBucket);
+        long waitMillis = bucket.reserve(System.currentTimeMillis(), maxWaitMillis);
+        if (waitMillis < 0) {
+            bucket.rejected.increment();
+            logger.warn(String.format("Host %s is booked for more than %s ms, skipping this run", host, maxWaitMillis));
+            return null;
+        }
+        bucket.reservations.increment();
+        bucket.totalWaitMillis.add(waitMillis);
+        bucket.maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        if (waitMillis > 0) {
+            bucket.queued.increment();
+        }
+        return new Reservation(bucket, waitMillis);
+    }
+
+    public Map<String, HostStats> getHostStats() {
+        Map<String, HostStats> stats = new HashMap<>();
+        buckets.forEach((host, bucket) -> stats.put(host, new HostStats(bucket)));
+        return stats;
+    }
+
+    private HostBucket newBucket(String host) {
+        double[] limit = limitsByHost.getOrDefault(host, new double[]{defaultRatePerSecond, defaultBurst});
+        return new HostBucket(limit[0], limit[1]);
+    }
+
+    private String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static class Reservation {
+
+        static final Reservation NONE = new Reservation(null, 0);
+
+        private final HostBucket bucket;
+        private final long waitMillis;
+        private boolean completed;
+
+        private Reservation(HostBucket bucket, long waitMillis) {
+            this.bucket = bucket;
+            this.waitMillis = waitMillis;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        /**
+         * Has to be called once the check starts or is dropped, to take it off its host queue.
+         */
+        public synchronized void complete() {
+            if (!completed && bucket != null && waitMillis > 0) {
+                bucket.queued.decrement();
+            }
+            completed = true;
+        }
+    }
+
+    public static class HostStats {
+
+        private final double ratePerSecond;
+        private final long queueDepth;
+        private final long reservations;
+        private final long rejected;
+        private final long averageWaitMillis;
+        private final long maxWaitMillis;
+
+        private HostStats(HostBucket bucket) {
+            this.ratePerSecond = bucket.ratePerSecond;
+            this.queueDepth = bucket.queued.sum();
+            this.reservations = bucket.reservations.sum();
+            this.rejected = bucket.rejected.sum();
+            this.averageWaitMillis = reservations == 0 ? 0 : bucket.totalWaitMillis.sum() / reservations;
+            this.maxWaitMillis = bucket.maxWaitMillis.get();
+        }
+
+        public double getRatePerSecond() {
+            return ratePerSecond;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getReservations() {
+            return reservations;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+    }
+
+    private static class HostBucket {
+
+        private final double ratePerSecond;
+        private final double burst;
+        private final double intervalMillis;
+        private double storedTokens;
+        private double nextFreeMillis;
+
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder reservations = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder totalWaitMillis = new LongAdder();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        HostBucket(double ratePerSecond, double burst) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = Math.max(1, burst);
+            this.intervalMillis = TimeUnit.SECONDS.toMillis(1) / ratePerSecond;
+            this.storedTokens = this.burst;
+        }
+
+        /**
+         * {@code storedTokens} are the tokens available at {@code nextFreeMillis}. A reservation takes what is stored
+         * and waits for the rest of its token, so the slot it gets is the one it actually consumed.
+         *
+         * @return millis until the reserved slot, or -1 when it would be later than the max wait.
+         */
+        synchronized long reserve(long nowMillis, long maxWaitMillis) {
+            if (nowMillis > nextFreeMillis) {
+                storedTokens = Math.min(burst, storedTokens + (nowMillis - nextFreeMillis) / intervalMillis);
+                nextFreeMillis = nowMillis;
+            }
+            double fromStored = Math.min(1, storedTokens);
+            double slotMillis = nextFreeMillis + (1 - fromStored) * intervalMillis;
+            long waitMillis = (long) Math.ceil(slotMillis - nowMillis);
+            if (waitMillis > maxWaitMillis) {
+                return -1;
+            }
+            storedTokens -= fromStored;
+            nextFreeMillis = slotMillis;
+            return waitMillis;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package backend.service;
+
+import backend.model.IncidentStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the {@code filters} parameter of incident listings to Mongo criteria. A filter is a {@code ;} separated
+ * list of {@code field:operator:value} clauses that all have to match, e.g.
+ * {@code status:eq:OPENED;dateStart:gte:2018-07-01;name:prefix:Api}. Only fields and operators that are backed by
+ * an incident index are accepted, everything else is rejected with {@link IllegalArgumentException} instead of
+ * being run as a collection scan. Compiled filters are cached by their text.
+ */
+@Component
+public class IncidentFilterParser {
+
+    private static final int MAX_VALUE_LENGTH = 200;
+
+    private static final Pattern PLAIN_PREFIX = Pattern.compile("[\\w -]+");
+
+    private static final Map<String, FieldRule> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("status", new FieldRule(EnumSet.of(Operator.EQ, Operator.IN), IncidentStatus::valueOf));
+        FIELDS.put("jobId", new FieldRule(EnumSet.of(Operator.EQ), value -> value));
+        FIELDS.put("componentIds", new FieldRule(EnumSet.of(Operator.EQ, Operator.IN), value -> value));
+        FIELDS.put("name", new FieldRule(EnumSet.of(Operator.EQ, Operator.PREFIX), value -> value));
+        Set<Operator> rangeOperators = EnumSet.of(Operator.EQ, Operator.GT, Operator.GTE, Operator.LT, Operator.LTE);
+        FIELDS.put("dateStart", new FieldRule(rangeOperators, IncidentFilterParser::parseDateTime));
+        FIELDS.put("dateEnd", new FieldRule(rangeOperators, IncidentFilterParser::parseDateTime));
+        FIELDS.put("updatedAt", new FieldRule(rangeOperators, IncidentFilterParser::parseDateTime));
+    }
+
+    @Value("${incident.filter.max.clauses: 5}")
+    private int maxClauses;
+
+    @Value("${incident.filter.max.values: 20}")
+    private int maxValues;
+
+    @Value("${incident.filter.cache.size: 1000}")
+    private long cacheSize;
+
+    private Cache<String, List<Criteria>> compiledFilters;
+
+    @PostConstruct
+    public void init() {
+        compiledFilters = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    /**
+     * @return criteria of every clause, empty for a blank filter.
+     * @throws IllegalArgumentException when the filter is malformed or uses a field or operator that is not allowed.
+     */
+    public List<Criteria> parse(String filters) {
+        if (filters == null || filters.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        // invalid filters are not cached, compiling throws before anything is stored
+        return compiledFilters.get(filters.trim(), this::compile);
+    }
+
+    private List<Criteria> compile(String filters) {
+        String[] clauses = filters.split(";");
+        if (clauses.length > maxClauses) {
+            throw new IllegalArgumentException(String.format("At most %s filter clauses are allowed", maxClauses));
+        }
+        List<Criteria> criteria = new ArrayList<>();
+        for (String clause : clauses) {
+            String[] parts = clause.trim().split(":", 3);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Filter clause has to be field:operator:value, got: " + clause);
+            }
+            FieldRule rule = FIELDS.get(parts[0]);
+            if (rule == null) {
+                throw new IllegalArgumentException("Incidents cannot be filtered by " + parts[0]);
+            }
+            Operator operator = Operator.of(parts[1]);
+            if (operator == null || !rule.operators.contains(operator)) {
+                throw new IllegalArgumentException(String.format("Operator %s is not allowed for %s", parts[1], parts[0]));
+            }
+            if (parts[2].length() > MAX_VALUE_LENGTH) {
+                throw new IllegalArgumentException("Filter value is too long: " + parts[0]);
+            }
+            criteria.add(toCriteria(parts[0], operator, parts[2], rule));
+        }
+        return Collections.unmodifiableList(criteria);
+    }
+
+    private Criteria toCriteria(String field, Operator operator, String value, FieldRule rule) {
+        Criteria criteria = Criteria.where(field);
+        switch (operator) {
+            case IN:
+                List<String> values = Arrays.asList(value.split(","));
+                if (values.size() > maxValues) {
+                    throw new IllegalArgumentException(String.format("At most %s values are allowed for %s",
+                            maxValues, field));
+                }
+                return criteria.in(values.stream().map(String::trim).map(rule.parse).collect(Collectors.toList()));
+            case PREFIX:
+                // only an anchored prefix of plain characters is turned into index bounds by Mongo
+                if (!PLAIN_PREFIX.matcher(value).matches()) {
+                    throw new IllegalArgumentException("Prefix may contain letters, digits, spaces, - and _ only");
+                }
+                return criteria.regex("^" + value);
+            case GT:
+                return criteria.gt(rule.parse.apply(value));
+            case GTE:
+                return criteria.gte(rule.parse.apply(value));
+            case LT:
+                return criteria.lt(rule.parse.apply(value));
+            case LTE:
+                return criteria.lte(rule.parse.apply(value));
+            case EQ:
+            default:
+                return criteria.is(rule.parse.apply(value));
+        }
+    }
+
+    private static Object parseDateTime(String value) {
+        try {
+            return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Filter value is not a date: " + value, e);
+        }
+    }
+
+    private enum Operator {
+        EQ, IN, PREFIX, GT, GTE, LT, LTE;
+
+        static Operator of(String name) {
+            for (Operator operator : values()) {
+                if (operator.name().equalsIgnoreCase(name)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class FieldRule {
+
+        private final Set<Operator> operators;
+        private final Function<String, Object> parse;
+
+        FieldRule(Set<Operator> operators, Function<String, Object> parse) {
+            this.operators = operators;
+            this.parse = parse;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package backend.service;
+
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.ScrollResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Listing of the incidents of a project. Keyset pages continue right after the (sort value, id) of the last
+ * incident of the previous page, which the client gets back as an opaque cursor, so every page costs the same no
+ * matter how deep it is; offset pages are kept for the classic listing but limited in depth. Sort fields and
+ * filters are restricted to indexed ones, totals are cached for a short time.
+ */
+@Service
+public class IncidentScrollService {
+
+    private static final Map<String, SortKey> SORT_KEYS = new HashMap<>();
+
+    static {
+        SORT_KEYS.put("name", new SortKey(Incident::getName, value -> value));
+        SORT_KEYS.put("status", new SortKey(incident -> incident.getStatus() == null ? null : incident.getStatus().name(),
+                IncidentStatus::valueOf));
+        SORT_KEYS.put("dateStart", new SortKey(incident -> incident.getDateStart() == null ? null :
+                incident.getDateStart().toString(), LocalDateTime::parse));
+        SORT_KEYS.put("dateEnd", new SortKey(incident -> incident.getDateEnd() == null ? null :
+                incident.getDateEnd().toString(), LocalDateTime::parse));
+        SORT_KEYS.put("updatedAt", new SortKey(incident -> incident.getUpdatedAt() == null ? null :
+                incident.getUpdatedAt().toString(), LocalDateTime::parse));
+    }
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ComponentService componentService;
+
+    @Autowired
+    private IncidentFilterParser incidentFilterParser;
+
+    @Value("${incident.page.max.size: 100}")
+    private int maxPageSize;
+
+    @Value("${incident.page.max.offset: 10000}")
+    private long maxOffset;
+
+    @Value("${incident.count.cache.size: 10000}")
+    private long countCacheSize;
+
+    @Value("${incident.count.cache.ttl.seconds: 30}")
+    private long countCacheTtlSeconds;
+
+    private Cache<String, Long> counts;
+
+    @PostConstruct
+    public void init() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(countCacheSize)
+                .expireAfterWrite(countCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param filters   filter in the syntax of {@link IncidentFilterParser}, may be null.
+     * @param cursor    cursor of the previous page, null for the first page.
+     * @param withCount whether to include the total, which may be up to {@code incident.count.cache.ttl.seconds}
+     *                  old.
+     * @throws IllegalArgumentException (as error signal) for an unknown sort field, a filter that is not allowed
+     *                                  or a cursor that is broken or was issued for a different sort.
+     */
+    public Mono<ScrollResponse<Incident>> scroll(String projectId, String filters, String cursor, int pageSize,
+                                                 String sortField, String sortDirection, boolean withCount) {
+        return Mono.defer(() -> {
+            SortKey sortKey = getSortKey(sortField);
+            Sort.Direction direction = Sort.Direction.fromString(sortDirection);
+            int limit = Math.max(1, Math.min(pageSize, maxPageSize));
+            Cursor after = cursor == null || cursor.isEmpty() ? null : Cursor.decode(cursor, sortField, direction);
+            List<Criteria> filterCriteria = incidentFilterParser.parse(filters);
+
+            return getProjectCriteria(projectId)
+                    .flatMap(projectCriteria -> {
+                        List<Criteria> criteria = new ArrayList<>(filterCriteria);
+                        criteria.add(projectCriteria);
+                        if (after != null) {
+                            criteria.add(after.toCriteria(sortField, direction, sortKey));
+                        }
+                        Query query = toQuery(criteria)
+                                .with(Sort.by(direction, sortField).and(Sort.by(direction, "id")))
+                                .limit(limit);
+
+                        Mono<List<Incident>> page = reactiveMongoTemplate.find(query, Incident.class).collectList();
+                        Mono<Long> count = withCount ? countIncidents(projectId, filters) : Mono.just(-1L);
+                        return page.zipWith(count, (incidents, total) -> {
+                            String nextCursor = incidents.size() < limit ? null :
+                                    new Cursor(sortField, direction,
+                                            sortKey.valueOf.apply(incidents.get(incidents.size() - 1)),
+                                            incidents.get(incidents.size() - 1).getId()).encode();
+                            return new ScrollResponse<>(incidents, nextCursor, limit, sortField,
+                                    direction.name().toLowerCase(), total < 0 ? null : total);
+                        });
+                    });
+        });
+    }
+
+    /**
+     * @return page size actually served for the requested one, at most {@code incident.page.max.size}.
+     */
+    public int getPageSize(int requestedPageSize) {
+        return Math.max(1, Math.min(requestedPageSize, maxPageSize));
+    }
+
+    /**
+     * Offset page for clients of the classic page listing. Skipped incidents are still read by Mongo, so pages are
+     * only served up to {@code incident.page.max.offset} incidents deep, deeper listing has to use the cursor.
+     *
+     * @param page 1 based page number.
+     * @throws IllegalArgumentException (as error signal) for an unknown sort field, a filter that is not allowed or
+     *                                  a page beyond the max offset.
+     */
+    public Flux<Incident> findPage(String projectId, String filters, int page, int pageSize, String sortField,
+                                   String sortDirection) {
+        return Flux.defer(() -> {
+            getSortKey(sortField);
+            Sort.Direction direction = Sort.Direction.fromString(sortDirection);
+            int limit = getPageSize(pageSize);
+            long offset = (long) (Math.max(1, page) - 1) * limit;
+            if (offset > maxOffset) {
+                return Flux.error(new IllegalArgumentException(String.format(
+                        "Pages deeper than %s incidents are not served, use the cursor listing instead", maxOffset)));
+            }
+            List<Criteria> filterCriteria = incidentFilterParser.parse(filters);
+
+            return getProjectCriteria(projectId)
+                    .flatMapMany(projectCriteria -> {
+                        List<Criteria> criteria = new ArrayList<>(filterCriteria);
+                        criteria.add(projectCriteria);
+                        Query query = toQuery(criteria)
+                                .with(Sort.by(direction, sortField).and(Sort.by(direction, "id")))
+                                .skip(offset)
+                                .limit(limit);
+                        return reactiveMongoTemplate.find(query, Incident.class);
+                    });
+        });
+    }
+
+    /**
+     * @return number of the project's incidents matching the filter, up to {@code incident.count.cache.ttl.seconds}
+     * old.
+     */
+    public Mono<Long> countIncidents(String projectId, String filters) {
+        return Mono.defer(() -> {
+            String key = projectId + "|" + (filters == null ? "" : filters.trim());
+            Long cached = counts.getIfPresent(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            List<Criteria> filterCriteria = incidentFilterParser.parse(filters);
+            return getProjectCriteria(projectId)
+                    .flatMap(projectCriteria -> {
+                        List<Criteria> criteria = new ArrayList<>(filterCriteria);
+                        criteria.add(projectCriteria);
+                        return reactiveMongoTemplate.count(toQuery(criteria), Incident.class);
+                    })
+                    .doOnNext(count -> counts.put(key, count));
+        });
+    }
+
+    private SortKey getSortKey(String sortField) {
+        SortKey sortKey = SORT_KEYS.get(sortField);
+        if (sortKey == null) {
+            throw new IllegalArgumentException("Incidents cannot be sorted by " + sortField);
+        }
+        return sortKey;
+    }
+
+    private Mono<Criteria> getProjectCriteria(String projectId) {
+        return componentService.getAllComponents(projectId)
+                .map(Component::getId)
+                .collectList()
+                .map(componentIds -> Criteria.where("componentIds").in(componentIds));
+    }
+
+    /**
+     * Clauses on the same field, like a filter range next to the cursor position, only combine under $and.
+     */
+    private Query toQuery(List<Criteria> criteria) {
+        return new Query(criteria.size() == 1 ? criteria.get(0) :
+                new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+    }
+
+    private static class SortKey {
+
+        private final Function<Incident, String> valueOf;
+        private final Function<String, Object> parse;
+
+        SortKey(Function<Incident, String> valueOf, Function<String, Object> parse) {
+            this.valueOf = valueOf;
+            this.parse = parse;
+        }
+    }
+
+    /**
+     * Position after the last incident of a page. Mongo sorts missing values first, so null sort values are
+     * handled explicitly; values of other types never compare with them.
+     */
+    private static class Cursor {
+
+        private final String sortField;
+        private final Sort.Direction direction;
+        private final String value;
+        private final String id;
+
+        Cursor(String sortField, Sort.Direction direction, String value, String id) {
+            this.sortField = sortField;
+            this.direction = direction;
+            this.value = value;
+            this.id = id;
+        }
+
+        String encode() {
+            Document document = new Document("f", sortField)
+                    .append("d", direction.name())
+                    .append("v", value)
+                    .append("id", id);
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(document.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor, String sortField, Sort.Direction direction) {
+            Cursor decoded;
+            try {
+                Document document = Document.parse(new String(Base64.getUrlDecoder().decode(cursor),
+                        StandardCharsets.UTF_8));
+                decoded = new Cursor(document.getString("f"), Sort.Direction.valueOf(document.getString("d")),
+                        document.getString("v"), document.getString("id"));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor", e);
+            }
+            if (!sortField.equals(decoded.sortField) || direction != decoded.direction || decoded.id == null) {
+                throw new IllegalArgumentException("Cursor was issued for a different sort");
+            }
+            return decoded;
+        }
+
+        Criteria toCriteria(String field, Sort.Direction direction, SortKey sortKey) {
+            Object sortValue;
+            try {
+                sortValue = value == null ? null : sortKey.parse.apply(value);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor", e);
+            }
+            if (direction == Sort.Direction.ASC) {
+                if (sortValue == null) {
+                    return new Criteria().orOperator(
+                            new Criteria().andOperator(Criteria.where(field).is(null), Criteria.where("id").gt(id)),
+                            Criteria.where(field).ne(null));
+                }
+                return new Criteria().orOperator(
+                        Criteria.where(field).gt(sortValue),
+                        new Criteria().andOperator(Criteria.where(field).is(sortValue), Criteria.where("id").gt(id)));
+            }
+            if (sortValue == null) {
+                return new Criteria().andOperator(Criteria.where(field).is(null), Criteria.where("id").lt(id));
+            }
+            return new Criteria().orOperator(
+                    Criteria.where(field).lt(sortValue),
+                    new Criteria().andOperator(Criteria.where(field).is(sortValue), Criteria.where("id").lt(id)),
+                    Criteria.where(field).is(null));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package backend.service;
+
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-through cache of the current incident state per job, so that checks of healthy jobs can skip the incident
+ * lookup. A job without an entry is unknown and has to be read from Mongo; a job known to have no incident is
+ * cached with an empty incident id. A state read before the job was invalidated is not cached, callers take a
+ * {@link #generation()} before reading and pass it to {@link #put(String, Incident, long)}.
+ */
+@Component
+public class IncidentStateCache {
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private JobPartitionService jobPartitionService;
+
+    @Value("${incident.cache.ttl.seconds: 300}")
+    private int ttlSeconds;
+
+    private final Map<String, IncidentState> states = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Map<String, Long> invalidatedAt = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @PostConstruct
+    public void warmUp() {
+        // a job run by another node meanwhile may come back with a stale entry, forget only the jobs that moved
+        jobPartitionService.addRebalanceListener(() -> states.keySet().stream()
+                .filter(jobPartitionService::isMovedByLastRebalance)
+                .forEach(this::invalidate));
+
+        long warmUpGeneration = generation();
+        reactiveMongoTemplate.find(Query.query(Criteria.where("status").is(IncidentStatus.OPENED)), Incident.class)
+                .filter(incident -> incident.getJobId() != null)
+                .doOnNext(incident -> put(incident.getJobId(), incident, warmUpGeneration))
+                .count()
+                .subscribe(count -> logger.info(String.format("Incident state cache warmed up with %s open incidents", count)),
+                        throwable -> logger.error("Cannot warm up incident state cache: ", throwable));
+    }
+
+    /**
+     * @return cached state of the job incident or null when the state is unknown.
+     */
+    public IncidentState get(String jobId) {
+        IncidentState state = jobId == null ? null : states.get(jobId);
+        if (state != null && state.isExpired(TimeUnit.SECONDS.toMillis(ttlSeconds))) {
+            states.remove(jobId, state);
+            state = null;
+        }
+        if (state == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return state;
+    }
+
+    /**
+     * @return generation to pass to {@link #put(String, Incident, long)} for a state read after this call.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(String jobId, Incident incident, long readGeneration) {
+        putIfNotInvalidated(jobId, new IncidentState(incident.getId(), incident.getStatus()), readGeneration);
+    }
+
+    public void putNone(String jobId, long readGeneration) {
+        putIfNotInvalidated(jobId, IncidentState.none(), readGeneration);
+    }
+
+    public void invalidate(String jobId) {
+        if (jobId != null) {
+            // marked before removing, so a put racing with the removal is either rejected or removed right after
+            invalidatedAt.put(jobId, generation.incrementAndGet());
+            states.remove(jobId);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void putIfNotInvalidated(String jobId, IncidentState state, long readGeneration) {
+        if (jobId != null) {
+            states.compute(jobId, (id, current) ->
+                    invalidatedAt.getOrDefault(id, 0L) > readGeneration ? current : state);
+        }
+    }
+
+    public static class IncidentState {
+
+        private final String incidentId;
+        private final IncidentStatus status;
+        private final long cachedAtMillis = System.currentTimeMillis();
+
+        private IncidentState(String incidentId, IncidentStatus status) {
+            this.incidentId = incidentId;
+            this.status = status;
+        }
+
+        static IncidentState none() {
+            return new IncidentState(null, null);
+        }
+
+        public String getIncidentId() {
+            return incidentId;
+        }
+
+        public IncidentStatus getStatus() {
+            return status;
+        }
+
+        public boolean hasIncident() {
+            return incidentId != null;
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - cachedAtMillis > ttlMillis;
+        }
+    }
+}
@@ -1,38 +1,46 @@
 package backend.service;
 
-
-
+import backend.config.InstrumentedPoolResources;
+import backend.model.CheckFailureReason;
+import backend.model.CheckTimings;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
 import org.openqa.selenium.By;
 import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.StringReader;
-import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 
 @Service
@@ -45,40 +53,113 @@ public class JobExecutionServiceImpl implements JobExecutionService {
     private WebClient webClient;
 
     @Autowired
-    private MetricsStatsRepository metricsStatsRepository;
+    @Qualifier("checkPoolResources")
+    private InstrumentedPoolResources checkPoolResources;
+
+    @Autowired
+    private MetricsStatsWriter metricsStatsWriter;
 
     @Autowired
     private IncidentRepository incidentRepository;
 
-    @Value("${selenium.hub.url}")
-    private String seleniumHubUrl;
+    @Autowired
+    private IncidentStateCache incidentStateCache;
+
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    @Autowired
+    private SelectorCache selectorCache;
+
+    @Autowired
+    private StreamingSelectorEvaluator streamingSelectorEvaluator;
+
+    @Autowired
+    private WebDriverSessionPool webDriverSessionPool;
+
+    @Autowired
+    private BlockingJobScheduler blockingJobScheduler;
 
     @Value("${selenium.pageload.wait.timeout: 5}")
     private int pageLoadWaitTimeout;
 
+    @Value("${selenium.job.timeout.seconds: 60}")
+    private int domJobTimeout;
+
+    @Value("${job.endpoint.streaming.enabled: false}")
+    private Boolean endpointStreamingEnabled;
+
+    @Value("${job.check.max.response.bytes: 10485760}")
+    private long defaultMaxResponseBytes;
+
+    @Value("${job.check.max.ttfb.millis: 3000}")
+    private long defaultMaxTimeToFirstByteMillis;
+
+    @Value("${job.check.max.total.millis: 10000}")
+    private long defaultMaxTotalTimeMillis;
+
+    @Value("${job.check.discard.max.bytes: 65536}")
+    private long maxDiscardBytes;
+
     @Override
     public Mono<MetricsStats> executeJob(Job job) {
+        return Mono.defer(() -> {
+            long startedAt = System.currentTimeMillis();
+            return runCheck(job)
+                    .flatMap(checkResult -> saveJobResults(checkResult, job, System.currentTimeMillis() - startedAt));
+        });
+    }
+
+    private Mono<CheckResult> runCheck(Job job) {
         return Mono.defer(() -> {
             switch (job.getType()) {
                 case DOM_NODE:
                     logger.info(String.format("Starting DOM Monitoring job: %s, id: %s", job.getName(), job.getId()));
-                    return domMonitoringJob(job);
+                    return blockingJobScheduler
+                            .execute(() -> domMonitoringJob(job), domJobTimeout(job))
+                            .onErrorResume(this::isOverload, throwable -> skipped(job, throwable))
+                            .onErrorResume(java.util.concurrent.TimeoutException.class,
+                                    e -> Mono.just(failed(job, domTimeExceeded(job))))
+                            .onErrorResume(throwable -> Mono.just(failed(job, throwable)));
                 case STATUS_CODE:
                     logger.info(String.format("Starting Status Code monitoring job: %s, id: %s", job.getName(), job.getId()));
-                    return statusCodeMonitoringJob(job);
+                    return timed(job, timer -> statusCodeMonitoringJob(job, timer));
                 case ENDPOINT:
                     logger.info(String.format("Starting Endpoint monitoring job: %s, id: %s", job.getName(), job.getId()));
-                    return endpointMonitoringJob(job);
+                    return timed(job, timer -> endpointMonitoringJob(job, timer));
                 case SCREENSHOT:
                 default:
                     return Mono.empty();
             }
-        }).flatMap(metricsStats -> saveJobResults(metricsStats, job));
+        });
     }
 
-    private Mono<MetricsStats> saveJobResults(MetricsStats metricsStats, Job job) {
-        return incidentRepository.findByJobId(job.getId())
-                .next()
+    private Mono<MetricsStats> saveJobResults(CheckResult checkResult, Job job, long latencyMillis) {
+        return updateJobIncident(checkResult.metricsStats, job)
+                .then(metricsStatsWriter.write(checkResult.metricsStats, latencyMillis, checkResult.failureReason,
+                        checkResult.timings));
+    }
+
+    private Mono<Incident> updateJobIncident(MetricsStats metricsStats, Job job) {
+        // an incident changed through the API meanwhile invalidates the job, the state read below is not cached then
+        long generation = incidentStateCache.generation();
+        IncidentStateCache.IncidentState cachedState = incidentStateCache.get(job.getId());
+        if (cachedState != null && MetricsStatus.SUCCESS == metricsStats.getStatus()
+                && IncidentStatus.OPENED != cachedState.getStatus()) {
+            // healthy job without an open incident, nothing to read or update
+            return Mono.empty();
+        }
+
+        Mono<Incident> currentIncident;
+        if (cachedState == null) {
+            currentIncident = incidentRepository.findByJobId(job.getId()).next();
+        } else if (cachedState.hasIncident()) {
+            currentIncident = incidentRepository.findById(cachedState.getIncidentId());
+        } else {
+            currentIncident = Mono.empty();
+        }
+
+        return currentIncident
                 .flatMap(incident -> {
                     switch (metricsStats.getStatus()) {
                         case FAIL:
@@ -89,38 +170,50 @@ public class JobExecutionServiceImpl implements JobExecutionService {
                             incident.setDescription(metricsStats.getDetailedInfo());
                             incident.setUpdatedAt(LocalDateTime.now());
                             incident.setDateEnd(null);
-                            break;
+                            return saveIncident(incident);
                         case SUCCESS:
                             if (IncidentStatus.RESOLVED != incident.getStatus()) {
                                 incident.setStatus(IncidentStatus.RESOLVED);
                                 incident.setDateEnd(LocalDateTime.now());
                                 incident.setUpdatedAt(LocalDateTime.now());
+                                return saveIncident(incident);
                             }
-                            break;
+                            return Mono.just(incident);
                         default:
-                            break;
+                            return Mono.just(incident);
                     }
-                    return incidentRepository.save(incident);
                 })
                 .switchIfEmpty(Mono.defer(() -> {
                     if (MetricsStatus.FAIL == metricsStats.getStatus()) {
                         Incident newIncident = new Incident(job.getComponentIds(), job.getId(),
                                 "Incident for job: " + job.getName(), metricsStats.getDetailedInfo(),
                                 IncidentStatus.OPENED, LocalDateTime.now(), null);
-                        return incidentRepository.save(newIncident);
+                        return saveIncident(newIncident);
                     } else {
                         return Mono.empty();
                     }
                 }))
-                .then(metricsStatsRepository.save(metricsStats));
+                .doOnNext(incident -> incidentStateCache.put(job.getId(), incident, generation))
+                .switchIfEmpty(Mono.fromRunnable(() -> incidentStateCache.putNone(job.getId(), generation)));
+    }
+
+    /**
+     * Saves an incident transition and pushes it to status page viewers.
+     */
+    private Mono<Incident> saveIncident(Incident incident) {
+        return incidentRepository.save(incident)
+                .doOnNext(statusEventBus::publishIncident);
     }
 
-    private Mono<MetricsStats> domMonitoringJob(Job job) {
-        WebDriver webDriver = null;
+    private CheckResult domMonitoringJob(Job job) {
+        WebDriverSessionPool.PooledSession session = null;
+        boolean sessionBroken = false;
         MetricsStatus status;
+        CheckFailureReason failureReason = null;
         String msg;
         try {
-            webDriver = new RemoteWebDriver(new URL(seleniumHubUrl), new ChromeOptions());
+            session = webDriverSessionPool.borrow();
+            WebDriver webDriver = session.getDriver();
             logger.info(String.format("Connected to WebDriver Job - %s id%s", job.getName(), job.getId()));
             WebDriverWait webDriverWait = new WebDriverWait(webDriver, pageLoadWaitTimeout);
             // load page
@@ -138,86 +231,305 @@ public class JobExecutionServiceImpl implements JobExecutionService {
                     job.getName(), job.getId());
             logger.warn(msg);
             status = MetricsStatus.FAIL;
+            failureReason = CheckFailureReason.SELECTOR_NOT_FOUND;
+        } catch (TimeoutException timeoutException) {
+            msg = timeoutException.getMessage();
+            status = MetricsStatus.FAIL;
+            failureReason = CheckFailureReason.SELECTOR_NOT_FOUND;
+        } catch (WebDriverException webDriverException) {
+            // the browser itself failed, do not give this session to the next job
+            msg = webDriverException.getMessage();
+            status = MetricsStatus.FAIL;
+            failureReason = CheckFailureReason.ERROR;
+            sessionBroken = true;
+        } catch (SessionUnavailableException sessionUnavailableException) {
+            // our own overload, not a failure of the target
+            throw sessionUnavailableException;
+        } catch (InterruptedException interruptedException) {
+            // cancelled or timed out while waiting for a session or the page, keep the flag for the caller
+            Thread.currentThread().interrupt();
+            msg = String.format("DOM check interrupted. URL: %s Job - %s id%s", job.getUrl(), job.getName(),
+                    job.getId());
+            status = MetricsStatus.FAIL;
+            failureReason = CheckFailureReason.ERROR;
         } catch (Exception e) {
             msg = e.getMessage();
             status = MetricsStatus.FAIL;
+            failureReason = CheckFailureReason.ERROR;
         } finally {
-            if (webDriver != null) {
-                webDriver.quit();
+            if (session != null) {
+                // an interrupted check may have left the browser in the middle of a page load
+                webDriverSessionPool.release(session, sessionBroken || Thread.currentThread().isInterrupted());
             }
         }
         logger.info(String.format("Saving MetricStats into DB. Finishing ... Job - %s id%s", job.getName(), job.getId()));
-        return Mono.just(new MetricsStats(job.getId(), status, msg));
+        return new CheckResult(new MetricsStats(job.getId(), status, msg), failureReason);
+    }
+
+    /**
+     * Runs an HTTP check and attaches its timings: time to first byte and total come from the check's own signals,
+     * connection phases from the check connection pool, claimed with the timing id the check request carries.
+     * The id travels in the subscriber context and the check client's filter turns it into a request header.
+     */
+    private Mono<CheckResult> timed(Job job, Function<CheckTimer, Mono<CheckResult>> check) {
+        return Mono.defer(() -> {
+            CheckTimer timer = new CheckTimer(checkPoolResources.newTimingId());
+            return check.apply(timer)
+                    .map(checkResult -> {
+                        checkResult.timings = timer.finish(checkPoolResources.claimConnectionTimings(timer.timingId));
+                        return checkResult;
+                    })
+                    .subscriberContext(Context.of(InstrumentedPoolResources.TIMING_ID_CONTEXT_KEY, timer.timingId));
+        });
     }
 
-    private Mono<MetricsStats> statusCodeMonitoringJob(Job job) {
+    private Mono<CheckResult> statusCodeMonitoringJob(Job job, CheckTimer timer) {
         return webClient
                 .get()
                 .uri(job.getUrl())
                 .accept(MediaType.ALL)
                 .exchange()
-                .timeout(Duration.of(3, ChronoUnit.SECONDS))
-                .map(clientResponse -> {
-                    if (clientResponse.statusCode().value() == job.getHttpStatusCode()) {
-                        logger.info(String.format("URL %s is accessible Job - %s id%s", job.getUrl(), job.getName(),
-                                job.getId()));
-                        return new MetricsStats(job.getId(), MetricsStatus.SUCCESS,
-                                String.format("URL %s is accessible", job.getUrl()));
-                    } else {
-                        logger.warn(String.format("URL %s is not accessible, status code: %s Job - %s id%s", job.getUrl(),
-                                clientResponse.statusCode(), job.getName(), job.getId()));
-                        return new MetricsStats(job.getId(), MetricsStatus.FAIL,
-                                String.format("URL %s is not accessible, status code: %s", job.getUrl(),
-                                        clientResponse.statusCode()));
-                    }
-                })
-                .onErrorResume(throwable -> {
-                    logger.error(String.format("Error. Details: %s Job - %s id%s",
-                            throwable.getClass().getName() + ": " + throwable.getMessage(), job.getName(), job.getId()));
-                    return Mono.just(new MetricsStats(job.getId(), MetricsStatus.FAIL,
-                            throwable.getClass().getName() + ": " + throwable.getMessage()));
-                });
+                .doOnNext(clientResponse -> timer.firstByte())
+                .timeout(Duration.ofMillis(maxTimeToFirstByteMillis(job)), Mono.defer(() -> Mono.error(timeToFirstByteExceeded(job))))
+                // only the status matters: a bounded body is drained so the connection is reused, a longer one is
+                // cancelled rather than let a target stream an unbounded body through a status check
+                .flatMap(clientResponse -> discardBody(clientResponse)
+                        .then(Mono.fromSupplier(() -> {
+                            if (clientResponse.statusCode().value() == job.getHttpStatusCode()) {
+                                logger.info(String.format("URL %s is accessible Job - %s id%s", job.getUrl(), job.getName(),
+                                        job.getId()));
+                                return new CheckResult(new MetricsStats(job.getId(), MetricsStatus.SUCCESS,
+                                        String.format("URL %s is accessible", job.getUrl())), null);
+                            } else {
+                                logger.warn(String.format("URL %s is not accessible, status code: %s Job - %s id%s", job.getUrl(),
+                                        clientResponse.statusCode(), job.getName(), job.getId()));
+                                return new CheckResult(new MetricsStats(job.getId(), MetricsStatus.FAIL,
+                                        String.format("URL %s is not accessible, status code: %s", job.getUrl(),
+                                                clientResponse.statusCode())), CheckFailureReason.UNEXPECTED_STATUS);
+                            }
+                        })))
+                .timeout(Duration.ofMillis(maxTotalTimeMillis(job)), Mono.defer(() -> Mono.error(totalTimeExceeded(job))))
+                .onErrorResume(throwable -> Mono.just(failed(job, throwable)));
     }
 
-    private Mono<MetricsStats> endpointMonitoringJob(Job job) {
+    private Mono<CheckResult> endpointMonitoringJob(Job job, CheckTimer timer) {
         return webClient
                 .get()
                 .uri(job.getUrl())
                 .accept(EndpointResponseType.JSON == job.getEndpointResponseType() ?
                         MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML)
-                .retrieve()
-                .bodyToMono(String.class)
-                .flatMap(body -> {
-                    String extractedValue;
-                    try {
-                        if (EndpointResponseType.JSON == job.getEndpointResponseType()) {
-                            // extract value using JSONPath
-                            extractedValue = JsonPath.parse(body).read(job.getSelector());
-                        } else if (EndpointResponseType.XML == job.getEndpointResponseType()) {
-                            // extract value using XPATH
-                            final Document xmlDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                                    .parse(new InputSource(new StringReader(body)));
-                            final XPathExpression xpath =
-                                    XPathFactory.newInstance().newXPath().compile(job.getSelector());
-                            extractedValue = xpath.evaluate(xmlDocument);
-                            if (extractedValue.isEmpty()) {
-                                return Mono.error(new Exception(String.format("XPath '%s' not found.", job.getSelector())));
-                            }
-                        } else {
-                            return Mono.error(new Exception("Wrong endpoint response type"));
-                        }
-                    } catch (PathNotFoundException | ParserConfigurationException
-                            | SAXException | IOException | XPathExpressionException e) {
-                        return Mono.error(e);
+                .exchange()
+                .doOnNext(clientResponse -> timer.firstByte())
+                .timeout(Duration.ofMillis(maxTimeToFirstByteMillis(job)), Mono.defer(() -> Mono.error(timeToFirstByteExceeded(job))))
+                .flatMap(clientResponse -> {
+                    if (clientResponse.statusCode().isError()) {
+                        return discardBody(clientResponse)
+                                .then(Mono.error(new CheckFailedException(CheckFailureReason.UNEXPECTED_STATUS,
+                                        String.format("URL %s is not accessible, status code: %s", job.getUrl(),
+                                                clientResponse.statusCode()))));
+                    }
+                    return extractValue(job, clientResponse);
+                })
+                .flatMap(value -> {
+                    if (EndpointResponseType.XML == job.getEndpointResponseType() && value.isEmpty()) {
+                        return Mono.error(new CheckFailedException(CheckFailureReason.SELECTOR_NOT_FOUND,
+                                String.format("XPath '%s' not found.", job.getSelector())));
                     }
-                    return Mono.just(new MetricsStats(job.getId(), MetricsStatus.SUCCESS,
-                            String.format("Extracted value: %s", extractedValue)));
+                    return Mono.just(new CheckResult(new MetricsStats(job.getId(), MetricsStatus.SUCCESS,
+                            String.format("Extracted value: %s", value)), null));
                 })
-                .onErrorResume(throwable -> {
-                    logger.error(String.format("Error. Details: %s Job - %s id%s",
-                            throwable.getClass().getName() + ": " + throwable.getMessage(), job.getName(), job.getId()));
-                    return Mono.just(new MetricsStats(job.getId(), MetricsStatus.FAIL,
-                            String.format("%s: %s", throwable.getClass().getName(), throwable.getMessage())));
-                });
+                .timeout(Duration.ofMillis(maxTotalTimeMillis(job)), Mono.defer(() -> Mono.error(totalTimeExceeded(job))))
+                .onErrorResume(throwable -> Mono.just(failed(job, throwable)));
+    }
+
+    /**
+     * Reads the selected value from the body, decoded with the charset of the response and UTF-8 when it names none.
+     */
+    private Mono<String> extractValue(Job job, ClientResponse clientResponse) {
+        Charset charset = clientResponse.headers().contentType()
+                .map(MediaType::getCharset)
+                .orElse(StandardCharsets.UTF_8);
+        Flux<DataBuffer> body = limitBytes(clientResponse.bodyToFlux(DataBuffer.class), job);
+
+        // simple selectors can be answered while the body is being read, without keeping all of it in memory; the
+        // streaming parsers read UTF-8 only
+        if (endpointStreamingEnabled && streamingSelectorEvaluator.supports(job)
+                && StandardCharsets.UTF_8.equals(charset)) {
+            return streamingSelectorEvaluator.extract(job, body);
+        }
+        return DataBufferUtils.join(body).flatMap(buffer -> {
+            String content = charset.decode(buffer.asByteBuffer()).toString();
+            DataBufferUtils.release(buffer);
+            return extractValue(job, content);
+        });
+    }
+
+    /**
+     * Reads and releases up to {@code job.check.discard.max.bytes} of the body, which leaves the connection fit for
+     * the pool; the body is cancelled past that, which closes the connection.
+     */
+    private Mono<Void> discardBody(ClientResponse clientResponse) {
+        return Mono.defer(() -> {
+            AtomicLong received = new AtomicLong();
+            return clientResponse.bodyToFlux(DataBuffer.class)
+                    // small requests, so not much more than the cap is read before the cancel
+                    .limitRate(8)
+                    .takeWhile(buffer -> {
+                        boolean withinCap = received.addAndGet(buffer.readableByteCount()) <= maxDiscardBytes;
+                        DataBufferUtils.release(buffer);
+                        return withinCap;
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Fails the body with {@link CheckFailureReason#RESPONSE_TOO_LARGE} as soon as more than the allowed number
+     * of bytes arrives; the error cancels the response, which closes its connection.
+     */
+    private Flux<DataBuffer> limitBytes(Flux<DataBuffer> body, Job job) {
+        long maxBytes = job.getMaxResponseBytes() != null ? job.getMaxResponseBytes() : defaultMaxResponseBytes;
+        return Flux.defer(() -> {
+            AtomicLong received = new AtomicLong();
+            return body.handle((buffer, sink) -> {
+                if (received.addAndGet(buffer.readableByteCount()) > maxBytes) {
+                    DataBufferUtils.release(buffer);
+                    sink.error(new CheckFailedException(CheckFailureReason.RESPONSE_TOO_LARGE,
+                            String.format("Response of URL %s is larger than %s bytes", job.getUrl(), maxBytes)));
+                } else {
+                    sink.next(buffer);
+                }
+            });
+        });
+    }
+
+    private Duration domJobTimeout(Job job) {
+        return job.getMaxTotalTimeMillis() != null ?
+                Duration.ofMillis(job.getMaxTotalTimeMillis()) : Duration.ofSeconds(domJobTimeout);
+    }
+
+    private long maxTimeToFirstByteMillis(Job job) {
+        return job.getMaxTimeToFirstByteMillis() != null ?
+                job.getMaxTimeToFirstByteMillis() : defaultMaxTimeToFirstByteMillis;
+    }
+
+    private long maxTotalTimeMillis(Job job) {
+        return job.getMaxTotalTimeMillis() != null ? job.getMaxTotalTimeMillis() : defaultMaxTotalTimeMillis;
+    }
+
+    private CheckFailedException timeToFirstByteExceeded(Job job) {
+        return new CheckFailedException(CheckFailureReason.TIME_TO_FIRST_BYTE_EXCEEDED,
+                String.format("No response from URL %s within %s ms", job.getUrl(), maxTimeToFirstByteMillis(job)));
+    }
+
+    private CheckFailedException totalTimeExceeded(Job job) {
+        return new CheckFailedException(CheckFailureReason.TOTAL_TIME_EXCEEDED,
+                String.format("Check of URL %s did not finish within %s ms", job.getUrl(), maxTotalTimeMillis(job)));
+    }
+
+    private CheckFailedException domTimeExceeded(Job job) {
+        return new CheckFailedException(CheckFailureReason.TOTAL_TIME_EXCEEDED,
+                String.format("DOM check of URL %s did not finish within %s ms", job.getUrl(),
+                        domJobTimeout(job).toMillis()));
+    }
+
+    /**
+     * True when a check could not run because our own workers or Selenium sessions are exhausted.
+     */
+    private boolean isOverload(Throwable throwable) {
+        return throwable instanceof RejectedExecutionException || throwable instanceof SessionUnavailableException;
+    }
+
+    /**
+     * Drops a run that never reached the target: it records no metric and must not open or resolve an incident.
+     */
+    private Mono<CheckResult> skipped(Job job, Throwable throwable) {
+        logger.warn(String.format("Skipping run, %s Job - %s id%s", throwable.getMessage(), job.getName(),
+                job.getId()));
+        return Mono.empty();
+    }
+
+    private CheckResult failed(Job job, Throwable throwable) {
+        logger.error(String.format("Error. Details: %s Job - %s id%s",
+                throwable.getClass().getName() + ": " + throwable.getMessage(), job.getName(), job.getId()));
+        CheckFailureReason failureReason = CheckFailureReason.ERROR;
+        if (throwable instanceof CheckFailedException) {
+            failureReason = ((CheckFailedException) throwable).getReason();
+        } else if (throwable instanceof PathNotFoundException) {
+            failureReason = CheckFailureReason.SELECTOR_NOT_FOUND;
+        }
+        return new CheckResult(new MetricsStats(job.getId(), MetricsStatus.FAIL,
+                String.format("%s: %s", throwable.getClass().getName(), throwable.getMessage())), failureReason);
+    }
+
+    private Mono<String> extractValue(Job job, String body) {
+        String extractedValue;
+        try {
+            if (EndpointResponseType.JSON == job.getEndpointResponseType()) {
+                // extract value using JSONPath
+                extractedValue = JsonPath.parse(body).read(selectorCache.getJsonPath(job));
+            } else if (EndpointResponseType.XML == job.getEndpointResponseType()) {
+                // extract value using XPATH
+                final Document xmlDocument = selectorCache.getDocumentBuilder()
+                        .parse(new InputSource(new StringReader(body)));
+                final XPathExpression xpath = selectorCache.getXPathExpression(job);
+                synchronized (xpath) {
+                    extractedValue = xpath.evaluate(xmlDocument);
+                }
+            } else {
+                return Mono.error(new Exception("Wrong endpoint response type"));
+            }
+        } catch (PathNotFoundException | SAXException | IOException | XPathExpressionException e) {
+            return Mono.error(e);
+        }
+        return Mono.just(String.valueOf(extractedValue));
+    }
+
+    private static class CheckResult {
+
+        private final MetricsStats metricsStats;
+        private final CheckFailureReason failureReason;
+        private CheckTimings timings;
+
+        CheckResult(MetricsStats metricsStats, CheckFailureReason failureReason) {
+            this.metricsStats = metricsStats;
+            this.failureReason = failureReason;
+        }
+    }
+
+    private static class CheckTimer {
+
+        private final long startedAt = System.nanoTime();
+        private final String timingId;
+        private volatile long firstByteAt;
+
+        CheckTimer(String timingId) {
+            this.timingId = timingId;
+        }
+
+        void firstByte() {
+            if (firstByteAt == 0) {
+                firstByteAt = System.nanoTime();
+            }
+        }
+
+        CheckTimings finish(InstrumentedPoolResources.ConnectionTimings connectionTimings) {
+            CheckTimings timings = new CheckTimings();
+            timings.setTotalMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            if (firstByteAt != 0) {
+                timings.setTimeToFirstByteMillis(TimeUnit.NANOSECONDS.toMillis(firstByteAt - startedAt));
+            }
+            if (connectionTimings != null) {
+                timings.setDnsMillis(connectionTimings.getDnsMillis());
+                timings.setConnectMillis(connectionTimings.getConnectMillis());
+                timings.setTlsMillis(connectionTimings.getTlsMillis());
+            } else if (firstByteAt != 0) {
+                // a response came over a reused connection
+                timings.setDnsMillis(0);
+                timings.setConnectMillis(0);
+                timings.setTlsMillis(0);
+            }
+            return timings;
+        }
     }
 }
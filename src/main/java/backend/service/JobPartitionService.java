@@ -0,0 +1,27 @@
+package backend.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+public interface JobPartitionService {
+
+    String getNodeId();
+
+    Set<String> getLiveNodes();
+
+    boolean isOwnedByCurrentNode(String jobId);
+
+    void addRebalanceListener(Runnable listener);
+
+    /**
+     * @return true when the last rebalance gave the job to another node; the first ring of a node moves no jobs.
+     */
+    boolean isMovedByLastRebalance(String jobId);
+
+    /**
+     * @return true when the current node may run the job now; no other node may run it for the next
+     * {@code claimMillis}. Only writes a claim while a rebalance is being handed over between nodes.
+     */
+    Mono<Boolean> claimRun(String jobId, long claimMillis);
+}
@@ -0,0 +1,222 @@
+package backend.service;
+
+import backend.model.JobRunClaim;
+import backend.model.NodeLease;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Splits jobs between running backend nodes. Every node keeps a heartbeat lease in Mongo, the set of live leases
+ * forms a consistent hash ring and a job is executed only by the node owning its id on that ring. When a node joins
+ * or leaves, the ring is rebuilt on the next heartbeat and only the jobs of that node move.
+ * <p>
+ * Nodes see a membership change at different heartbeats, so for a moment two nodes may both own a job. Every lease
+ * reports the version of the ring its node uses, and until all live leases report the same version the rebalance is
+ * being handed over: jobs that moved to this node are not taken over yet, since their previous owner may not have
+ * seen the change, and every other run is claimed in Mongo first. Outside of a handover runs are not claimed, so a
+ * stable cluster does no write per run.
+ */
+@Service
+public class JobPartitionServiceImpl implements JobPartitionService {
+
+    private static final int VIRTUAL_NODES = 128;
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${job.partition.enabled: true}")
+    private Boolean partitionEnabled;
+
+    @Value("${job.partition.node.id:}")
+    private String configuredNodeId;
+
+    @Value("${job.partition.lease.seconds: 15}")
+    private int leaseSeconds;
+
+    private String nodeId;
+
+    private volatile Set<String> liveNodes = Collections.emptySet();
+
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(Collections.emptySet(), VIRTUAL_NODES);
+
+    private volatile ConsistentHashRing previousRing = ring;
+
+    private volatile String ringVersion = ringVersion(Collections.emptySet());
+
+    private volatile boolean handedOver;
+
+    private volatile long lastHeartbeatMillis;
+
+    private final List<Runnable> rebalanceListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId == null || configuredNodeId.isEmpty() ? generateNodeId() : configuredNodeId;
+        logger.info(String.format("Job partitioning %s, node id: %s", partitionEnabled ? "enabled" : "disabled", nodeId));
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (!partitionEnabled) {
+            return;
+        }
+        // drop the lease right away so other nodes take over our jobs without waiting for expiration
+        reactiveMongoTemplate.remove(Query.query(Criteria.where("_id").is(nodeId)), NodeLease.class)
+                .onErrorResume(throwable -> {
+                    logger.warn("Cannot release node lease: " + throwable.getMessage());
+                    return Mono.empty();
+                })
+                .block(Duration.ofSeconds(2));
+    }
+
+    @Scheduled(fixedDelayString = "${job.partition.heartbeat.millis:5000}")
+    public void heartbeat() {
+        if (!partitionEnabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        reactiveMongoTemplate.upsert(Query.query(Criteria.where("_id").is(nodeId)),
+                new Update().set("heartbeatAt", now).set("expiresAt", now.plusSeconds(leaseSeconds))
+                        .set("ringVersion", ringVersion),
+                NodeLease.class)
+                .thenMany(reactiveMongoTemplate.find(Query.query(Criteria.where("expiresAt").gt(now)), NodeLease.class))
+                .collectList()
+                .subscribe(leases -> {
+                    lastHeartbeatMillis = System.currentTimeMillis();
+                    updateMembership(leases);
+                }, throwable -> logger.error("Node heartbeat failed: ", throwable));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getLiveNodes() {
+        return liveNodes;
+    }
+
+    @Override
+    public boolean isOwnedByCurrentNode(String jobId) {
+        if (!partitionEnabled) {
+            return true;
+        }
+        // without a fresh lease other nodes may already consider our jobs theirs, so skip rather than run twice
+        if (System.currentTimeMillis() - lastHeartbeatMillis > leaseSeconds * 1000L) {
+            return false;
+        }
+        if (!nodeId.equals(ring.ownerOf(jobId))) {
+            return false;
+        }
+        // a job that moved here is taken over once its previous owner uses the same ring
+        return handedOver || nodeId.equals(previousRing.ownerOf(jobId));
+    }
+
+    @Override
+    public void addRebalanceListener(Runnable listener) {
+        rebalanceListeners.add(listener);
+    }
+
+    @Override
+    public boolean isMovedByLastRebalance(String jobId) {
+        return !previousRing.isEmpty() && !Objects.equals(previousRing.ownerOf(jobId), ring.ownerOf(jobId));
+    }
+
+    /**
+     * Claims only while a rebalance is handed over. The claim is upserted while it is expired or already ours; a
+     * claim held by another node does not match, so the upsert tries to insert the same id and fails with a
+     * duplicate key.
+     */
+    @Override
+    public Mono<Boolean> claimRun(String jobId, long claimMillis) {
+        if (!partitionEnabled || handedOver) {
+            return Mono.just(true);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("_id").is(jobId)
+                .orOperator(Criteria.where("nodeId").is(nodeId), Criteria.where("claimedUntil").lte(now)));
+        return reactiveMongoTemplate.upsert(query,
+                new Update().set("nodeId", nodeId).set("claimedUntil", now.plus(claimMillis, ChronoUnit.MILLIS)),
+                JobRunClaim.class)
+                .map(result -> true)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false))
+                .onErrorResume(throwable -> {
+                    // without a claim the run may duplicate another node's, skip it
+                    logger.warn(String.format("Cannot claim run of job %s: %s", jobId, throwable.getMessage()));
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * @return true while all live nodes partition jobs with the same ring.
+     */
+    boolean isHandedOver() {
+        return handedOver;
+    }
+
+    void updateMembership(List<NodeLease> leases) {
+        Set<String> nodes = leases.stream()
+                .map(NodeLease::getId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        nodes.add(nodeId);
+        if (!nodes.equals(liveNodes)) {
+            previousRing = ring;
+            ring = new ConsistentHashRing(nodes, VIRTUAL_NODES);
+            ringVersion = ringVersion(nodes);
+            liveNodes = Collections.unmodifiableSet(nodes);
+            logger.info(String.format("Job partitions rebalanced, live nodes: %s", nodes));
+            rebalanceListeners.forEach(Runnable::run);
+        }
+        // our own lease reports the new version from the next heartbeat on, the other nodes have to report it
+        String currentVersion = ringVersion;
+        boolean converged = leases.stream()
+                .allMatch(lease -> nodeId.equals(lease.getId()) || currentVersion.equals(lease.getRingVersion()));
+        if (converged && !handedOver) {
+            logger.info(String.format("Job partitions handed over, ring version: %s", currentVersion));
+        }
+        handedOver = converged;
+    }
+
+    private static String ringVersion(Set<String> nodes) {
+        return Integer.toHexString(String.join(",", new TreeSet<>(nodes)).hashCode());
+    }
+
+    private String generateNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,26 @@
+package backend.service;
+
+import backend.model.Job;
+
+import java.util.Map;
+
+public interface JobSchedulerService {
+
+    /**
+     * (Re)schedules the job right away. Jobs written without calling this are picked up by the next reconcile pass.
+     */
+    void scheduleJob(Job job);
+
+    void cancelJob(String jobId);
+
+    int getScheduledJobsCount();
+
+    long getAverageStartLagMillis();
+
+    long getMaxStartLagMillis();
+
+    /**
+     * @return queue depth and wait time of checks per target host.
+     */
+    Map<String, HostRateLimiter.HostStats> getHostStats();
+}
@@ -0,0 +1,365 @@
+package backend.service;
+
+import backend.model.Job;
+import backend.model.JobStatus;
+import backend.model.JobType;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatches active {@link Job}s to {@link JobExecutionService#executeJob(Job)} using a hashed time wheel keyed
+ * by the next fire time of every job. Concurrency is bounded per {@link JobType}; a job that cannot get a permit
+ * is put back on the wheel instead of piling up on the execution side. Before that, every run reserves a slot of
+ * its target host in {@link HostRateLimiter} and waits on the wheel until the slot comes.
+ * <p>
+ * Jobs are written in places that do not go through this service, so a periodic reconcile pass rereads all jobs:
+ * new and changed ones are (re)scheduled, deleted and no longer active ones are cancelled.
+ */
+@Service
+public class JobSchedulerServiceImpl implements JobSchedulerService {
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExecutionService jobExecutionService;
+
+    @Autowired
+    private JobPartitionService jobPartitionService;
+
+    @Autowired
+    private SelectorCache selectorCache;
+
+    @Autowired
+    private HostRateLimiter hostRateLimiter;
+
+    @Value("${job.scheduler.enabled: true}")
+    private Boolean schedulerEnabled;
+
+    @Value("${job.scheduler.tick.millis: 100}")
+    private long tickMillis;
+
+    @Value("${job.scheduler.wheel.size: 1024}")
+    private int wheelSize;
+
+    @Value("${job.scheduler.default.interval.seconds: 60}")
+    private int defaultIntervalSeconds;
+
+    @Value("${job.scheduler.jitter.millis: 1000}")
+    private long jitterMillis;
+
+    @Value("${job.scheduler.retry.delay.millis: 500}")
+    private long retryDelayMillis;
+
+    @Value("${job.scheduler.concurrency.dom: 8}")
+    private int domConcurrency;
+
+    @Value("${job.scheduler.concurrency.http: 256}")
+    private int httpConcurrency;
+
+    @Value("${job.scheduler.load.batch.size: 500}")
+    private int loadBatchSize;
+
+    private HashedWheelTimer timer;
+
+    private final Map<String, ScheduledJob> scheduledJobs = new ConcurrentHashMap<>();
+
+    private final Map<JobType, Semaphore> permitsByType = new EnumMap<>(JobType.class);
+
+    private final LongAdder startedJobs = new LongAdder();
+
+    private final LongAdder totalStartLagMillis = new LongAdder();
+
+    private final AtomicLong maxStartLagMillis = new AtomicLong();
+
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    @PostConstruct
+    public void start() {
+        if (!schedulerEnabled) {
+            logger.info("Job scheduler disabled, jobs will not be dispatched...");
+            return;
+        }
+
+        for (JobType jobType : JobType.values()) {
+            permitsByType.put(jobType, new Semaphore(JobType.DOM_NODE == jobType ? domConcurrency : httpConcurrency));
+        }
+        timer = new HashedWheelTimer(new DefaultThreadFactory("job-scheduler", true), tickMillis,
+                TimeUnit.MILLISECONDS, wheelSize);
+
+        logger.info("Loading jobs into scheduler...");
+        reconcile();
+    }
+
+    /**
+     * Brings the wheel in line with the stored jobs. Jobs scheduled while the pass runs are left alone.
+     */
+    @Scheduled(fixedDelayString = "${job.scheduler.reconcile.millis:30000}",
+            initialDelayString = "${job.scheduler.reconcile.millis:30000}")
+    public void reconcile() {
+        if (timer == null || !reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        Set<String> scheduledBefore = new HashSet<>(scheduledJobs.keySet());
+        Set<String> storedJobIds = ConcurrentHashMap.newKeySet();
+        AtomicLong changed = new AtomicLong();
+        jobRepository.findAll()
+                .limitRate(loadBatchSize)
+                .doOnNext(job -> {
+                    storedJobIds.add(job.getId());
+                    ScheduledJob scheduledJob = scheduledJobs.get(job.getId());
+                    if (!isActive(job)) {
+                        if (scheduledJob != null) {
+                            cancelJob(job.getId());
+                            changed.incrementAndGet();
+                        }
+                    } else if (scheduledJob == null || isChanged(scheduledJob.job, job)) {
+                        scheduleJob(job);
+                        changed.incrementAndGet();
+                    }
+                })
+                .then(Mono.fromRunnable(() -> scheduledBefore.stream()
+                        .filter(jobId -> !storedJobIds.contains(jobId))
+                        .forEach(jobId -> {
+                            cancelJob(jobId);
+                            changed.incrementAndGet();
+                        })))
+                .doFinally(signal -> reconciling.set(false))
+                .subscribe(nothing -> {
+                }, throwable -> logger.error("Error reconciling jobs with scheduler: ", throwable),
+                        () -> {
+                            if (changed.get() > 0) {
+                                logger.info(String.format("Job scheduler reconciled, %s jobs changed, %s scheduled",
+                                        changed.get(), scheduledJobs.size()));
+                            }
+                        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public void scheduleJob(Job job) {
+        if (job.getId() == null) {
+            return;
+        }
+        cancelJob(job.getId());
+        if (timer == null || !isActive(job)) {
+            return;
+        }
+
+        ScheduledJob scheduledJob = new ScheduledJob(job);
+        scheduledJobs.put(job.getId(), scheduledJob);
+
+        // spread the first run of every job over its interval so a restart does not fire all jobs at once
+        long delay = Math.max(0, toEpochMillis(job.getStartOn()) - System.currentTimeMillis())
+                + ThreadLocalRandom.current().nextLong(intervalMillis(job) + 1);
+        arm(scheduledJob, delay, System.currentTimeMillis() + delay);
+    }
+
+    @Override
+    public void cancelJob(String jobId) {
+        // the job is being changed or removed, its compiled selectors are no longer valid
+        selectorCache.invalidate(jobId);
+        ScheduledJob scheduledJob = scheduledJobs.remove(jobId);
+        if (scheduledJob != null) {
+            scheduledJob.cancel();
+        }
+    }
+
+    @Override
+    public int getScheduledJobsCount() {
+        return scheduledJobs.size();
+    }
+
+    @Override
+    public long getAverageStartLagMillis() {
+        long started = startedJobs.sum();
+        return started == 0 ? 0 : totalStartLagMillis.sum() / started;
+    }
+
+    @Override
+    public long getMaxStartLagMillis() {
+        return maxStartLagMillis.get();
+    }
+
+    @Override
+    public Map<String, HostRateLimiter.HostStats> getHostStats() {
+        return hostRateLimiter.getHostStats();
+    }
+
+    private void arm(ScheduledJob scheduledJob, long delayMillis, long expectedStartMillis) {
+        if (scheduledJob.cancelled) {
+            return;
+        }
+        scheduledJob.timeout = timer.newTimeout(timeout -> fire(scheduledJob, expectedStartMillis),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(ScheduledJob scheduledJob, long expectedStartMillis) {
+        Job job = scheduledJob.job;
+        if (scheduledJob.cancelled) {
+            return;
+        }
+        if (!isActive(job)) {
+            scheduledJob.cancel();
+            scheduledJobs.remove(job.getId(), scheduledJob);
+            logger.info(String.format("Job is no longer active, removing from scheduler. Job - %s id%s",
+                    job.getName(), job.getId()));
+            return;
+        }
+
+        if (!jobPartitionService.isOwnedByCurrentNode(job.getId())) {
+            // another node owns the job right now, keep it on the wheel in case partitions get rebalanced
+            scheduledJob.releaseReservation();
+            long delay = nextDelayMillis(job);
+            arm(scheduledJob, delay, System.currentTimeMillis() + delay);
+            return;
+        }
+
+        if (scheduledJob.reservation == null) {
+            HostRateLimiter.Reservation reservation = hostRateLimiter.reserve(job.getUrl());
+            if (reservation == null) {
+                // the host is booked too far ahead, skip this run rather than pile up behind it
+                long delay = nextDelayMillis(job);
+                arm(scheduledJob, delay, System.currentTimeMillis() + delay);
+                return;
+            }
+            scheduledJob.reservation = reservation;
+            if (reservation.getWaitMillis() > 0) {
+                arm(scheduledJob, reservation.getWaitMillis(), expectedStartMillis);
+                return;
+            }
+        }
+
+        Semaphore permits = permitsByType.get(job.getType());
+        if (permits != null && !permits.tryAcquire()) {
+            // all permits for this job type are taken, come back later keeping the original expected start
+            arm(scheduledJob, retryDelayMillis, expectedStartMillis);
+            return;
+        }
+
+        scheduledJob.releaseReservation();
+        recordStartLag(System.currentTimeMillis() - expectedStartMillis);
+        // while a rebalance is handed over, a run another node claimed within the last interval is skipped, see
+        // JobPartitionServiceImpl
+        jobPartitionService.claimRun(job.getId(), intervalMillis(job))
+                .filter(Boolean::booleanValue)
+                .flatMap(claimed -> jobExecutionService.executeJob(job))
+                .doFinally(signal -> {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                    long delay = nextDelayMillis(job);
+                    arm(scheduledJob, delay, System.currentTimeMillis() + delay);
+                })
+                .subscribe(metricsStats -> {
+                }, throwable -> logger.error(String.format("Error executing job. Details: %s Job - %s id%s",
+                        throwable.getMessage(), job.getName(), job.getId())));
+    }
+
+    private void recordStartLag(long lagMillis) {
+        long lag = Math.max(0, lagMillis);
+        startedJobs.increment();
+        totalStartLagMillis.add(lag);
+        maxStartLagMillis.accumulateAndGet(lag, Math::max);
+    }
+
+    private long nextDelayMillis(Job job) {
+        return intervalMillis(job) + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+    }
+
+    private long intervalMillis(Job job) {
+        int intervalSeconds = job.getIntervalSeconds() != null && job.getIntervalSeconds() > 0 ?
+                job.getIntervalSeconds() : defaultIntervalSeconds;
+        return TimeUnit.SECONDS.toMillis(intervalSeconds);
+    }
+
+    /**
+     * True when the stored job differs from the scheduled copy in anything a run uses.
+     */
+    private boolean isChanged(Job scheduled, Job stored) {
+        return !Objects.equals(scheduled.getName(), stored.getName())
+                || scheduled.getType() != stored.getType()
+                || scheduled.getStatus() != stored.getStatus()
+                || !Objects.equals(scheduled.getUrl(), stored.getUrl())
+                || !Objects.equals(scheduled.getHttpStatusCode(), stored.getHttpStatusCode())
+                || !Objects.equals(scheduled.getSelector(), stored.getSelector())
+                || scheduled.getSelectorType() != stored.getSelectorType()
+                || scheduled.getEndpointResponseType() != stored.getEndpointResponseType()
+                || !Objects.equals(scheduled.getComponentIds(), stored.getComponentIds())
+                || !Objects.equals(scheduled.getStartOn(), stored.getStartOn())
+                || !Objects.equals(scheduled.getEndOn(), stored.getEndOn())
+                || !Objects.equals(scheduled.getIntervalSeconds(), stored.getIntervalSeconds())
+                || !Objects.equals(scheduled.getMaxResponseBytes(), stored.getMaxResponseBytes())
+                || !Objects.equals(scheduled.getMaxTimeToFirstByteMillis(), stored.getMaxTimeToFirstByteMillis())
+                || !Objects.equals(scheduled.getMaxTotalTimeMillis(), stored.getMaxTotalTimeMillis());
+    }
+
+    private boolean isActive(Job job) {
+        return (JobStatus.PENDING == job.getStatus() || JobStatus.RUNNING == job.getStatus())
+                && (job.getEndOn() == null || job.getEndOn().isAfter(LocalDateTime.now()));
+    }
+
+    private long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime == null ? 0 : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static class ScheduledJob {
+
+        private final Job job;
+        private volatile Timeout timeout;
+        private volatile boolean cancelled;
+        private volatile HostRateLimiter.Reservation reservation;
+
+        ScheduledJob(Job job) {
+            this.job = job;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            releaseReservation();
+        }
+
+        void releaseReservation() {
+            if (reservation != null) {
+                reservation.complete();
+                reservation = null;
+            }
+        }
+    }
+}
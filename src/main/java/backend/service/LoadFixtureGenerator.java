@@ -0,0 +1,315 @@
+package backend.service;
+
+import backend.model.Account;
+import backend.model.Company;
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.Job;
+import backend.model.MetricsBucket;
+import backend.model.MetricsRollup;
+import backend.model.RollupResolution;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates a large, repeatable data set for load tests: {@code companies} x {@code projects} x {@code components}
+ * x {@code jobs}, every job with incidents spread over the history, day rollups for the whole history and hourly
+ * metrics buckets for the most recent days. All checks point at {@code fixture.load.target.url}, which is meant to
+ * be a local stub, never a real site. Everything is written with batched bulk inserts; the same seed produces the
+ * same data shape.
+ */
+@Service
+public class LoadFixtureGenerator {
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${fixture.load.enabled: false}")
+    private Boolean enabled;
+
+    @Value("${fixture.load.companies: 2}")
+    private int companies;
+
+    @Value("${fixture.load.projects.per.company: 5}")
+    private int projectsPerCompany;
+
+    @Value("${fixture.load.components.per.project: 5}")
+    private int componentsPerProject;
+
+    @Value("${fixture.load.jobs.per.component: 2}")
+    private int jobsPerComponent;
+
+    @Value("${fixture.load.history.days: 90}")
+    private int historyDays;
+
+    @Value("${fixture.load.bucket.days: 2}")
+    private int bucketDays;
+
+    @Value("${fixture.load.checks.per.hour: 60}")
+    private int checksPerHour;
+
+    @Value("${fixture.load.incidents.per.job: 3}")
+    private int incidentsPerJob;
+
+    @Value("${fixture.load.open.incident.ratio: 0.05}")
+    private double openIncidentRatio;
+
+    @Value("${fixture.load.target.url:http://localhost:8089/status}")
+    private String targetUrl;
+
+    @Value("${fixture.load.batch.size: 1000}")
+    private int batchSize;
+
+    @Value("${fixture.load.seed: 42}")
+    private long seed;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        generate().subscribe(report -> logger.info("Load fixtures created: " + report),
+                throwable -> logger.error("Error creating load fixtures: ", throwable));
+    }
+
+    public Mono<LoadFixtureReport> generate() {
+        return Mono.defer(() -> {
+            Random random = new Random(seed);
+            LoadFixtureReport report = new LoadFixtureReport();
+            long startedAt = System.currentTimeMillis();
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+
+            return Flux.range(0, companies)
+                    .concatMap(companyIndex -> createCompany(companyIndex, report))
+                    .concatMap(company -> Flux.range(0, projectsPerCompany)
+                            .map(projectIndex -> newProject(company, projectIndex)))
+                    .buffer(batchSize)
+                    .concatMap(projects -> insertAll(projects, Project.class, report.projects))
+                    .doOnNext(project -> report.projectIds.add(project.getId()))
+                    .concatMap(project -> Flux.fromIterable(project.getComponents())
+                            .concatMap(component -> Flux.range(0, jobsPerComponent)
+                                    .map(jobIndex -> newJob(project, component, jobIndex, now))))
+                    .buffer(batchSize)
+                    .concatMap(jobs -> insertAll(jobs, Job.class, report.jobs))
+                    .concatMap(job -> createHistory(job, now, random, report))
+                    .then(Mono.fromSupplier(() -> {
+                        report.elapsedMillis = System.currentTimeMillis() - startedAt;
+                        return report;
+                    }));
+        });
+    }
+
+    private Mono<Company> createCompany(int companyIndex, LoadFixtureReport report) {
+        Company company = new Company();
+        company.setTitle("Load company " + companyIndex);
+        company.setWebsiteUrl("load" + companyIndex + ".example.com");
+        return reactiveMongoTemplate.insert(company)
+                .flatMap(saved -> {
+                    Account account = new Account();
+                    account.setUserId("load-user-" + companyIndex);
+                    account.setCompanyId(saved.getId());
+                    account.setFirstName("Load");
+                    account.setLastName("User " + companyIndex);
+                    return reactiveMongoTemplate.insert(account)
+                            .doOnNext(inserted -> report.userIds.add(inserted.getUserId()))
+                            .thenReturn(saved);
+                })
+                .doOnNext(saved -> report.companies.incrementAndGet());
+    }
+
+    private Project newProject(Company company, int projectIndex) {
+        Project project = new Project(company.getId(), "Load project " + projectIndex, "Load description");
+        for (int componentIndex = 0; componentIndex < componentsPerProject; componentIndex++) {
+            // every third component hangs below the previous one, so trees have some depth
+            String parentId = componentIndex % 3 == 0 || project.getComponents().isEmpty() ? null :
+                    project.getComponents().get(project.getComponents().size() - 1).getId();
+            project.getComponents().add(new Component(parentId, "Load component " + componentIndex, "Load description"));
+        }
+        return project;
+    }
+
+    private Job newJob(Project project, Component component, int jobIndex, LocalDateTime now) {
+        Job job = new Job(String.format("Load job %s | %s | %s", jobIndex, component.getName(), project.getTitle()),
+                JobType.STATUS_CODE, JobStatus.PENDING, targetUrl, 200, null, null, null, null, component.getId(),
+                now.minusDays(historyDays), null);
+        job.setIntervalSeconds(Math.max(1, 3600 / Math.max(1, checksPerHour)));
+        return job;
+    }
+
+    /**
+     * Incidents of the job over the history, then day rollups and hour buckets that fail while an incident is open.
+     */
+    private Mono<Void> createHistory(Job job, LocalDateTime now, Random random, LoadFixtureReport report) {
+        LocalDateTime historyStart = now.minusDays(historyDays);
+        List<Incident> incidents = new ArrayList<>();
+        for (int i = 0; i < incidentsPerJob; i++) {
+            LocalDateTime start = historyStart.plusMinutes((long) (random.nextDouble() * historyDays * 24 * 60));
+            LocalDateTime end = start.plusMinutes(5 + random.nextInt(240));
+            boolean open = i == incidentsPerJob - 1 && random.nextDouble() < openIncidentRatio;
+            incidents.add(new Incident(job.getComponentIds(), job.getId(), "Load incident " + i,
+                    "Incident for job: " + job.getName(), open ? IncidentStatus.OPENED : IncidentStatus.RESOLVED,
+                    start, open ? null : end));
+        }
+
+        List<MetricsRollup> rollups = new ArrayList<>();
+        for (int day = historyDays; day > 0; day--) {
+            LocalDateTime dayStart = now.truncatedTo(ChronoUnit.DAYS).minusDays(day);
+            long total = checksPerHour * 24L;
+            long failed = failedChecks(incidents, dayStart, dayStart.plusDays(1), total);
+            MetricsRollup rollup = new MetricsRollup();
+            rollup.setId(MetricsRollup.buildId(job.getId(), RollupResolution.DAY, dayStart));
+            rollup.setJobId(job.getId());
+            rollup.setResolution(RollupResolution.DAY);
+            rollup.setPeriodStart(dayStart);
+            rollup.setTotal(total);
+            rollup.setSuccess(total - failed);
+            rollup.setSuccessRatio((double) (total - failed) / total);
+            rollup.setLatencyP50(80 + random.nextInt(40));
+            rollup.setLatencyP95(rollup.getLatencyP50() * 3);
+            rollup.setLatencyP99(rollup.getLatencyP50() * 6);
+            rollups.add(rollup);
+        }
+
+        List<MetricsBucket> buckets = new ArrayList<>();
+        for (int hour = bucketDays * 24; hour > 0; hour--) {
+            buckets.add(newBucket(job, now.minusHours(hour), incidents, random));
+        }
+
+        return insertAll(incidents, Incident.class, report.incidents)
+                .thenMany(Flux.fromIterable(rollups).buffer(batchSize)
+                        .concatMap(batch -> insertAll(batch, MetricsRollup.class, report.rollups)))
+                .thenMany(Flux.fromIterable(buckets).buffer(batchSize)
+                        .concatMap(batch -> insertAll(batch, MetricsBucket.class, report.buckets)))
+                .then();
+    }
+
+    private MetricsBucket newBucket(Job job, LocalDateTime bucketStart, List<Incident> incidents, Random random) {
+        MetricsBucket bucket = new MetricsBucket();
+        bucket.setId(MetricsBucket.buildId(job.getId(), bucketStart));
+        bucket.setJobId(job.getId());
+        bucket.setBucketStart(bucketStart);
+        bucket.setExpireAt(bucketStart.plusDays(bucketDays + 1));
+        long bucketStartMillis = bucketStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long stepMillis = ChronoUnit.HOURS.getDuration().toMillis() / Math.max(1, checksPerHour);
+        int successCount = 0;
+        for (int check = 0; check < checksPerHour; check++) {
+            long timestamp = bucketStartMillis + check * stepMillis;
+            LocalDateTime checkedAt = bucketStart.plusNanos(check * stepMillis * 1_000_000);
+            boolean success = incidents.stream().noneMatch(incident -> isOpenAt(incident, checkedAt));
+            successCount += success ? 1 : 0;
+            long ttfb = 40L + random.nextInt(60);
+            bucket.getTimestamps().add(timestamp);
+            bucket.getStatuses().add(success ? MetricsBucket.STATUS_SUCCESS : MetricsBucket.STATUS_FAIL);
+            bucket.getLatencies().add(ttfb + 10 + random.nextInt(30));
+            bucket.getDnsLatencies().add(-1L);
+            bucket.getConnectLatencies().add(-1L);
+            bucket.getTlsLatencies().add(-1L);
+            bucket.getTtfbLatencies().add(ttfb);
+        }
+        bucket.setCount(checksPerHour);
+        bucket.setSuccessCount(successCount);
+        return bucket;
+    }
+
+    private long failedChecks(List<Incident> incidents, LocalDateTime from, LocalDateTime to, long total) {
+        long failedMinutes = 0;
+        for (Incident incident : incidents) {
+            LocalDateTime start = incident.getDateStart().isAfter(from) ? incident.getDateStart() : from;
+            LocalDateTime incidentEnd = incident.getDateEnd() == null ? to : incident.getDateEnd();
+            LocalDateTime end = incidentEnd.isBefore(to) ? incidentEnd : to;
+            if (end.isAfter(start)) {
+                failedMinutes += ChronoUnit.MINUTES.between(start, end);
+            }
+        }
+        return Math.min(total, total * failedMinutes / ChronoUnit.MINUTES.between(from, to));
+    }
+
+    private boolean isOpenAt(Incident incident, LocalDateTime time) {
+        return !incident.getDateStart().isAfter(time) && (incident.getDateEnd() == null || incident.getDateEnd().isAfter(time));
+    }
+
+    private <T> Flux<T> insertAll(List<T> batch, Class<?> type, AtomicLong counter) {
+        return reactiveMongoTemplate.insert(batch, type)
+                .doOnNext(inserted -> counter.incrementAndGet());
+    }
+
+    public static class LoadFixtureReport {
+
+        private final AtomicLong companies = new AtomicLong();
+        private final AtomicLong projects = new AtomicLong();
+        private final AtomicLong jobs = new AtomicLong();
+        private final AtomicLong incidents = new AtomicLong();
+        private final AtomicLong rollups = new AtomicLong();
+        private final AtomicLong buckets = new AtomicLong();
+        private final List<String> userIds = new ArrayList<>();
+        private final List<String> projectIds = new ArrayList<>();
+        private long elapsedMillis;
+
+        public long getCompanies() {
+            return companies.get();
+        }
+
+        public long getProjects() {
+            return projects.get();
+        }
+
+        public long getJobs() {
+            return jobs.get();
+        }
+
+        public long getIncidents() {
+            return incidents.get();
+        }
+
+        public long getRollups() {
+            return rollups.get();
+        }
+
+        public long getBuckets() {
+            return buckets.get();
+        }
+
+        /**
+         * @return ids of the generated users, one per company, in the order of the companies.
+         */
+        public List<String> getUserIds() {
+            return userIds;
+        }
+
+        /**
+         * @return ids of the generated projects, grouped by company in the order of the companies.
+         */
+        public List<String> getProjectIds() {
+            return projectIds;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("companies=%s, projects=%s, jobs=%s, incidents=%s, rollups=%s, buckets=%s in %s ms",
+                    getCompanies(), getProjects(), getJobs(), getIncidents(), getRollups(), getBuckets(),
+                    elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package backend.service;
+
+import backend.model.MetricsRollup;
+import backend.model.RollupResolution;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+public interface MetricsRollupService {
+
+    Flux<MetricsRollup> getRollups(String jobId, RollupResolution resolution, LocalDateTime from, LocalDateTime to);
+
+    Mono<Double> getUptime(String jobId, LocalDateTime from, LocalDateTime to);
+}
@@ -0,0 +1,254 @@
+package backend.service;
+
+import backend.model.MetricsBucket;
+import backend.model.MetricsRollup;
+import backend.model.RollupResolution;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Produces per-minute, per-hour and per-day {@link MetricsRollup}s out of the hourly {@link MetricsBucket}s.
+ * Minute and hour rollups are built once the hour bucket is complete, day rollups are built from hour rollups.
+ * Buckets and hour rollups are marked {@code rolledUp} once their coarser rollups are stored, so every run picks up
+ * whatever earlier runs missed.
+ * Every resolution has its own retention, enforced by the TTL index on {@code expireAt}.
+ */
+@Service
+public class MetricsRollupServiceImpl implements MetricsRollupService {
+
+    private static final int SAVE_CONCURRENCY = 16;
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private JobPartitionService jobPartitionService;
+
+    @Value("${metrics.rollup.minute.enabled: true}")
+    private Boolean minuteRollupEnabled;
+
+    @Value("${metrics.retention.minute.days: 2}")
+    private int minuteRetentionDays;
+
+    @Value("${metrics.retention.hour.days: 30}")
+    private int hourRetentionDays;
+
+    @Value("${metrics.retention.day.days: 400}")
+    private int dayRetentionDays;
+
+    /**
+     * Rolls up every bucket of a past hour that has no rollups yet, not only the previous hour: hours missed while
+     * the node was down or its lease was stale are caught up by the next run of their owner.
+     */
+    @Scheduled(cron = "${metrics.rollup.hour.cron: 10 1 * * * *}")
+    public void rollupCompletedHours() {
+        LocalDateTime currentHour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        reactiveMongoTemplate.find(Query.query(Criteria.where("rolledUp").ne(true).and("bucketStart").lt(currentHour)),
+                MetricsBucket.class)
+                .filter(bucket -> jobPartitionService.isOwnedByCurrentNode(bucket.getJobId()))
+                .flatMap(bucket -> Flux.fromIterable(rollupBucket(bucket))
+                        .concatMap(rollup -> reactiveMongoTemplate.save(rollup))
+                        .then(reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(bucket.getId())),
+                                Update.update("rolledUp", true), MetricsBucket.class)), SAVE_CONCURRENCY)
+                .count()
+                .subscribe(count -> logger.info(String.format("Metrics hour rollup finished, %s buckets rolled up",
+                        count)),
+                        throwable -> logger.error("Metrics hour rollup failed: ", throwable));
+    }
+
+    /**
+     * Rolls up every past day with hour rollups not included in a day rollup yet. A day is always aggregated from
+     * all of its hours, so hours rolled up late, after their day, are folded into it by the next run.
+     */
+    @Scheduled(cron = "${metrics.rollup.day.cron: 20 5 0 * * *}")
+    public void rollupCompletedDays() {
+        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
+        reactiveMongoTemplate.find(Query.query(Criteria.where("resolution").is(RollupResolution.HOUR)
+                .and("rolledUp").ne(true)
+                .and("periodStart").lt(today)), MetricsRollup.class)
+                .filter(rollup -> jobPartitionService.isOwnedByCurrentNode(rollup.getJobId()))
+                .map(rollup -> Tuples.of(rollup.getJobId(), rollup.getPeriodStart().truncatedTo(ChronoUnit.DAYS)))
+                .distinct()
+                .flatMap(jobDay -> rollupDay(jobDay.getT1(), jobDay.getT2()), SAVE_CONCURRENCY)
+                .count()
+                .subscribe(count -> logger.info(String.format("Metrics day rollup finished, %s rollups saved", count)),
+                        throwable -> logger.error("Metrics day rollup failed: ", throwable));
+    }
+
+    @Override
+    public Flux<MetricsRollup> getRollups(String jobId, RollupResolution resolution, LocalDateTime from,
+                                          LocalDateTime to) {
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("jobId").is(jobId)
+                .and("resolution").is(resolution)
+                .and("periodStart").gte(from).lt(to))
+                .with(Sort.by("periodStart")), MetricsRollup.class);
+    }
+
+    @Override
+    public Mono<Double> getUptime(String jobId, LocalDateTime from, LocalDateTime to) {
+        // full days come from day rollups, the current day is not rolled up yet so its hours are used instead
+        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
+        Flux<MetricsRollup> days = getRollups(jobId, RollupResolution.DAY, from, to.isBefore(today) ? to : today);
+        Flux<MetricsRollup> hours = to.isAfter(today) ?
+                getRollups(jobId, RollupResolution.HOUR, from.isAfter(today) ? from : today, to) : Flux.empty();
+
+        return days.concatWith(hours)
+                .reduce(new long[2], (totals, rollup) -> {
+                    totals[0] += rollup.getSuccess();
+                    totals[1] += rollup.getTotal();
+                    return totals;
+                })
+                .filter(totals -> totals[1] > 0)
+                .map(totals -> (double) totals[0] / totals[1]);
+    }
+
+    private Mono<MetricsRollup> rollupDay(String jobId, LocalDateTime dayStart) {
+        LocalDateTime dayEnd = dayStart.plusDays(1);
+        return getRollups(jobId, RollupResolution.HOUR, dayStart, dayEnd)
+                .collectList()
+                .filter(hourRollups -> !hourRollups.isEmpty())
+                .flatMap(hourRollups -> reactiveMongoTemplate.save(
+                        rollupRollups(hourRollups, RollupResolution.DAY, dayStart)))
+                .flatMap(dayRollup -> reactiveMongoTemplate.updateMulti(Query.query(Criteria.where("jobId").is(jobId)
+                        .and("resolution").is(RollupResolution.HOUR)
+                        .and("periodStart").gte(dayStart).lt(dayEnd)),
+                        Update.update("rolledUp", true), MetricsRollup.class)
+                        .then(Mono.just(dayRollup)));
+    }
+
+    /**
+     * @return the hour rollup of the bucket, followed by the rollups of its minutes with samples when minute
+     * rollups are enabled.
+     */
+    List<MetricsRollup> rollupBucket(MetricsBucket bucket) {
+        LocalDateTime hourStart = bucket.getBucketStart();
+        List<MetricsRollup> rollups = new ArrayList<>();
+        rollups.add(rollupSamples(bucket, RollupResolution.HOUR, hourStart));
+        if (minuteRollupEnabled) {
+            for (int minute = 0; minute < 60; minute++) {
+                MetricsRollup rollup = rollupSamples(bucket, RollupResolution.MINUTE, hourStart.plusMinutes(minute));
+                if (rollup.getTotal() > 0) {
+                    rollups.add(rollup);
+                }
+            }
+        }
+        return rollups;
+    }
+
+    MetricsRollup rollupSamples(MetricsBucket bucket, RollupResolution resolution, LocalDateTime periodStart) {
+        long from = toEpochMillis(periodStart);
+        long to = toEpochMillis(periodStart.plus(1, resolution.getUnit()));
+        long total = 0;
+        long success = 0;
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < bucket.getTimestamps().size(); i++) {
+            long timestamp = bucket.getTimestamps().get(i);
+            if (timestamp < from || timestamp >= to) {
+                continue;
+            }
+            total++;
+            success += bucket.getStatuses().get(i) == MetricsBucket.STATUS_SUCCESS ? 1 : 0;
+            long latency = bucket.getLatencies().get(i);
+            if (latency >= 0) {
+                latencies.add(latency);
+            }
+        }
+        Collections.sort(latencies);
+
+        MetricsRollup rollup = newRollup(bucket.getJobId(), resolution, periodStart, total, success);
+        rollup.setLatencyP50(percentile(latencies, 50));
+        rollup.setLatencyP95(percentile(latencies, 95));
+        rollup.setLatencyP99(percentile(latencies, 99));
+        return rollup;
+    }
+
+    /**
+     * Samples are not kept in rollups, so percentiles of a coarser rollup are approximated by the
+     * sample-weighted average of the finer rollups.
+     */
+    MetricsRollup rollupRollups(List<MetricsRollup> rollups, RollupResolution resolution,
+                                LocalDateTime periodStart) {
+        long total = 0;
+        long success = 0;
+        double p50 = 0;
+        double p95 = 0;
+        double p99 = 0;
+        for (MetricsRollup rollup : rollups) {
+            total += rollup.getTotal();
+            success += rollup.getSuccess();
+            p50 += (double) rollup.getLatencyP50() * rollup.getTotal();
+            p95 += (double) rollup.getLatencyP95() * rollup.getTotal();
+            p99 += (double) rollup.getLatencyP99() * rollup.getTotal();
+        }
+
+        MetricsRollup rollup = newRollup(rollups.get(0).getJobId(), resolution, periodStart, total, success);
+        if (total > 0) {
+            rollup.setLatencyP50(Math.round(p50 / total));
+            rollup.setLatencyP95(Math.round(p95 / total));
+            rollup.setLatencyP99(Math.round(p99 / total));
+        }
+        return rollup;
+    }
+
+    private MetricsRollup newRollup(String jobId, RollupResolution resolution, LocalDateTime periodStart,
+                                    long total, long success) {
+        MetricsRollup rollup = new MetricsRollup();
+        rollup.setId(MetricsRollup.buildId(jobId, resolution, periodStart));
+        rollup.setJobId(jobId);
+        rollup.setResolution(resolution);
+        rollup.setPeriodStart(periodStart);
+        rollup.setTotal(total);
+        rollup.setSuccess(success);
+        rollup.setSuccessRatio(total == 0 ? 0 : (double) success / total);
+        rollup.setExpireAt(periodStart.plusDays(retentionDays(resolution)));
+        return rollup;
+    }
+
+    private int retentionDays(RollupResolution resolution) {
+        switch (resolution) {
+            case MINUTE:
+                return minuteRetentionDays;
+            case HOUR:
+                return hourRetentionDays;
+            case DAY:
+            default:
+                return dayRetentionDays;
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of ascending values, 0 when there are none.
+     */
+    static long percentile(List<Long> sortedValues, int percentile) {
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.size());
+        return sortedValues.get(Math.max(0, rank - 1));
+    }
+
+    private long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,453 @@
+package backend.service;
+
+import backend.model.CheckFailureReason;
+import backend.model.CheckTimings;
+import backend.model.MetricsBucket;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers {@link MetricsStats} produced by checks and writes them to Mongo as unordered bulk inserts, either when
+ * a batch is full or when the flush interval passes. The buffer and the writes bypassing it are bounded; the
+ * {@link Mono} returned by {@link #write(MetricsStats)} completes only once the document is stored, so callers are
+ * held back by the writer.
+ * Every flushed batch also appends its samples to the hourly {@link MetricsBucket} of each job. Raw documents carry
+ * an {@code expireAt} of {@code metrics.retention.raw.days}, like the buckets, and are removed by its TTL index;
+ * longer history is read from the rollups. Documents written before raw metrics had a retention have no
+ * {@code expireAt} and are kept: no rollups exist for them, so they are still the only history of that time.
+ * Inserts are unordered, a document rejected by Mongo fails only its own write.
+ */
+@Component
+public class MetricsStatsWriter {
+
+    private static final CheckTimings NO_TIMINGS = new CheckTimings();
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${metrics.writer.batch.size: 500}")
+    private int batchSize;
+
+    @Value("${metrics.writer.buffer.size: 10000}")
+    private int bufferSize;
+
+    @Value("${metrics.writer.concurrent.flushes: 2}")
+    private int concurrentFlushes;
+
+    @Value("${metrics.writer.overflow.concurrency: 4}")
+    private int overflowConcurrency;
+
+    @Value("${metrics.writer.overflow.retry.millis: 50}")
+    private long overflowRetryMillis;
+
+    @Value("${metrics.writer.overflow.max.wait.millis: 10000}")
+    private long overflowMaxWaitMillis;
+
+    @Value("${metrics.retention.raw.days: 7}")
+    private int rawRetentionDays;
+
+    private BlockingQueue<PendingWrite> buffer;
+
+    private Semaphore flushPermits;
+
+    private Semaphore overflowPermits;
+
+    private final LongAdder writtenDocuments = new LongAdder();
+
+    private final LongAdder writtenBatches = new LongAdder();
+
+    private final LongAdder overflowWrites = new LongAdder();
+
+    private final LongAdder rejectedWrites = new LongAdder();
+
+    private final LongAdder failedBucketWrites = new LongAdder();
+
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        flushPermits = new Semaphore(concurrentFlushes);
+        overflowPermits = new Semaphore(overflowConcurrency);
+    }
+
+    public Mono<MetricsStats> write(MetricsStats metricsStats) {
+        return write(metricsStats, -1);
+    }
+
+    /**
+     * @param latencyMillis duration of the check which produced the metric, negative when unknown.
+     */
+    public Mono<MetricsStats> write(MetricsStats metricsStats, long latencyMillis) {
+        return write(metricsStats, latencyMillis, null, null);
+    }
+
+    /**
+     * @param failureReason why the check failed, stored next to the metric and counted in its bucket; null when
+     *                      the check succeeded.
+     * @param timings       phases of an HTTP check, stored next to the metric and sampled in its bucket; null for
+     *                      other checks.
+     */
+    public Mono<MetricsStats> write(MetricsStats metricsStats, long latencyMillis, CheckFailureReason failureReason,
+                                    CheckTimings timings) {
+        return Mono.defer(() -> enqueue(new PendingWrite(metricsStats, latencyMillis, failureReason, timings),
+                System.currentTimeMillis() + overflowMaxWaitMillis));
+    }
+
+    /**
+     * A full buffer is bypassed by at most {@code metrics.writer.overflow.concurrency} direct writes. Beyond that
+     * the caller waits for buffer space, without blocking a thread, and gets an error once
+     * {@code metrics.writer.overflow.max.wait.millis} has passed.
+     */
+    private Mono<MetricsStats> enqueue(PendingWrite pendingWrite, long deadlineMillis) {
+        if (buffer.offer(pendingWrite)) {
+            if (buffer.size() >= batchSize) {
+                flush();
+            }
+            return pendingWrite.result;
+        }
+        if (overflowPermits.tryAcquire()) {
+            overflowWrites.increment();
+            return Mono.defer(() -> writeBatch(Collections.singletonList(pendingWrite)))
+                    .then(pendingWrite.result)
+                    .doFinally(signal -> overflowPermits.release());
+        }
+        if (System.currentTimeMillis() >= deadlineMillis) {
+            rejectedWrites.increment();
+            return Mono.error(new IllegalStateException("Metrics writer is overloaded, buffer is full"));
+        }
+        return Mono.delay(Duration.ofMillis(overflowRetryMillis))
+                .then(Mono.defer(() -> enqueue(pendingWrite, deadlineMillis)));
+    }
+
+    /**
+     * Writes already collected metrics straight away in bulk batches, bypassing the buffer.
+     */
+    public Flux<MetricsStats> writeAll(Collection<MetricsStats> metricsStats) {
+        return Flux.fromIterable(metricsStats)
+                .buffer(batchSize)
+                .concatMap(batch -> Mono.defer(() -> insertDocuments(batch.stream()
+                        .map(this::toDocument)
+                        .collect(Collectors.toList())))
+                        .flatMapMany(failed -> failed.isEmpty() ? Flux.fromIterable(batch) :
+                                Flux.error(new IllegalStateException(String.format("Cannot write %s of %s metrics: %s",
+                                        failed.size(), batch.size(), failed.values().iterator().next().getMessage())))));
+    }
+
+    @Scheduled(fixedDelayString = "${metrics.writer.flush.millis:1000}")
+    public void flushPending() {
+        while (!buffer.isEmpty() && flush()) {
+            // keep flushing while there are free flush slots
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                writeBatch(batch).block(Duration.ofSeconds(30));
+            } catch (RuntimeException e) {
+                logger.error("Cannot flush metrics on shutdown: ", e);
+                fail(batch, e);
+            }
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    public long getWrittenDocuments() {
+        return writtenDocuments.sum();
+    }
+
+    public long getWrittenBatches() {
+        return writtenBatches.sum();
+    }
+
+    public long getOverflowWrites() {
+        return overflowWrites.sum();
+    }
+
+    public long getRejectedWrites() {
+        return rejectedWrites.sum();
+    }
+
+    /**
+     * @return stored metrics that could not be appended to their hourly buckets.
+     */
+    public long getFailedBucketWrites() {
+        return failedBucketWrites.sum();
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis.get();
+    }
+
+    public int getBufferedDocuments() {
+        return buffer.size();
+    }
+
+    private boolean flush() {
+        if (!flushPermits.tryAcquire()) {
+            return false;
+        }
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        buffer.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            flushPermits.release();
+            return false;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        writeBatch(batch)
+                .doFinally(signal -> {
+                    maxFlushMillis.accumulateAndGet(System.currentTimeMillis() - startedAt, Math::max);
+                    flushPermits.release();
+                    if (buffer.size() >= batchSize) {
+                        flush();
+                    }
+                })
+                .subscribe(done -> {
+                }, throwable -> {
+                    logger.error("Cannot write metrics batch: ", throwable);
+                    fail(batch, throwable);
+                });
+        return true;
+    }
+
+    /**
+     * Inserts the batch, fails the writes Mongo rejected and appends the stored ones to their buckets before
+     * completing them. Stored writes complete even when their buckets cannot be updated, the raw documents are there.
+     */
+    private Mono<Void> writeBatch(List<PendingWrite> batch) {
+        return insertDocuments(toDocuments(batch))
+                .flatMap(failed -> {
+                    List<PendingWrite> stored = new ArrayList<>(batch.size() - failed.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        BulkWriteError error = failed.get(i);
+                        if (error == null) {
+                            stored.add(batch.get(i));
+                        } else {
+                            batch.get(i).result.onError(new IllegalStateException("Cannot write metrics: " +
+                                    error.getMessage()));
+                        }
+                    }
+                    return upsertBuckets(stored)
+                            .onErrorResume(throwable -> {
+                                failedBucketWrites.add(stored.size());
+                                logger.error(String.format("Cannot append %s stored metrics to their buckets: ",
+                                        stored.size()), throwable);
+                                return Mono.just(0);
+                            })
+                            .then(Mono.fromRunnable(() -> complete(stored)));
+                });
+    }
+
+    /**
+     * @return errors of the documents Mongo did not store, by their index in {@code documents}. A duplicate key
+     * means an earlier attempt already stored the document, it is not an error.
+     */
+    private Mono<Map<Integer, BulkWriteError>> insertDocuments(List<Document> documents) {
+        return Mono.from(reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MetricsStats.class))
+                .insertMany(documents, new InsertManyOptions().ordered(false)))
+                .then(Mono.fromSupplier(Collections::<Integer, BulkWriteError>emptyMap))
+                .onErrorResume(throwable -> throwable instanceof MongoBulkWriteException
+                                && ((MongoBulkWriteException) throwable).getWriteConcernError() == null,
+                        throwable -> Mono.just(((MongoBulkWriteException) throwable).getWriteErrors().stream()
+                                .filter(error -> ErrorCategory.DUPLICATE_KEY != ErrorCategory.fromErrorCode(error.getCode()))
+                                .collect(Collectors.toMap(BulkWriteError::getIndex, error -> error))))
+                .doOnNext(failed -> {
+                    writtenDocuments.add(documents.size() - failed.size());
+                    writtenBatches.increment();
+                });
+    }
+
+    private Mono<Integer> upsertBuckets(List<PendingWrite> batch) {
+        return Mono.defer(() -> {
+            if (batch.isEmpty()) {
+                return Mono.just(0);
+            }
+            Map<String, List<PendingWrite>> writesByBucket = new LinkedHashMap<>();
+            for (PendingWrite pendingWrite : batch) {
+                LocalDateTime bucketStart = toLocalDateTime(pendingWrite.timestamp).truncatedTo(ChronoUnit.HOURS);
+                writesByBucket.computeIfAbsent(MetricsBucket.buildId(pendingWrite.metricsStats.getJobId(), bucketStart),
+                        id -> new ArrayList<>()).add(pendingWrite);
+            }
+
+            List<UpdateOneModel<Document>> updates = new ArrayList<>(writesByBucket.size());
+            writesByBucket.forEach((bucketId, writes) -> {
+                LocalDateTime bucketStart = toLocalDateTime(writes.get(0).timestamp).truncatedTo(ChronoUnit.HOURS);
+                List<Long> timestamps = new ArrayList<>(writes.size());
+                List<Integer> statuses = new ArrayList<>(writes.size());
+                List<Long> latencies = new ArrayList<>(writes.size());
+                List<Long> dnsLatencies = new ArrayList<>(writes.size());
+                List<Long> connectLatencies = new ArrayList<>(writes.size());
+                List<Long> tlsLatencies = new ArrayList<>(writes.size());
+                List<Long> ttfbLatencies = new ArrayList<>(writes.size());
+                Map<CheckFailureReason, Integer> failureReasons = new EnumMap<>(CheckFailureReason.class);
+                int successCount = 0;
+                for (PendingWrite write : writes) {
+                    if (write.failureReason != null) {
+                        failureReasons.merge(write.failureReason, 1, Integer::sum);
+                    }
+                    boolean success = MetricsStatus.SUCCESS == write.metricsStats.getStatus();
+                    successCount += success ? 1 : 0;
+                    timestamps.add(write.timestamp);
+                    statuses.add(success ? MetricsBucket.STATUS_SUCCESS : MetricsBucket.STATUS_FAIL);
+                    latencies.add(write.latencyMillis);
+                    CheckTimings timings = write.timings != null ? write.timings : NO_TIMINGS;
+                    dnsLatencies.add(timings.getDnsMillis());
+                    connectLatencies.add(timings.getConnectMillis());
+                    tlsLatencies.add(timings.getTlsMillis());
+                    ttfbLatencies.add(timings.getTimeToFirstByteMillis());
+                }
+                List<Bson> update = new ArrayList<>(Arrays.asList(
+                        Updates.setOnInsert("jobId", writes.get(0).metricsStats.getJobId()),
+                        Updates.setOnInsert("bucketStart", toDate(bucketStart)),
+                        Updates.setOnInsert("expireAt", toDate(bucketStart.plusDays(rawRetentionDays))),
+                        Updates.inc("count", writes.size()),
+                        Updates.inc("successCount", successCount),
+                        Updates.pushEach("timestamps", timestamps),
+                        Updates.pushEach("statuses", statuses),
+                        Updates.pushEach("latencies", latencies),
+                        Updates.pushEach("dnsLatencies", dnsLatencies),
+                        Updates.pushEach("connectLatencies", connectLatencies),
+                        Updates.pushEach("tlsLatencies", tlsLatencies),
+                        Updates.pushEach("ttfbLatencies", ttfbLatencies)));
+                failureReasons.forEach((reason, count) -> update.add(Updates.inc("failureReasons." + reason.name(), count)));
+                updates.add(new UpdateOneModel<>(Filters.eq("_id", bucketId), Updates.combine(update),
+                        new UpdateOptions().upsert(true)));
+            });
+            return Mono.from(reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MetricsBucket.class))
+                    .bulkWrite(updates, new BulkWriteOptions().ordered(false)))
+                    .map(result -> batch.size());
+        });
+    }
+
+    private LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private Date toDate(LocalDateTime dateTime) {
+        // same zone Spring Data uses when it stores LocalDateTime properties
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private Document toDocument(MetricsStats metricsStats) {
+        assignIdIfMissing(metricsStats);
+        Document document = new Document();
+        reactiveMongoTemplate.getConverter().write(metricsStats, document);
+        document.put("expireAt", toDate(LocalDateTime.now().plusDays(rawRetentionDays)));
+        return document;
+    }
+
+    /**
+     * Ids are generated here instead of by the driver so the stored metrics returned to callers carry their id,
+     * the same way a repository save would.
+     */
+    private void assignIdIfMissing(MetricsStats metricsStats) {
+        MongoPersistentEntity<?> entity = reactiveMongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(MetricsStats.class);
+        MongoPersistentProperty idProperty = entity.getRequiredIdProperty();
+        PersistentPropertyAccessor accessor = entity.getPropertyAccessor(metricsStats);
+        if (accessor.getProperty(idProperty) == null) {
+            ObjectId id = new ObjectId();
+            accessor.setProperty(idProperty, String.class == idProperty.getType() ? id.toHexString() : id);
+        }
+    }
+
+    private List<Document> toDocuments(List<PendingWrite> batch) {
+        return batch.stream()
+                .map(pendingWrite -> {
+                    Document document = toDocument(pendingWrite.metricsStats);
+                    if (pendingWrite.failureReason != null) {
+                        document.put("failureReason", pendingWrite.failureReason.name());
+                    }
+                    if (pendingWrite.timings != null) {
+                        document.put("timings", new Document()
+                                .append("dnsMillis", pendingWrite.timings.getDnsMillis())
+                                .append("connectMillis", pendingWrite.timings.getConnectMillis())
+                                .append("tlsMillis", pendingWrite.timings.getTlsMillis())
+                                .append("timeToFirstByteMillis", pendingWrite.timings.getTimeToFirstByteMillis())
+                                .append("totalMillis", pendingWrite.timings.getTotalMillis()));
+                    }
+                    return document;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private void complete(List<PendingWrite> batch) {
+        batch.forEach(pendingWrite -> pendingWrite.result.onNext(pendingWrite.metricsStats));
+    }
+
+    private void fail(List<PendingWrite> batch, Throwable throwable) {
+        batch.stream()
+                .filter(pendingWrite -> !pendingWrite.result.isTerminated())
+                .forEach(pendingWrite -> pendingWrite.result.onError(throwable));
+    }
+
+    private static class PendingWrite {
+
+        private final MetricsStats metricsStats;
+        private final long latencyMillis;
+        private final CheckFailureReason failureReason;
+        private final CheckTimings timings;
+        private final long timestamp = System.currentTimeMillis();
+        private final MonoProcessor<MetricsStats> result = MonoProcessor.create();
+
+        PendingWrite(MetricsStats metricsStats, long latencyMillis, CheckFailureReason failureReason,
+                     CheckTimings timings) {
+            this.metricsStats = metricsStats;
+            this.latencyMillis = latencyMillis;
+            this.failureReason = failureReason;
+            this.timings = timings;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package backend.service;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+@Component
+public class RemoteWebDriverFactory implements WebDriverFactory {
+
+    @Value("${selenium.hub.url}")
+    private String seleniumHubUrl;
+
+    @Override
+    public WebDriver createDriver() {
+        try {
+            return new RemoteWebDriver(new URL(seleniumHubUrl), new ChromeOptions());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Wrong Selenium hub URL: " + seleniumHubUrl, e);
+        }
+    }
+}
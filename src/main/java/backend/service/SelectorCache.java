@@ -0,0 +1,105 @@
+package backend.service;
+
+import backend.model.Job;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jayway.jsonpath.JsonPath;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * Keeps compiled JsonPath and XPath selectors of ENDPOINT jobs, keyed by job id, so they are compiled once instead
+ * of on every check. The selector is kept next to its compiled form and compared on every lookup, a changed
+ * selector is compiled again; this is what guards against stale selectors. Entries are also dropped when
+ * {@link JobSchedulerServiceImpl} cancels a job, which its periodic reconcile does for every edited or removed job.
+ * Compiled {@link XPathExpression}s are not thread safe and have to be evaluated while holding their monitor; XML
+ * parsers are reused per thread.
+ */
+@Component
+public class SelectorCache {
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    @Value("${job.selector.cache.size: 10000}")
+    private long cacheSize;
+
+    private Cache<String, CompiledSelector<JsonPath>> jsonPaths;
+
+    private Cache<String, CompiledSelector<XPathExpression>> xPathExpressions;
+
+    private final ThreadLocal<XPathFactory> xPathFactories = ThreadLocal.withInitial(XPathFactory::newInstance);
+
+    private final ThreadLocal<DocumentBuilder> documentBuilders = ThreadLocal.withInitial(() -> {
+        try {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot create XML document builder", e);
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        jsonPaths = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        xPathExpressions = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public JsonPath getJsonPath(Job job) {
+        CompiledSelector<JsonPath> compiled = jsonPaths.getIfPresent(String.valueOf(job.getId()));
+        if (compiled == null || !compiled.isFor(job)) {
+            compiled = new CompiledSelector<>(job.getSelector(), JsonPath.compile(job.getSelector()));
+            jsonPaths.put(String.valueOf(job.getId()), compiled);
+        }
+        return compiled.getExpression();
+    }
+
+    public XPathExpression getXPathExpression(Job job) throws XPathExpressionException {
+        CompiledSelector<XPathExpression> compiled = xPathExpressions.getIfPresent(String.valueOf(job.getId()));
+        if (compiled == null || !compiled.isFor(job)) {
+            compiled = new CompiledSelector<>(job.getSelector(),
+                    xPathFactories.get().newXPath().compile(job.getSelector()));
+            xPathExpressions.put(String.valueOf(job.getId()), compiled);
+        }
+        return compiled.getExpression();
+    }
+
+    public DocumentBuilder getDocumentBuilder() {
+        DocumentBuilder documentBuilder = documentBuilders.get();
+        documentBuilder.reset();
+        return documentBuilder;
+    }
+
+    /**
+     * Drops compiled selectors of the job, has to be called whenever the job is changed.
+     */
+    public void invalidate(String jobId) {
+        jsonPaths.invalidate(String.valueOf(jobId));
+        xPathExpressions.invalidate(String.valueOf(jobId));
+    }
+
+    private static class CompiledSelector<T> {
+
+        private final String selector;
+        private final T expression;
+
+        CompiledSelector(String selector, T expression) {
+            this.selector = selector;
+            this.expression = expression;
+        }
+
+        boolean isFor(Job job) {
+            return selector.equals(job.getSelector());
+        }
+
+        T getExpression() {
+            return expression;
+        }
+    }
+}
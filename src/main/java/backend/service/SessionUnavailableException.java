@@ -0,0 +1,12 @@
+package backend.service;
+
+/**
+ * No Selenium session could be borrowed in time. The monitored target was never contacted, so the run says nothing
+ * about its health.
+ */
+public class SessionUnavailableException extends IllegalStateException {
+
+    public SessionUnavailableException(String message) {
+        super(message);
+    }
+}
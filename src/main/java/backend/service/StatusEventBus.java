@@ -0,0 +1,220 @@
+package backend.service;
+
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.RelayedStatusEvent;
+import backend.model.StatusEvent;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process broadcast of incident and component changes to status page viewers. Every project has one shared
+ * upstream, so the project filter runs once per event however many viewers are connected, and every viewer has its
+ * own bounded buffer: a viewer that does not keep up loses its oldest events instead of slowing down the others.
+ * Incidents are routed by their component ids, looked up in memory: the components of a project are indexed when
+ * its stream is opened, later ones as they are published.
+ * <p>
+ * Checks of a job run on the node that owns it, while viewers may be connected to any node. Every published event is
+ * therefore also written to a capped collection, which the bus of every other node tails and delivers to its own
+ * viewers; a node skips the events it wrote itself. When the tail breaks it is reopened after
+ * {@code status.relay.retry.millis} from the last relayed event on.
+ */
+@Service
+public class StatusEventBus {
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ComponentService componentService;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private JobPartitionService jobPartitionService;
+
+    @Value("${status.stream.subscriber.buffer: 256}")
+    private int subscriberBufferSize;
+
+    @Value("${status.relay.enabled:true}")
+    private Boolean relayEnabled;
+
+    @Value("${status.relay.capped.bytes:16777216}")
+    private long relayCappedBytes;
+
+    @Value("${status.relay.retry.millis:1000}")
+    private long relayRetryMillis;
+
+    private final DirectProcessor<StatusEvent> processor = DirectProcessor.create();
+
+    private final FluxSink<StatusEvent> sink = processor.sink();
+
+    private final Map<String, Flux<StatusEvent>> projectStreams = new ConcurrentHashMap<>();
+
+    private final Map<String, String> projectIdByComponent = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder relayed = new LongAdder();
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private volatile long lastRelayedAt;
+
+    private volatile Disposable relaySubscription;
+
+    @PostConstruct
+    public void startRelay() {
+        if (!relayEnabled) {
+            return;
+        }
+        lastRelayedAt = System.currentTimeMillis();
+        relaySubscription = reactiveMongoTemplate.collectionExists(RelayedStatusEvent.class)
+                .filter(exists -> !exists)
+                .flatMap(missing -> reactiveMongoTemplate.createCollection(RelayedStatusEvent.class,
+                        CollectionOptions.empty().capped().size(relayCappedBytes)))
+                // another node may have created it meanwhile
+                .onErrorResume(throwable -> Mono.empty())
+                .thenMany(Flux.defer(this::tailRelay)
+                        .doOnError(throwable -> logger.warn("Status event relay broke, reopening: " + throwable.getMessage()))
+                        .retryWhen(errors -> errors.delayElements(Duration.ofMillis(relayRetryMillis)))
+                        // a tailable cursor of an empty collection ends right away
+                        .repeatWhen(completions -> completions.delayElements(Duration.ofMillis(relayRetryMillis))))
+                .subscribe(this::deliverRelayed,
+                        throwable -> logger.error("Status event relay stopped: ", throwable));
+    }
+
+    @PreDestroy
+    public void stopRelay() {
+        if (relaySubscription != null) {
+            relaySubscription.dispose();
+        }
+    }
+
+    public void publishIncident(Incident incident) {
+        deliverIncident(incident);
+        relay(StatusEvent.Type.INCIDENT, null, incident, null);
+    }
+
+    public void publishComponent(String projectId, Component component) {
+        deliverComponent(projectId, component);
+        relay(StatusEvent.Type.COMPONENT, projectId, null, component);
+    }
+
+    /**
+     * @return events of the project from now on; never blocks publishers, overflowing events are dropped.
+     */
+    public Flux<StatusEvent> subscribe(String projectId) {
+        return projectStreams.computeIfAbsent(projectId, this::projectStream)
+                .onBackpressureBuffer(subscriberBufferSize, event -> dropped.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST)
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    /**
+     * @return viewers currently subscribed on this node, over all projects.
+     */
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return events received from other nodes.
+     */
+    public long getRelayedCount() {
+        return relayed.sum();
+    }
+
+    private void deliverIncident(Incident incident) {
+        String projectId = incident.getComponentIds() == null ? null : incident.getComponentIds().stream()
+                .filter(Objects::nonNull)
+                .map(projectIdByComponent::get)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+        publish(StatusEvent.ofIncident(projectId, incident));
+    }
+
+    private void deliverComponent(String projectId, Component component) {
+        if (component.getId() != null) {
+            projectIdByComponent.put(component.getId(), projectId);
+        }
+        publish(StatusEvent.ofComponent(projectId, component));
+    }
+
+    private void relay(StatusEvent.Type type, String projectId, Incident incident, Component component) {
+        if (relaySubscription == null) {
+            return;
+        }
+        reactiveMongoTemplate.insert(new RelayedStatusEvent(jobPartitionService.getNodeId(), type, projectId, incident,
+                component))
+                .subscribe(inserted -> {
+                }, throwable -> logger.warn("Cannot relay status event to other nodes: " + throwable.getMessage()));
+    }
+
+    private Flux<RelayedStatusEvent> tailRelay() {
+        return reactiveMongoTemplate.tail(Query.query(Criteria.where("createdAt").gt(lastRelayedAt)
+                .and("nodeId").ne(jobPartitionService.getNodeId())), RelayedStatusEvent.class);
+    }
+
+    private void deliverRelayed(RelayedStatusEvent event) {
+        lastRelayedAt = Math.max(lastRelayedAt, event.getCreatedAt());
+        relayed.increment();
+        if (StatusEvent.Type.INCIDENT == event.getType() && event.getIncident() != null) {
+            deliverIncident(event.getIncident());
+        } else if (StatusEvent.Type.COMPONENT == event.getType() && event.getComponent() != null) {
+            deliverComponent(event.getProjectId(), event.getComponent());
+        }
+    }
+
+    private void publish(StatusEvent event) {
+        published.increment();
+        // the serialized sink may be called from any thread, events without subscribers are just discarded
+        sink.next(event);
+    }
+
+    private Flux<StatusEvent> projectStream(String projectId) {
+        componentService.getAllComponentsWithChilds(projectId)
+                .subscribe(component -> projectIdByComponent.put(component.getId(), projectId),
+                        throwable -> logger.error("Cannot index components of project " + projectId + ": ", throwable));
+        return processor
+                // the processor cannot wait, so a burst beyond what the shared upstream holds is dropped here
+                .onBackpressureDrop(event -> dropped.increment())
+                .filter(event -> projectId.equals(event.getProjectId()))
+                .publish()
+                .refCount();
+    }
+}
@@ -0,0 +1,363 @@
+package backend.service;
+
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.Job;
+import backend.model.MetricsRollup;
+import backend.model.RollupResolution;
+import backend.model.StatusEvent;
+import backend.model.StatusPage;
+import backend.model.StatusSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized public status of projects. The state of a project is loaded once, then kept up to date in memory
+ * from the {@link StatusEventBus} and serialized right after every change, so serving it is a map lookup and no
+ * database or JSON work at all. Uptime only changes with the daily rollups, the whole state is reloaded in the
+ * background once it is older than {@code status.snapshot.refresh.seconds}, which also bounds the staleness of
+ * anything changed outside the event bus. Only projects with a published {@link StatusPage} are served; unknown and
+ * unpublished ids are remembered for {@code status.snapshot.unpublished.ttl.seconds}, so anonymous requests for
+ * random ids do not reach the database each time.
+ */
+@Service
+public class StatusSnapshotService {
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${status.snapshot.cache.size: 1000}")
+    private long cacheSize;
+
+    @Value("${status.snapshot.idle.minutes: 30}")
+    private long idleMinutes;
+
+    @Value("${status.snapshot.refresh.seconds: 300}")
+    private long refreshSeconds;
+
+    @Value("${status.snapshot.uptime.days: 30}")
+    private int uptimeDays;
+
+    @Value("${status.snapshot.unpublished.cache.size: 100000}")
+    private long unpublishedCacheSize;
+
+    @Value("${status.snapshot.unpublished.ttl.seconds: 60}")
+    private long unpublishedTtlSeconds;
+
+    private Cache<String, ProjectStatus> projects;
+
+    private Cache<String, Boolean> unpublished;
+
+    @PostConstruct
+    public void init() {
+        projects = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+                .<String, ProjectStatus>removalListener((projectId, status, cause) -> {
+                    if (status != null && status.subscription != null && cause != RemovalCause.REPLACED) {
+                        status.subscription.dispose();
+                    }
+                })
+                .build();
+        unpublished = Caffeine.newBuilder()
+                .maximumSize(unpublishedCacheSize)
+                .expireAfterWrite(unpublishedTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return serialized status of the project, empty when there is no such project or its status is not published.
+     */
+    public Mono<RenderedSnapshot> getSnapshot(String projectId) {
+        return Mono.defer(() -> {
+            ProjectStatus cached = projects.getIfPresent(projectId);
+            if (cached == null) {
+                return unpublished.getIfPresent(projectId) != null ? Mono.empty() : load(projectId);
+            }
+            if (cached.isStale(TimeUnit.SECONDS.toMillis(refreshSeconds)) && cached.refreshing.compareAndSet(false, true)) {
+                loadState(projectId)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .doFinally(signal -> cached.refreshing.set(false))
+                        .subscribe(state -> {
+                                    if (state.isPresent()) {
+                                        cached.replaceState(state.get(), objectMapper);
+                                    } else {
+                                        // unpublished or deleted meanwhile, possibly on another node
+                                        projects.invalidate(projectId);
+                                        unpublished.put(projectId, Boolean.TRUE);
+                                    }
+                                },
+                                throwable -> logger.error("Cannot refresh status snapshot of project " + projectId + ": ",
+                                        throwable));
+            }
+            return Mono.just(cached.rendered);
+        });
+    }
+
+    /**
+     * Publishes or hides the status of the project. Other nodes pick the change up within
+     * {@code status.snapshot.unpublished.ttl.seconds} or {@code status.snapshot.refresh.seconds}.
+     */
+    public Mono<StatusPage> setPublished(String projectId, boolean published) {
+        return reactiveMongoTemplate.save(new StatusPage(projectId, published))
+                .doOnNext(statusPage -> invalidate(projectId));
+    }
+
+    public void invalidate(String projectId) {
+        projects.invalidate(projectId);
+        unpublished.invalidate(projectId);
+    }
+
+    private Mono<RenderedSnapshot> load(String projectId) {
+        return loadState(projectId)
+                .switchIfEmpty(Mono.fromRunnable(() -> unpublished.put(projectId, Boolean.TRUE)))
+                .map(state -> {
+                    ProjectStatus status = new ProjectStatus(projectId, state, objectMapper);
+                    ProjectStatus existing = projects.asMap().putIfAbsent(projectId, status);
+                    if (existing != null) {
+                        // loaded concurrently by another viewer
+                        return existing.rendered;
+                    }
+                    status.subscription = statusEventBus.subscribe(projectId)
+                            .subscribe(event -> status.apply(event, objectMapper),
+                                    throwable -> logger.error("Status snapshot of project " + projectId +
+                                            " stopped following changes: ", throwable));
+                    if (projects.getIfPresent(projectId) != status) {
+                        // evicted before it was subscribed
+                        status.subscription.dispose();
+                    }
+                    return status.rendered;
+                });
+    }
+
+    private Mono<ProjectState> loadState(String projectId) {
+        return reactiveMongoTemplate.findById(projectId, StatusPage.class)
+                .filter(StatusPage::isPublished)
+                .flatMap(statusPage -> projectService.getProjectById(projectId))
+                .flatMap(project -> {
+                    List<Component> components = new ArrayList<>(project.getComponents());
+                    List<String> componentIds = components.stream().map(Component::getId).collect(Collectors.toList());
+                    Mono<List<Incident>> openIncidents = reactiveMongoTemplate.find(Query.query(
+                            Criteria.where("status").is(IncidentStatus.OPENED).and("componentIds").in(componentIds)),
+                            Incident.class)
+                            .collectList();
+                    return openIncidents.zipWith(loadUptime(componentIds),
+                            (incidents, uptime) -> new ProjectState(components, incidents, uptime));
+                });
+    }
+
+    /**
+     * @return share of successful checks per component over the day rollups of all jobs of the component.
+     */
+    private Mono<Map<String, Double>> loadUptime(List<String> componentIds) {
+        Query jobsQuery = Query.query(Criteria.where("componentIds").in(componentIds));
+        jobsQuery.fields().include("componentIds");
+        return reactiveMongoTemplate.find(jobsQuery, Job.class)
+                .collectList()
+                .flatMap(jobs -> {
+                    Map<String, Job> jobsById = jobs.stream().collect(Collectors.toMap(Job::getId, job -> job));
+                    return reactiveMongoTemplate.find(Query.query(Criteria.where("jobId").in(jobsById.keySet())
+                            .and("resolution").is(RollupResolution.DAY)
+                            .and("periodStart").gte(LocalDate.now().minusDays(uptimeDays).atStartOfDay())),
+                            MetricsRollup.class)
+                            .collectList()
+                            .map(rollups -> {
+                                Map<String, long[]> successAndTotal = new HashMap<>();
+                                for (MetricsRollup rollup : rollups) {
+                                    for (String componentId : jobsById.get(rollup.getJobId()).getComponentIds()) {
+                                        long[] counts = successAndTotal.computeIfAbsent(componentId, id -> new long[2]);
+                                        counts[0] += rollup.getSuccess();
+                                        counts[1] += rollup.getTotal();
+                                    }
+                                }
+                                Map<String, Double> uptime = new HashMap<>();
+                                successAndTotal.forEach((componentId, counts) -> {
+                                    if (counts[1] > 0) {
+                                        uptime.put(componentId, (double) counts[0] / counts[1]);
+                                    }
+                                });
+                                return uptime;
+                            });
+                });
+    }
+
+    public static class RenderedSnapshot {
+
+        private final byte[] body;
+        private final String eTag;
+
+        RenderedSnapshot(byte[] body, String eTag) {
+            this.body = body;
+            this.eTag = eTag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+
+    private static class ProjectState {
+
+        private final Map<String, Component> components = new LinkedHashMap<>();
+        private final Map<String, Incident> openIncidents = new LinkedHashMap<>();
+        private final Map<String, Double> uptime;
+
+        ProjectState(List<Component> components, List<Incident> openIncidents, Map<String, Double> uptime) {
+            components.forEach(component -> this.components.put(component.getId(), component));
+            openIncidents.forEach(incident -> this.openIncidents.put(incident.getId(), incident));
+            this.uptime = uptime;
+        }
+    }
+
+    private static class ProjectStatus {
+
+        private final String projectId;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private ProjectState state;
+        private long loadedAtMillis;
+        private volatile RenderedSnapshot rendered;
+        private volatile Disposable subscription;
+
+        ProjectStatus(String projectId, ProjectState state, ObjectMapper objectMapper) {
+            this.projectId = projectId;
+            replaceState(state, objectMapper);
+        }
+
+        synchronized void replaceState(ProjectState state, ObjectMapper objectMapper) {
+            this.state = state;
+            this.loadedAtMillis = System.currentTimeMillis();
+            render(objectMapper);
+        }
+
+        synchronized boolean isStale(long maxAgeMillis) {
+            return System.currentTimeMillis() - loadedAtMillis > maxAgeMillis;
+        }
+
+        synchronized void apply(StatusEvent event, ObjectMapper objectMapper) {
+            if (StatusEvent.Type.INCIDENT == event.getType()) {
+                Incident incident = event.getIncident();
+                if (IncidentStatus.OPENED == incident.getStatus()) {
+                    state.openIncidents.put(incident.getId(), incident);
+                } else {
+                    state.openIncidents.remove(incident.getId());
+                }
+            } else {
+                state.components.put(event.getComponent().getId(), event.getComponent());
+            }
+            render(objectMapper);
+        }
+
+        private void render(ObjectMapper objectMapper) {
+            Map<String, List<Component>> childrenByParentId = new HashMap<>();
+            List<Component> roots = new ArrayList<>();
+            for (Component component : state.components.values()) {
+                if (component.getParentId() == null || !state.components.containsKey(component.getParentId())) {
+                    roots.add(component);
+                } else {
+                    childrenByParentId.computeIfAbsent(component.getParentId(), id -> new ArrayList<>()).add(component);
+                }
+            }
+            List<StatusSnapshot.ComponentStatus> componentStatuses = new ArrayList<>();
+            StatusSnapshot.Status projectStatus = StatusSnapshot.Status.OPERATIONAL;
+            for (Component root : roots) {
+                StatusSnapshot.ComponentStatus rootStatus = componentStatus(root, childrenByParentId, new ArrayList<>());
+                componentStatuses.add(rootStatus);
+                projectStatus = worst(projectStatus, rootStatus.getStatus());
+            }
+            List<StatusSnapshot.OpenIncident> openIncidents = state.openIncidents.values().stream()
+                    .map(StatusSnapshot.OpenIncident::new)
+                    .collect(Collectors.toList());
+            try {
+                // the ETag covers the visible content only, a no-op change keeps the current body and its ETag
+                String eTag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(new StatusSnapshot(
+                        projectId, projectStatus, null, componentStatuses, openIncidents))) + "\"";
+                if (rendered != null && rendered.eTag.equals(eTag)) {
+                    return;
+                }
+                StatusSnapshot snapshot = new StatusSnapshot(projectId, projectStatus, LocalDateTime.now(),
+                        componentStatuses, openIncidents);
+                rendered = new RenderedSnapshot(objectMapper.writeValueAsBytes(snapshot), eTag);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot serialize status snapshot of project " + projectId, e);
+            }
+        }
+
+        /**
+         * A component with an open incident of its own is in outage, one with an unhealthy descendant is degraded.
+         */
+        private StatusSnapshot.ComponentStatus componentStatus(Component component,
+                                                               Map<String, List<Component>> childrenByParentId,
+                                                               List<String> path) {
+            boolean hasIncident = state.openIncidents.values().stream()
+                    .anyMatch(incident -> incident.getComponentIds().contains(component.getId()));
+            StatusSnapshot.Status status = hasIncident ? StatusSnapshot.Status.OUTAGE : StatusSnapshot.Status.OPERATIONAL;
+            List<StatusSnapshot.ComponentStatus> children = new ArrayList<>();
+            path.add(component.getId());
+            for (Component child : childrenByParentId.getOrDefault(component.getId(), Collections.emptyList())) {
+                // parent cycles would recurse forever, a component already on the path is shown only once
+                if (path.contains(child.getId())) {
+                    continue;
+                }
+                StatusSnapshot.ComponentStatus childStatus = componentStatus(child, childrenByParentId, path);
+                children.add(childStatus);
+                if (childStatus.getStatus() != StatusSnapshot.Status.OPERATIONAL) {
+                    status = worst(status, StatusSnapshot.Status.DEGRADED);
+                }
+            }
+            path.remove(path.size() - 1);
+            StatusSnapshot.ComponentStatus componentStatus = new StatusSnapshot.ComponentStatus(component, status,
+                    state.uptime.get(component.getId()));
+            componentStatus.getChildren().addAll(children);
+            return componentStatus;
+        }
+
+        private static StatusSnapshot.Status worst(StatusSnapshot.Status first, StatusSnapshot.Status second) {
+            return first.ordinal() >= second.ordinal() ? first : second;
+        }
+    }
+}
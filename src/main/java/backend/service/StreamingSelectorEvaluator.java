@@ -0,0 +1,355 @@
+package backend.service;
+
+import backend.model.EndpointResponseType;
+import backend.model.Job;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the value selected by a simple JsonPath ({@code $.a[0].b}) or a simple absolute XPath
+ * ({@code /a/b[1]/c}, {@code /a/b/@attr}) while the response body is still arriving, and stops reading as soon as
+ * the value is found. Both formats are parsed without blocking, chunk by chunk as they arrive. Anything more complex
+ * (wildcards, filters, functions, deep scan) is not supported here and has to go through the full tree evaluation.
+ * Results are the same as of the full tree evaluation: a JSON selector has to point at a string (or null), any other
+ * value fails the same way reading it as a String does, and {@code text()} is the first text node of the element,
+ * not its whole string value.
+ */
+@Component
+public class StreamingSelectorEvaluator {
+
+    private static final Pattern JSON_PATH_SEGMENT = Pattern.compile("\\.?(?:([A-Za-z_$][\\w$-]*)|\\[(\\d+)]|\\['([^'\\\\]+)'])");
+
+    private static final Pattern SIMPLE_XPATH = Pattern.compile("(/[A-Za-z_][\\w.-]*(\\[[1-9]\\d*])?)+(/@[A-Za-z_][\\w.-]*|/text\\(\\))?");
+
+    private static final Pattern XPATH_STEP = Pattern.compile("/(@?)([A-Za-z_][\\w.-]*|text\\(\\))(?:\\[(\\d+)])?");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final AsyncXMLInputFactory XML_INPUT_FACTORY = new InputFactoryImpl();
+
+    static {
+        // behave like the non namespace aware DOM parser used by the full tree evaluation
+        if (XML_INPUT_FACTORY.isPropertySupported(XMLInputFactory.IS_NAMESPACE_AWARE)) {
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        }
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public boolean supports(Job job) {
+        if (job.getSelector() == null) {
+            return false;
+        }
+        if (EndpointResponseType.JSON == job.getEndpointResponseType()) {
+            return parseJsonPath(job.getSelector()) != null;
+        }
+        if (EndpointResponseType.XML == job.getEndpointResponseType()) {
+            return SIMPLE_XPATH.matcher(job.getSelector()).matches();
+        }
+        return false;
+    }
+
+    public Mono<String> extract(Job job, Flux<DataBuffer> body) {
+        // copy every chunk out and release it right away, so nothing pooled is left behind when reading stops early
+        Flux<byte[]> chunks = body.map(buffer -> {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            return bytes;
+        });
+        if (EndpointResponseType.JSON == job.getEndpointResponseType()) {
+            return extractJson(chunks, job.getSelector());
+        }
+        return extractXml(chunks, job.getSelector());
+    }
+
+    private Mono<String> extractJson(Flux<byte[]> chunks, String selector) {
+        List<Object> path = parseJsonPath(selector);
+        return Mono.defer(() -> {
+            JsonParser parser;
+            try {
+                parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+
+            return chunks
+                    .concatWith(Mono.just(new byte[0]))
+                    .<String>handle((bytes, sink) -> {
+                        try {
+                            if (bytes.length == 0) {
+                                feeder.endOfInput();
+                            } else {
+                                feeder.feedInput(bytes, 0, bytes.length);
+                            }
+                            String value = nextJsonValue(parser, path, selector);
+                            if (value != null) {
+                                sink.next(value);
+                            }
+                        } catch (IOException | ClassCastException e) {
+                            sink.error(e);
+                        }
+                    })
+                    .next()
+                    .switchIfEmpty(Mono.error(new PathNotFoundException("No results for path: " + selector)));
+        });
+    }
+
+    /**
+     * The full tree evaluation reads the selected value into a String, so only strings and null are values here;
+     * numbers, booleans, objects and arrays fail with the same {@link ClassCastException}.
+     */
+    private String nextJsonValue(JsonParser parser, List<Object> path, String selector) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && JsonToken.NOT_AVAILABLE != token) {
+            if (token.isScalarValue() && matchesJsonPath(parser.getParsingContext(), path)) {
+                if (JsonToken.VALUE_STRING == token) {
+                    return parser.getText();
+                }
+                if (JsonToken.VALUE_NULL == token) {
+                    return String.valueOf((Object) null);
+                }
+                throw notAString(selector, token);
+            }
+            // a container's own context is the one inside it, its position is given by the parent context
+            if ((JsonToken.START_OBJECT == token || JsonToken.START_ARRAY == token)
+                    && matchesJsonPath(parser.getParsingContext().getParent(), path)) {
+                throw notAString(selector, token);
+            }
+        }
+        return null;
+    }
+
+    private ClassCastException notAString(String selector, JsonToken token) {
+        return new ClassCastException(String.format("Value of path %s is %s, not a string", selector, token));
+    }
+
+    private boolean matchesJsonPath(JsonStreamContext context, List<Object> path) {
+        int segment = path.size() - 1;
+        while (context != null && !context.inRoot()) {
+            if (segment < 0) {
+                return false;
+            }
+            Object expected = path.get(segment);
+            if (context.inArray()) {
+                if (!(expected instanceof Integer) || (Integer) expected != context.getCurrentIndex()) {
+                    return false;
+                }
+            } else if (!expected.equals(context.getCurrentName())) {
+                return false;
+            }
+            context = context.getParent();
+            segment--;
+        }
+        return segment < 0;
+    }
+
+    private Mono<String> extractXml(Flux<byte[]> chunks, String selector) {
+        List<XPathStep> steps = parseXPath(selector);
+        return Mono.defer(() -> {
+            AsyncXMLStreamReader<AsyncByteArrayFeeder> reader = XML_INPUT_FACTORY.createAsyncForByteArray();
+            XmlMatcher matcher = new XmlMatcher(steps);
+
+            return chunks
+                    .concatWith(Mono.just(new byte[0]))
+                    .<String>handle((bytes, sink) -> {
+                        try {
+                            if (bytes.length == 0) {
+                                reader.getInputFeeder().endOfInput();
+                            } else {
+                                reader.getInputFeeder().feedInput(bytes, 0, bytes.length);
+                            }
+                            String value = matcher.advance(reader);
+                            if (value != null) {
+                                sink.next(value);
+                            }
+                        } catch (XMLStreamException e) {
+                            sink.error(e);
+                        }
+                    })
+                    .next()
+                    .doFinally(signal -> {
+                        try {
+                            reader.close();
+                        } catch (XMLStreamException e) {
+                            // nothing is left to release
+                        }
+                    });
+        });
+    }
+
+    /**
+     * @return path segments, field names as {@link String} and array indexes as {@link Integer}, or null when
+     * the expression is not a simple path.
+     */
+    static List<Object> parseJsonPath(String selector) {
+        if (!selector.startsWith("$")) {
+            return null;
+        }
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = JSON_PATH_SEGMENT.matcher(selector);
+        int position = 1;
+        while (position < selector.length()) {
+            if (!matcher.find(position) || matcher.start() != position) {
+                return null;
+            }
+            if (matcher.group(1) != null) {
+                segments.add(matcher.group(1));
+            } else if (matcher.group(2) != null) {
+                segments.add(Integer.valueOf(matcher.group(2)));
+            } else {
+                segments.add(matcher.group(3));
+            }
+            position = matcher.end();
+        }
+        return segments.isEmpty() ? null : segments;
+    }
+
+    private static List<XPathStep> parseXPath(String selector) {
+        List<XPathStep> steps = new ArrayList<>();
+        Matcher matcher = XPATH_STEP.matcher(selector);
+        while (matcher.find()) {
+            steps.add(new XPathStep(matcher.group(2), !matcher.group(1).isEmpty(),
+                    matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3))));
+        }
+        return steps;
+    }
+
+    /**
+     * Walks XML events of a simple absolute XPath and keeps its position between chunks. Element names are matched
+     * with their prefix, like the non namespace aware DOM of the full tree evaluation does.
+     */
+    private static class XmlMatcher {
+
+        private final List<XPathStep> elementSteps;
+        private final String attribute;
+        private final boolean firstTextNode;
+        private final Deque<Map<String, Integer>> childCounts = new ArrayDeque<>();
+        private final StringBuilder text = new StringBuilder();
+        private int depth;
+        private int matchedDepth;
+        private int captureDepth = -1;
+
+        XmlMatcher(List<XPathStep> steps) {
+            XPathStep last = steps.get(steps.size() - 1);
+            this.attribute = last.attribute ? last.name : null;
+            this.firstTextNode = "text()".equals(last.name);
+            this.elementSteps = last.attribute || firstTextNode ? steps.subList(0, steps.size() - 1) : steps;
+            childCounts.push(new HashMap<>());
+        }
+
+        /**
+         * @return the value once found, "" when the document ended without it, null while more input is needed.
+         */
+        String advance(AsyncXMLStreamReader<?> reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (AsyncXMLStreamReader.EVENT_INCOMPLETE == event) {
+                    return null;
+                }
+                boolean characters = XMLStreamConstants.CHARACTERS == event || XMLStreamConstants.CDATA == event
+                        || XMLStreamConstants.SPACE == event;
+                // adjacent text and CDATA form one text node, anything else ends it
+                if (firstTextNode && captureDepth > 0 && text.length() > 0 && !characters) {
+                    return text.toString();
+                }
+                if (characters) {
+                    if (captureDepth > 0 && (!firstTextNode || depth == captureDepth)) {
+                        text.append(reader.getText());
+                    }
+                } else if (XMLStreamConstants.START_ELEMENT == event) {
+                    String value = startElement(reader);
+                    if (value != null) {
+                        return value;
+                    }
+                } else if (XMLStreamConstants.END_ELEMENT == event) {
+                    if (captureDepth == depth) {
+                        if (!firstTextNode) {
+                            return text.toString();
+                        }
+                        // no text child here, the next matching element may have one
+                        captureDepth = -1;
+                    }
+                    childCounts.pop();
+                    if (matchedDepth == depth) {
+                        matchedDepth--;
+                    }
+                    depth--;
+                }
+            }
+            return "";
+        }
+
+        private String startElement(AsyncXMLStreamReader<?> reader) {
+            String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+            int position = childCounts.peek().merge(name, 1, Integer::sum);
+            childCounts.push(new HashMap<>());
+            depth++;
+            if (captureDepth > 0 || matchedDepth != depth - 1 || matchedDepth >= elementSteps.size()) {
+                return null;
+            }
+            XPathStep step = elementSteps.get(matchedDepth);
+            if (!step.name.equals(name) || (step.position != 0 && step.position != position)) {
+                return null;
+            }
+            matchedDepth = depth;
+            if (matchedDepth < elementSteps.size()) {
+                return null;
+            }
+            if (attribute == null) {
+                captureDepth = depth;
+                return null;
+            }
+            // elements without the attribute are skipped, the next matching one may have it
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (attribute.equals(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+                    return reader.getAttributeValue(i);
+                }
+            }
+            return null;
+        }
+
+        private static String qualifiedName(String prefix, String localName) {
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+    }
+
+    private static class XPathStep {
+
+        private final String name;
+        private final boolean attribute;
+        private final int position;
+
+        XPathStep(String name, boolean attribute, int position) {
+            this.name = name;
+            this.attribute = attribute;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package backend.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Account, company and projects of the authenticated user, resolved once and reused by every request of the user
+ * while it is cached.
+ */
+public class TenantContext {
+
+    private final String userId;
+    private final String accountId;
+    private final String companyId;
+    private final List<String> projectIds;
+
+    public TenantContext(String userId, String accountId, String companyId, List<String> projectIds) {
+        this.userId = userId;
+        this.accountId = accountId;
+        this.companyId = companyId;
+        this.projectIds = Collections.unmodifiableList(projectIds);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    public List<String> getProjectIds() {
+        return projectIds;
+    }
+
+    /**
+     * @return first available project id or null when the user has no projects.
+     */
+    public String getFirstProjectId() {
+        return projectIds.isEmpty() ? null : projectIds.get(0);
+    }
+}
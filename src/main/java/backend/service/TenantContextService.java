@@ -0,0 +1,116 @@
+package backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the {@link TenantContext} of the authenticated user. Resolved contexts are cached per user for a short
+ * time and have to be invalidated whenever an account, company or project of the user changes. A user without
+ * projects is not cached, the project they are about to create has to show up right away. Within a web
+ * request the context is taken from the Reactor context, where it is put lazily by the tenant web filter.
+ */
+@Service
+public class TenantContextService {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Value("${tenant.context.cache.size: 10000}")
+    private long cacheSize;
+
+    @Value("${tenant.context.cache.ttl.seconds: 30}")
+    private long cacheTtlSeconds;
+
+    private Cache<String, TenantContext> tenantContexts;
+
+    @PostConstruct
+    public void init() {
+        tenantContexts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return tenant of the current request, empty when nobody is authenticated.
+     */
+    public Mono<TenantContext> getCurrentTenant() {
+        return Mono.subscriberContext()
+                .flatMap(context -> context.<Mono<TenantContext>>getOrDefault(TenantContext.class, resolveCurrentTenant()));
+    }
+
+    /**
+     * @return first project of the current tenant, an error when the user has no project.
+     */
+    // TODO refactor when project context selection will be implemented, now it just takes first available project ID
+    public Mono<String> getCurrentUserFirstProjectId() {
+        return getCurrentTenant()
+                .flatMap(tenant -> Mono.justOrEmpty(tenant.getFirstProjectId()))
+                .switchIfEmpty(Mono.error(new IllegalStateException("Current user has no available projects")));
+    }
+
+    /**
+     * @return the tenant of the authenticated user from the cache, loading it on a miss.
+     */
+    public Mono<TenantContext> resolveCurrentTenant() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getName)
+                .flatMap(userId -> {
+                    TenantContext cached = tenantContexts.getIfPresent(userId);
+                    if (cached != null) {
+                        return Mono.just(cached);
+                    }
+                    // a user without an account yet still gets a tenant, only with no account and company
+                    return Mono.zip(accountService.getCurrentUserAccount().map(Optional::of).defaultIfEmpty(Optional.empty()),
+                            projectService.getCurrentUserProjects().map(Project::getId).collectList())
+                            .map(accountAndProjects -> new TenantContext(userId,
+                                    accountAndProjects.getT1().map(Account::getId).orElse(null),
+                                    accountAndProjects.getT1().map(Account::getCompanyId).orElse(null),
+                                    accountAndProjects.getT2()))
+                            .doOnNext(tenantContext -> {
+                                if (!tenantContext.getProjectIds().isEmpty()) {
+                                    tenantContexts.put(userId, tenantContext);
+                                }
+                            });
+                });
+    }
+
+    public void invalidate(String userId) {
+        if (userId != null) {
+            tenantContexts.invalidate(userId);
+        }
+    }
+
+    /**
+     * Drops the cached tenant of the current user.
+     */
+    public Mono<Void> invalidateCurrent() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .doOnNext(authentication -> invalidate(authentication.getName()))
+                .then();
+    }
+
+    /**
+     * Drops every cached tenant, for changes that may affect other users as well, such as company or membership
+     * changes.
+     */
+    public void invalidateAll() {
+        tenantContexts.invalidateAll();
+    }
+}
@@ -0,0 +1,8 @@
+package backend.service;
+
+import org.openqa.selenium.WebDriver;
+
+public interface WebDriverFactory {
+
+    WebDriver createDriver();
+}
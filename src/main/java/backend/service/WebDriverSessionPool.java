@@ -0,0 +1,214 @@
+package backend.service;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of Selenium sessions shared by DOM jobs. Sessions are health checked when borrowed, cleaned
+ * (cookies, local and session storage) when returned, recycled after a number of uses and evicted when idle.
+ */
+@Component
+public class WebDriverSessionPool {
+
+    private static final String CLEAR_STORAGE_SCRIPT = "window.localStorage.clear(); window.sessionStorage.clear();";
+
+    @Autowired
+    private Logger logger;
+
+    @Autowired
+    private WebDriverFactory webDriverFactory;
+
+    @Value("${selenium.pool.max.sessions: 8}")
+    private int maxSessions;
+
+    @Value("${selenium.pool.max.uses: 50}")
+    private int maxUsesPerSession;
+
+    @Value("${selenium.pool.idle.seconds: 120}")
+    private int maxIdleSeconds;
+
+    @Value("${selenium.pool.borrow.timeout.seconds: 30}")
+    private int borrowTimeoutSeconds;
+
+    private Semaphore permits;
+
+    private final BlockingDeque<PooledSession> idleSessions = new LinkedBlockingDeque<>();
+
+    private final AtomicInteger sessionsInUse = new AtomicInteger();
+
+    private final LongAdder recycledSessions = new LongAdder();
+
+    private final LongAdder borrowCount = new LongAdder();
+
+    private final LongAdder totalWaitMillis = new LongAdder();
+
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxSessions, true);
+    }
+
+    public PooledSession borrow() throws InterruptedException {
+        long startedAt = System.currentTimeMillis();
+        if (!permits.tryAcquire(borrowTimeoutSeconds, TimeUnit.SECONDS)) {
+            throw new SessionUnavailableException(String.format("No Selenium session available within %s seconds",
+                    borrowTimeoutSeconds));
+        }
+        try {
+            PooledSession session;
+            while ((session = idleSessions.pollFirst()) != null) {
+                if (!isExpired(session) && isHealthy(session)) {
+                    break;
+                }
+                destroy(session);
+            }
+            if (session == null) {
+                session = new PooledSession(webDriverFactory.createDriver());
+            }
+            session.uses.incrementAndGet();
+            sessionsInUse.incrementAndGet();
+            recordWait(System.currentTimeMillis() - startedAt);
+            return session;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the session to the pool.
+     *
+     * @param session session received from {@link #borrow()}.
+     * @param broken  true when the session failed in a way that leaves the browser in an unknown state.
+     */
+    public void release(PooledSession session, boolean broken) {
+        try {
+            if (broken || session.uses.get() >= maxUsesPerSession || !reset(session)) {
+                destroy(session);
+            } else {
+                session.lastUsedMillis = System.currentTimeMillis();
+                // most recently used sessions go first, so idle ones at the tail can be evicted
+                idleSessions.offerFirst(session);
+            }
+        } finally {
+            sessionsInUse.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${selenium.pool.eviction.millis:30000}")
+    public void evictIdleSessions() {
+        Iterator<PooledSession> iterator = idleSessions.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledSession session = iterator.next();
+            if (isExpired(session) && idleSessions.remove(session)) {
+                destroy(session);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        PooledSession session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            destroy(session);
+        }
+    }
+
+    public int getSessionsInUse() {
+        return sessionsInUse.get();
+    }
+
+    public int getIdleSessions() {
+        return idleSessions.size();
+    }
+
+    public long getRecycledSessions() {
+        return recycledSessions.sum();
+    }
+
+    public long getAverageWaitMillis() {
+        long borrowed = borrowCount.sum();
+        return borrowed == 0 ? 0 : totalWaitMillis.sum() / borrowed;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    private boolean isExpired(PooledSession session) {
+        return System.currentTimeMillis() - session.lastUsedMillis > TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+    }
+
+    private boolean isHealthy(PooledSession session) {
+        try {
+            session.driver.getWindowHandle();
+            return true;
+        } catch (Exception e) {
+            logger.warn("Selenium session is not responding, dropping it: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean reset(PooledSession session) {
+        try {
+            WebDriver driver = session.driver;
+            driver.manage().deleteAllCookies();
+            if (driver instanceof JavascriptExecutor) {
+                ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+            }
+            driver.get("about:blank");
+            return true;
+        } catch (Exception e) {
+            logger.warn("Cannot reset Selenium session, dropping it: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledSession session) {
+        recycledSessions.increment();
+        try {
+            session.driver.quit();
+        } catch (Exception e) {
+            logger.warn("Cannot quit Selenium session: " + e.getMessage());
+        }
+    }
+
+    private void recordWait(long waitMillis) {
+        borrowCount.increment();
+        totalWaitMillis.add(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    public static class PooledSession {
+
+        private final WebDriver driver;
+        private final AtomicInteger uses = new AtomicInteger();
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private PooledSession(WebDriver driver) {
+            this.driver = driver;
+        }
+
+        public WebDriver getDriver() {
+            return driver;
+        }
+    }
+}
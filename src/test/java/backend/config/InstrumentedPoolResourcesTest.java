@@ -0,0 +1,170 @@
+package backend.config;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+import reactor.ipc.netty.resources.PoolResources;
+import reactor.util.context.Context;
+
+import javax.net.ssl.SSLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+public class InstrumentedPoolResourcesTest {
+
+    private final List<String> receivedTimingIds = new CopyOnWriteArrayList<>();
+
+    private NettyContext server;
+
+    private InstrumentedPoolResources checkPool;
+
+    private InstrumentedPoolResources authPool;
+
+    @After
+    public void tearDown() {
+        if (checkPool != null) {
+            checkPool.dispose();
+        }
+        if (authPool != null) {
+            authPool.dispose();
+        }
+        if (server != null) {
+            server.dispose();
+        }
+    }
+
+    @Test
+    public void shouldTimeNewPlainConnectionAndStripTimingHeader() throws SSLException {
+        server = HttpServer.create(0).newHandler((request, response) -> {
+            receivedTimingIds.add(request.requestHeaders().get(InstrumentedPoolResources.TIMING_ID_HEADER));
+            return response.status(200).sendString(Mono.just("OK"));
+        }).block();
+
+        assertTimings(String.format("http://localhost:%s/status", server.address().getPort()), false);
+    }
+
+    @Test
+    public void shouldTimeNewTlsConnectionAndStripTimingHeader() throws SSLException {
+        server = HttpServer.create(options -> options.port(0).sslSelfSigned()).newHandler((request, response) -> {
+            receivedTimingIds.add(request.requestHeaders().get(InstrumentedPoolResources.TIMING_ID_HEADER));
+            return response.status(200).sendString(Mono.just("OK"));
+        }).block();
+
+        assertTimings(String.format("https://localhost:%s/status", server.address().getPort()), true);
+    }
+
+    @Test
+    public void shouldValidateAuthPromptlyWhileChecksSaturateTheirPool() throws SSLException, InterruptedException {
+        // checks hang for two seconds, auth validation answers right away, both on the same host
+        server = HttpServer.create(0).newHandler((request, response) -> request.uri().startsWith("/auth") ?
+                response.status(200).sendString(Mono.just("{\"id\":\"user\"}")) :
+                response.status(200).sendString(Mono.just("OK").delayElement(Duration.ofSeconds(2)))).block();
+        String baseUrl = String.format("http://localhost:%s", server.address().getPort());
+        ApiConfig apiConfig = new ApiConfig();
+        checkPool = apiConfig.checkPoolResources(2, 5000, 0);
+        authPool = apiConfig.authPoolResources(2, 1000, 0);
+        WebClient webClient = apiConfig.webClient(checkPool, 2000, 5000);
+        WebClient authWebClient = apiConfig.authWebClient(authPool, 2000, 5000);
+
+        Disposable checks = Flux.range(0, 10)
+                .flatMap(i -> webClient.get().uri(baseUrl + "/status").exchange()
+                        .flatMap(response -> response.bodyToMono(String.class)))
+                .subscribe();
+        try {
+            await(() -> checkPool.getActiveConnections() == 2 && checkPool.getPendingAcquires() == 8);
+
+            long startedAt = System.currentTimeMillis();
+            String user = authWebClient.get().uri(baseUrl + "/auth/validate/token").exchange()
+                    .flatMap(response -> response.bodyToMono(String.class))
+                    .block(Duration.ofSeconds(5));
+            long authMillis = System.currentTimeMillis() - startedAt;
+
+            Assert.assertEquals("{\"id\":\"user\"}", user);
+            Assert.assertTrue("auth validation took " + authMillis + " ms", authMillis < 1000);
+            Assert.assertEquals(0, authPool.getPendingAcquires());
+            Assert.assertEquals(2, checkPool.getActiveConnections());
+            Assert.assertEquals(8, checkPool.getPendingAcquires());
+        } finally {
+            checks.dispose();
+        }
+    }
+
+    @Test
+    public void shouldCountAcquiresAndEvictIdleConnections() throws SSLException, InterruptedException {
+        server = HttpServer.create(0).newHandler((request, response) ->
+                response.status(200).sendString(Mono.just("OK"))).block();
+        String url = String.format("http://localhost:%s/status", server.address().getPort());
+        ApiConfig apiConfig = new ApiConfig();
+        checkPool = apiConfig.checkPoolResources(4, 3000, 1);
+        WebClient webClient = apiConfig.webClient(checkPool, 2000, 5000);
+
+        Flux.range(0, 4)
+                .flatMap(i -> webClient.get().uri(url).exchange().flatMap(response -> response.bodyToMono(String.class)))
+                .blockLast(Duration.ofSeconds(5));
+
+        await(() -> checkPool.getActiveConnections() == 0);
+        Assert.assertEquals(0, checkPool.getPendingAcquires());
+        Assert.assertEquals(4, checkPool.getAcquireCount());
+        Assert.assertEquals(0, checkPool.getFailedAcquires());
+        // connections opened for the burst are closed once they have been idle for a second, the pool then opens
+        // a new one
+        await(() -> checkPool.getEvictedConnections() > 0);
+        Assert.assertEquals("OK", webClient.get().uri(url).exchange()
+                .flatMap(response -> response.bodyToMono(String.class))
+                .block(Duration.ofSeconds(5)));
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("condition not met within 5 seconds", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private void assertTimings(String url, boolean secure) throws SSLException {
+        ApiConfig apiConfig = new ApiConfig();
+        // a single connection, the second request has to reuse it
+        checkPool = apiConfig.checkPoolResources(1, 3000, 0);
+        WebClient webClient = apiConfig.webClient(checkPool, 2000, 5000);
+
+        String firstTimingId = checkPool.newTimingId();
+        Assert.assertEquals("OK", get(webClient, url, firstTimingId));
+        InstrumentedPoolResources.ConnectionTimings first = checkPool.claimConnectionTimings(firstTimingId);
+        Assert.assertNotNull(first);
+        Assert.assertTrue(first.getDnsMillis() >= 0);
+        Assert.assertTrue(first.getConnectMillis() >= 0);
+        Assert.assertTrue(first.getTlsMillis() >= 0);
+        if (!secure) {
+            Assert.assertEquals(0, first.getTlsMillis());
+        }
+        // claimed once only
+        Assert.assertNull(checkPool.claimConnectionTimings(firstTimingId));
+
+        // a reused connection has no phases to hand over, checks report them as 0
+        String secondTimingId = checkPool.newTimingId();
+        Assert.assertEquals("OK", get(webClient, url, secondTimingId));
+        Assert.assertNull(checkPool.claimConnectionTimings(secondTimingId));
+
+        // the internal header never reaches the target
+        Assert.assertEquals(2, receivedTimingIds.size());
+        receivedTimingIds.forEach(Assert::assertNull);
+    }
+
+    private String get(WebClient webClient, String url, String timingId) {
+        return webClient.get()
+                .uri(url)
+                .exchange()
+                .flatMap(response -> response.bodyToMono(String.class))
+                .subscriberContext(Context.of(InstrumentedPoolResources.TIMING_ID_CONTEXT_KEY, timingId))
+                .block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,177 @@
+package backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class LocalTokenVerifierTest {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private LocalTokenVerifier verifier;
+
+    private KeyPair keyPair;
+
+    private KeyPair otherKeyPair;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+
+        verifier = new LocalTokenVerifier();
+        ReflectionTestUtils.setField(verifier, "logger", LoggerFactory.getLogger(LocalTokenVerifier.class));
+        ReflectionTestUtils.setField(verifier, "objectMapper", new ObjectMapper());
+        Map<String, PublicKey> publicKeys = new HashMap<>();
+        publicKeys.put("key1", keyPair.getPublic());
+        publicKeys.put("key2", otherKeyPair.getPublic());
+        ReflectionTestUtils.setField(verifier, "publicKeys", publicKeys);
+        ReflectionTestUtils.setField(verifier, "revokedTokenIds", Collections.singleton("revoked-id"));
+        ReflectionTestUtils.setField(verifier, "revocationsPollMillis", 30000L);
+        ReflectionTestUtils.setField(verifier, "maxMissedRevocationPolls", 3);
+        ReflectionTestUtils.setField(verifier, "revocationsFetchedAtMillis", System.currentTimeMillis());
+    }
+
+    @Test
+    public void shouldAcceptValidToken() throws GeneralSecurityException {
+        String token = sign(header("RS256", "key1"), claims(nowSeconds() + 60, nowSeconds() - 60, "token-id"),
+                keyPair.getPrivate());
+
+        Optional<LocalTokenVerifier.VerifiedToken> verified = verifier.verify(token);
+        Assert.assertTrue(verified.isPresent());
+        Assert.assertEquals("user1", verified.get().getUserId());
+        Assert.assertEquals(Collections.singletonList("ADMIN"), verified.get().getRoles());
+    }
+
+    @Test
+    public void shouldRejectBadSignature() throws GeneralSecurityException {
+        String claims = claims(nowSeconds() + 60, nowSeconds() - 60, "token-id");
+        // signed by the other key, but naming key1
+        Assert.assertFalse(verifier.verify(sign(header("RS256", "key1"), claims, otherKeyPair.getPrivate())).isPresent());
+
+        // claims changed after signing
+        String token = sign(header("RS256", "key1"), claims, keyPair.getPrivate());
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + encode(claims.replace("user1", "user2")) + "." + parts[2];
+        Assert.assertFalse(verifier.verify(tampered).isPresent());
+    }
+
+    @Test
+    public void shouldRejectExpiredToken() throws GeneralSecurityException {
+        String token = sign(header("RS256", "key1"), claims(nowSeconds() - 1, nowSeconds() - 60, "token-id"),
+                keyPair.getPrivate());
+        Assert.assertFalse(verifier.verify(token).isPresent());
+    }
+
+    @Test
+    public void shouldRejectTokenNotValidYet() throws GeneralSecurityException {
+        String token = sign(header("RS256", "key1"), claims(nowSeconds() + 120, nowSeconds() + 60, "token-id"),
+                keyPair.getPrivate());
+        Assert.assertFalse(verifier.verify(token).isPresent());
+    }
+
+    @Test
+    public void shouldRejectRevokedToken() throws GeneralSecurityException {
+        String token = sign(header("RS256", "key1"), claims(nowSeconds() + 60, nowSeconds() - 60, "revoked-id"),
+                keyPair.getPrivate());
+        Assert.assertFalse(verifier.verify(token).isPresent());
+    }
+
+    @Test
+    public void shouldRejectOtherAlgorithms() throws GeneralSecurityException {
+        String claims = claims(nowSeconds() + 60, nowSeconds() - 60, "token-id");
+        Assert.assertFalse(verifier.verify(sign(header("RS512", "key1"), claims, keyPair.getPrivate())).isPresent());
+        Assert.assertFalse(verifier.verify(encode(header("none", "key1")) + "." + encode(claims) + ".").isPresent());
+        Assert.assertFalse(verifier.verify(encode(header("HS256", "key1")) + "." + encode(claims) + "."
+                + ENCODER.encodeToString("signature".getBytes(StandardCharsets.UTF_8))).isPresent());
+    }
+
+    @Test
+    public void shouldRejectUnknownKeyId() throws GeneralSecurityException {
+        String claims = claims(nowSeconds() + 60, nowSeconds() - 60, "token-id");
+        Assert.assertFalse(verifier.verify(sign(header("RS256", "unknown"), claims, keyPair.getPrivate())).isPresent());
+
+        // even with a single key, there is no fallback to it
+        ReflectionTestUtils.setField(verifier, "publicKeys", Collections.singletonMap("key1", keyPair.getPublic()));
+        Assert.assertFalse(verifier.verify(sign(header("RS256", "unknown"), claims, keyPair.getPrivate())).isPresent());
+        Assert.assertFalse(verifier.verify(sign(header("RS256", null), claims, keyPair.getPrivate())).isPresent());
+    }
+
+    @Test
+    public void shouldBeReadyOnlyWithFreshRevocations() {
+        Assert.assertTrue(verifier.isReady());
+
+        // revoked tokens never fetched
+        ReflectionTestUtils.setField(verifier, "revocationsFetchedAtMillis", 0L);
+        Assert.assertFalse(verifier.isReady());
+
+        // last fetch older than the allowed missed polls
+        ReflectionTestUtils.setField(verifier, "revocationsFetchedAtMillis", System.currentTimeMillis() - 91000);
+        Assert.assertFalse(verifier.isReady());
+
+        ReflectionTestUtils.setField(verifier, "revocationsFetchedAtMillis", System.currentTimeMillis() - 60000);
+        Assert.assertTrue(verifier.isReady());
+
+        ReflectionTestUtils.setField(verifier, "publicKeys", Collections.emptyMap());
+        Assert.assertFalse(verifier.isReady());
+    }
+
+    @Test
+    public void shouldResolveDefaultsWithoutWhitespace() throws NoSuchFieldException {
+        StandardEnvironment environment = new StandardEnvironment();
+        Assert.assertEquals("default", environment.resolvePlaceholders(valueOf("configuredPublicKeyId")));
+        Assert.assertEquals("remote", environment.resolvePlaceholders(valueOf("verificationMode")));
+        Assert.assertEquals("/api/auth/keys", environment.resolvePlaceholders(valueOf("keysEndpoint")));
+        Assert.assertEquals("/api/auth/revoked", environment.resolvePlaceholders(valueOf("revocationsEndpoint")));
+    }
+
+    private String valueOf(String field) throws NoSuchFieldException {
+        return LocalTokenVerifier.class.getDeclaredField(field).getAnnotation(Value.class).value();
+    }
+
+    private String sign(String header, String claims, PrivateKey privateKey) throws GeneralSecurityException {
+        String signingInput = encode(header) + "." + encode(claims);
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + ENCODER.encodeToString(signature.sign());
+    }
+
+    private String header(String alg, String kid) {
+        return kid == null ? String.format("{\"alg\":\"%s\",\"typ\":\"JWT\"}", alg) :
+                String.format("{\"alg\":\"%s\",\"typ\":\"JWT\",\"kid\":\"%s\"}", alg, kid);
+    }
+
+    private String claims(long exp, long nbf, String jti) {
+        return String.format("{\"sub\":\"user1\",\"roles\":[\"ADMIN\"],\"exp\":%s,\"nbf\":%s,\"jti\":\"%s\"}",
+                exp, nbf, jti);
+    }
+
+    private String encode(String json) {
+        return ENCODER.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
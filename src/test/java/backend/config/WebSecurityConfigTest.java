@@ -0,0 +1,156 @@
+package backend.config;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Token validation against a stub auth server started on a free local port.
+ */
+public class WebSecurityConfigTest {
+
+    private static final long VALIDATION_DELAY_MILLIS = 500;
+
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private NettyContext authServer;
+
+    private WebSecurityConfig.SecurityContextRepository repository;
+
+    @Before
+    public void setUp() {
+        // every validation is slow and answers with the number of the call as role
+        authServer = HttpServer.create(0)
+                .newHandler((request, response) -> {
+                    int call = validations.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(VALIDATION_DELAY_MILLIS))
+                            .thenEmpty(response.status(200)
+                                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                                    .sendString(Mono.just(String.format("{\"id\":\"user1\",\"roles\":[\"CALL_%s\"]}", call))));
+                })
+                .block();
+
+        LocalTokenVerifier localTokenVerifier = new LocalTokenVerifier();
+        ReflectionTestUtils.setField(localTokenVerifier, "verificationMode", "remote");
+
+        repository = new WebSecurityConfig().new SecurityContextRepository();
+        ReflectionTestUtils.setField(repository, "authServer", "http://localhost:" + authServer.address().getPort());
+        ReflectionTestUtils.setField(repository, "logger", LoggerFactory.getLogger(WebSecurityConfig.class));
+        ReflectionTestUtils.setField(repository, "webClient", WebClient.create());
+        ReflectionTestUtils.setField(repository, "localTokenVerifier", localTokenVerifier);
+        // the injected time source of the token cache, stepped by the tests over the refresh and expiry times
+        ReflectionTestUtils.setField(repository, "ticker", (Ticker) nanos::get);
+        ReflectionTestUtils.setField(repository, "tokenCacheSize", 100L);
+        ReflectionTestUtils.setField(repository, "tokenCacheExpireMinutes", 15L);
+        ReflectionTestUtils.setField(repository, "tokenCacheRefreshMinutes", 12L);
+        repository.init();
+    }
+
+    @After
+    public void tearDown() {
+        authServer.dispose();
+    }
+
+    @Test
+    public void concurrentRequestsWithSameTokenShouldShareOneValidation() {
+        List<SecurityContext> contexts = Flux.range(0, 50)
+                .flatMap(i -> repository.load(exchangeWithToken("token1")))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        Assert.assertEquals(50, contexts.size());
+        contexts.forEach(context -> Assert.assertEquals("user1", context.getAuthentication().getPrincipal()));
+        Assert.assertEquals(1, validations.get());
+
+        // a different token is validated on its own
+        repository.load(exchangeWithToken("token2")).block(Duration.ofSeconds(10));
+        Assert.assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void hotTokenShouldBeRefreshedInBackground() throws InterruptedException {
+        Assert.assertEquals("CALL_1", roleOf(repository.load(exchangeWithToken("token1")).block(Duration.ofSeconds(10))));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(13));
+        long startedAt = System.currentTimeMillis();
+        SecurityContext stale = repository.load(exchangeWithToken("token1")).block(Duration.ofSeconds(10));
+        long tookMillis = System.currentTimeMillis() - startedAt;
+
+        // served from the cache while the revalidation runs
+        Assert.assertEquals("CALL_1", roleOf(stale));
+        Assert.assertTrue("Caller waited for the refresh: " + tookMillis + " ms", tookMillis < VALIDATION_DELAY_MILLIS);
+        for (int attempt = 0; attempt < 50 && validations.get() < 2; attempt++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, validations.get());
+
+        String role = null;
+        for (int attempt = 0; attempt < 50 && !"CALL_2".equals(role); attempt++) {
+            Thread.sleep(50);
+            role = roleOf(repository.load(exchangeWithToken("token1")).block(Duration.ofSeconds(10)));
+        }
+        Assert.assertEquals("CALL_2", role);
+        Assert.assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void expiredTokenShouldBeValidatedAgain() {
+        repository.load(exchangeWithToken("token1")).block(Duration.ofSeconds(10));
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(16));
+        Assert.assertEquals("CALL_2", roleOf(repository.load(exchangeWithToken("token1")).block(Duration.ofSeconds(10))));
+        Assert.assertEquals(2, validations.get());
+    }
+
+    @Test
+    public void tokensBeyondCacheSizeShouldBeEvicted() {
+        ReflectionTestUtils.setField(repository, "tokenCacheSize", 2L);
+        repository.init();
+
+        Flux.range(0, 5)
+                .concatMap(i -> repository.load(exchangeWithToken("token" + i)))
+                .blockLast(Duration.ofSeconds(30));
+        AsyncLoadingCache<?, ?> tokenCache = (AsyncLoadingCache<?, ?>) ReflectionTestUtils.getField(repository, "tokenCache");
+        tokenCache.synchronous().cleanUp();
+
+        Assert.assertEquals(2, tokenCache.synchronous().estimatedSize());
+        Assert.assertEquals(3, repository.getTokenCacheStats().evictionCount());
+        Assert.assertEquals(5, repository.getTokenCacheStats().missCount());
+    }
+
+    private MockServerWebExchange exchangeWithToken(String token) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/incident")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token));
+    }
+
+    private String roleOf(SecurityContext context) {
+        List<String> roles = context.getAuthentication().getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+        return roles.get(0);
+    }
+}
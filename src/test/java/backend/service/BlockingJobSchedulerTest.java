@@ -0,0 +1,74 @@
+package backend.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class BlockingJobSchedulerTest {
+
+    private BlockingJobScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new BlockingJobScheduler();
+        ReflectionTestUtils.setField(scheduler, "workers", 1);
+        ReflectionTestUtils.setField(scheduler, "queueSize", 1);
+        scheduler.init();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void shouldInterruptTimedOutTaskAndFreeItsWorker() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        StepVerifier.create(scheduler.execute(() -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+                return "slept";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }, Duration.ofMillis(200)))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, scheduler.getTimedOutTasks());
+        // the only worker takes the next task right away
+        StepVerifier.create(scheduler.execute(() -> "next", Duration.ofSeconds(1)))
+                .expectNext("next")
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldRejectTasksBeyondWorkersAndQueue() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }, Duration.ofSeconds(10)).subscribe();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.execute(() -> "queued", Duration.ofSeconds(10)).subscribe();
+
+        StepVerifier.create(scheduler.execute(() -> "rejected", Duration.ofSeconds(10)))
+                .expectError(RejectedExecutionException.class)
+                .verify(Duration.ofSeconds(5));
+        Assert.assertEquals(1, scheduler.getRejectedTasks());
+        Assert.assertEquals(1, scheduler.getQueuedTasks());
+        release.countDown();
+    }
+}
@@ -0,0 +1,107 @@
+package backend.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ComponentServiceImplTest extends AbstractSpringTest {
+
+    private static final int CONCURRENT_EDITS = 50;
+
+    @Autowired
+    private ComponentService componentService;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Test
+    public void shouldNotLoseConcurrentlyCreatedComponents() {
+        Project project = projectRepository.save(new Project("123", "Concurrent project", "Description")).block();
+
+        Flux.range(0, CONCURRENT_EDITS)
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> componentService.createComponent(project.getId(),
+                        new Component(null, "Component " + i, "Description " + i)))
+                .sequential()
+                .blockLast();
+
+        StepVerifier.create(projectRepository.findById(project.getId()))
+                .assertNext(stored -> {
+                    Set<String> names = stored.getComponents().stream()
+                            .map(Component::getName)
+                            .collect(Collectors.toSet());
+                    Assert.assertEquals(CONCURRENT_EDITS, names.size());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentUpdatesOfDifferentComponents() {
+        Project project = new Project("123", "Concurrent project", "Description");
+        for (int i = 0; i < CONCURRENT_EDITS; i++) {
+            project.getComponents().add(new Component(null, "Component " + i, "Description " + i));
+        }
+        Project savedProject = projectRepository.save(project).block();
+
+        Flux.fromIterable(savedProject.getComponents())
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .flatMap(component -> componentService.updateComponent(savedProject.getId(), component.getId(),
+                        new Component(null, component.getName() + " updated", component.getDescription())))
+                .sequential()
+                .blockLast();
+
+        StepVerifier.create(projectRepository.findById(savedProject.getId()))
+                .assertNext(stored -> {
+                    Assert.assertEquals(CONCURRENT_EDITS, stored.getComponents().size());
+                    stored.getComponents().forEach(component ->
+                            Assert.assertTrue(component.getName().endsWith(" updated")));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldReturnEmptyWhenComponentDoesNotExist() {
+        StepVerifier.create(projectRepository.save(new Project("123", "Project", "Description"))
+                .flatMap(project -> componentService.updateComponent(project.getId(), "missing",
+                        new Component(null, "Name", "Description"))))
+                .verifyComplete();
+
+        StepVerifier.create(Mono.defer(() -> componentService.createComponent("missing",
+                new Component(null, "Name", "Description"))))
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldDropCachedTreeWhenComponentIsWritten() {
+        Project project = new Project("123", "Tree project", "Description");
+        Component root = new Component(null, "Root", "Description");
+        project.getComponents().add(root);
+        project.getComponents().add(new Component(root.getId(), "Child", "Description"));
+        Project savedProject = projectRepository.save(project).block();
+
+        // the tree of the project is cached from here on
+        StepVerifier.create(componentService.getAllComponentsByIdWithChilds(savedProject.getId(), root.getId()).count())
+                .expectNext(2L)
+                .verifyComplete();
+
+        Component created = componentService.createComponent(savedProject.getId(),
+                new Component(root.getId(), "New child", "Description")).block();
+        StepVerifier.create(componentService.getAllComponentsByIdWithChilds(savedProject.getId(), root.getId())
+                .map(Component::getId)
+                .collectList())
+                .assertNext(ids -> {
+                    Assert.assertEquals(3, ids.size());
+                    Assert.assertTrue(ids.contains(created.getId()));
+                })
+                .verifyComplete();
+    }
+}
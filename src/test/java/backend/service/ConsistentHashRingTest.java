@@ -0,0 +1,56 @@
+package backend.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    @Test
+    public void shouldNotOwnKeysWithoutNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.emptySet(), 128);
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertNull(ring.ownerOf("job"));
+    }
+
+    @Test
+    public void shouldGiveSameOwnerRegardlessOfNodeOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"), 128);
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("node3", "node1", "node2"), 128);
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertEquals(ring.ownerOf("job" + i), reordered.ownerOf("job" + i));
+        }
+    }
+
+    @Test
+    public void shouldSpreadKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"), 128);
+        Map<String, Integer> keysByNode = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            keysByNode.merge(ring.ownerOf("job" + i), 1, Integer::sum);
+        }
+        Assert.assertEquals(3, keysByNode.size());
+        keysByNode.values().forEach(keys -> Assert.assertTrue("Uneven split: " + keysByNode,
+                keys > KEYS / 3 * 0.7 && keys < KEYS / 3 * 1.3));
+    }
+
+    @Test
+    public void shouldMoveOnlyKeysOfLeavingNode() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"), 128);
+        ConsistentHashRing withoutNode2 = new ConsistentHashRing(Arrays.asList("node1", "node3"), 128);
+        for (int i = 0; i < KEYS; i++) {
+            String owner = ring.ownerOf("job" + i);
+            if (!"node2".equals(owner)) {
+                Assert.assertEquals(owner, withoutNode2.ownerOf("job" + i));
+            } else {
+                Assert.assertNotEquals("node2", withoutNode2.ownerOf("job" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package backend.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class HostRateLimiterTest {
+
+    private HostRateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new HostRateLimiter();
+        ReflectionTestUtils.setField(limiter, "logger", LoggerFactory.getLogger(HostRateLimiter.class));
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "defaultRatePerSecond", 2.0);
+        ReflectionTestUtils.setField(limiter, "defaultBurst", 2.0);
+        ReflectionTestUtils.setField(limiter, "hostLimits", "slow.example.com=1:1");
+        ReflectionTestUtils.setField(limiter, "maxWaitMillis", 1500L);
+        limiter.init();
+    }
+
+    @Test
+    public void shouldSpreadChecksOfSameHostAfterBurst() {
+        Assert.assertEquals(0, limiter.reserve("https://api.example.com/a").getWaitMillis());
+        Assert.assertEquals(0, limiter.reserve("https://api.example.com/b").getWaitMillis());
+
+        long third = limiter.reserve("https://api.example.com/c").getWaitMillis();
+        long fourth = limiter.reserve("https://API.example.com/d").getWaitMillis();
+        Assert.assertTrue(third > 400 && third <= 500);
+        Assert.assertTrue(fourth > 900 && fourth <= 1000);
+        Assert.assertEquals(2, limiter.getHostStats().get("api.example.com").getQueueDepth());
+
+        // other hosts are not affected
+        Assert.assertEquals(0, limiter.reserve("http://other.example.com").getWaitMillis());
+    }
+
+    @Test
+    public void shouldApplyHostLimitAndRejectWhenBookedTooFarAhead() {
+        Assert.assertEquals(0, limiter.reserve("http://slow.example.com/a").getWaitMillis());
+        HostRateLimiter.Reservation second = limiter.reserve("http://slow.example.com/b");
+        Assert.assertTrue(second.getWaitMillis() > 900);
+        Assert.assertNull(limiter.reserve("http://slow.example.com/c"));
+
+        second.complete();
+        HostRateLimiter.HostStats stats = limiter.getHostStats().get("slow.example.com");
+        Assert.assertEquals(0, stats.getQueueDepth());
+        Assert.assertEquals(1, stats.getRejected());
+    }
+
+    @Test
+    public void shouldNotLimitUrlsWithoutHost() {
+        Assert.assertEquals(0, limiter.reserve("testLink").getWaitMillis());
+        Assert.assertTrue(limiter.getHostStats().isEmpty());
+    }
+}
@@ -0,0 +1,66 @@
+package backend.service;
+
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+public class IncidentFilterParserTest {
+
+    private IncidentFilterParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new IncidentFilterParser();
+        ReflectionTestUtils.setField(parser, "maxClauses", 3);
+        ReflectionTestUtils.setField(parser, "maxValues", 2);
+        ReflectionTestUtils.setField(parser, "cacheSize", 10L);
+        parser.init();
+    }
+
+    @Test
+    public void shouldCompileAllowedClauses() {
+        List<Criteria> criteria = parser.parse("status:in:OPENED,RESOLVED; dateStart:gte:2018-07-01;name:prefix:Api");
+
+        Assert.assertEquals(3, criteria.size());
+        Document status = criteria.get(0).getCriteriaObject();
+        Assert.assertEquals(2, ((List<?>) ((Document) status.get("status")).get("$in")).size());
+        Document dateStart = criteria.get(1).getCriteriaObject();
+        Assert.assertEquals(LocalDateTime.of(2018, 7, 1, 0, 0), ((Document) dateStart.get("dateStart")).get("$gte"));
+        Assert.assertEquals("^Api", criteria.get(2).getCriteriaObject().get("name").toString());
+    }
+
+    @Test
+    public void shouldCacheCompiledFilters() {
+        Assert.assertSame(parser.parse("jobId:eq:job"), parser.parse(" jobId:eq:job "));
+        Assert.assertTrue(parser.parse(null).isEmpty());
+        Assert.assertTrue(parser.parse(" ").isEmpty());
+    }
+
+    @Test
+    public void shouldRejectFiltersThatCannotUseIndexes() {
+        for (String filter : Arrays.asList(
+                "description:eq:text",
+                "jobId:gt:job",
+                "name:regex:.*",
+                "name:prefix:.*",
+                "status:eq:BROKEN",
+                "dateStart:gte:yesterday",
+                "status:in:OPENED,RESOLVED,OPENED",
+                "jobId:eq:a;jobId:eq:b;jobId:eq:c;jobId:eq:d",
+                "jobId")) {
+            try {
+                parser.parse(filter);
+                Assert.fail("Filter should be rejected: " + filter);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
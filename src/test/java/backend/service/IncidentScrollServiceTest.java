@@ -0,0 +1,128 @@
+package backend.service;
+
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.ScrollResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class IncidentScrollServiceTest extends AbstractSpringTest {
+
+    private static final int INCIDENTS = 25;
+
+    @Autowired
+    private IncidentScrollService incidentScrollService;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Test
+    public void shouldWalkAllIncidentsOnceInSortOrder() {
+        String projectId = createProjectWithIncidents();
+
+        for (String direction : new String[]{"asc", "desc"}) {
+            List<Incident> walked = new ArrayList<>();
+            String cursor = null;
+            do {
+                ScrollResponse<Incident> page = incidentScrollService.scroll(projectId, null, cursor, 10, "dateStart",
+                        direction, false).block();
+                walked.addAll(page.getItems());
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            Set<String> ids = new HashSet<>();
+            walked.forEach(incident -> ids.add(incident.getId()));
+            Assert.assertEquals(INCIDENTS, ids.size());
+            for (int i = 1; i < walked.size(); i++) {
+                LocalDateTime previous = walked.get(i - 1).getDateStart();
+                LocalDateTime current = walked.get(i).getDateStart();
+                int order = previous == null ? (current == null ? 0 : -1) : current == null ? 1 : previous.compareTo(current);
+                Assert.assertTrue("asc".equals(direction) ? order <= 0 : order >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountOnlyWhenAsked() {
+        String projectId = createProjectWithIncidents();
+
+        StepVerifier.create(incidentScrollService.scroll(projectId, null, null, 5, "name", "asc", false))
+                .assertNext(page -> {
+                    Assert.assertEquals(5, page.getItems().size());
+                    Assert.assertNull(page.getTotalCount());
+                    Assert.assertNotNull(page.getNextCursor());
+                })
+                .verifyComplete();
+        StepVerifier.create(incidentScrollService.scroll(projectId, null, null, 5, "name", "asc", true))
+                .assertNext(page -> Assert.assertEquals(Long.valueOf(INCIDENTS), page.getTotalCount()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldRejectUnknownSortAndForeignCursor() {
+        String projectId = createProjectWithIncidents();
+        String cursor = incidentScrollService.scroll(projectId, null, null, 5, "name", "asc", false).block().getNextCursor();
+
+        StepVerifier.create(incidentScrollService.scroll(projectId, null, null, 5, "description", "asc", false))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(incidentScrollService.scroll(projectId, null, cursor, 5, "status", "asc", false))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(incidentScrollService.scroll(projectId, null, "not a cursor", 5, "name", "asc", false))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    public void shouldFilterAndLimitOffsetPages() {
+        String projectId = createProjectWithIncidents();
+
+        StepVerifier.create(incidentScrollService.scroll(projectId, "name:prefix:Incident 1", null, 50, "name", "asc", true))
+                // Incident 1 and Incident 10 to 19
+                .assertNext(page -> Assert.assertEquals(Long.valueOf(11), page.getTotalCount()))
+                .verifyComplete();
+        StepVerifier.create(incidentScrollService.findPage(projectId, "status:eq:OPENED", 2, 10, "name", "desc").count())
+                .expectNext(10L)
+                .verifyComplete();
+        StepVerifier.create(incidentScrollService.findPage(projectId, null, 100_000, 10, "name", "asc"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        // oversized pages are served at the max size, which is the page size reported back
+        Assert.assertEquals(100, incidentScrollService.getPageSize(500));
+        Assert.assertEquals(1, incidentScrollService.getPageSize(0));
+        StepVerifier.create(incidentScrollService.countIncidents(projectId, "description:eq:Description"))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    private String createProjectWithIncidents() {
+        Project project = new Project("123", "Incident project", "Description");
+        Component component = new Component(null, "Component", "Description");
+        project.getComponents().add(component);
+        Project savedProject = projectRepository.save(project).block();
+        String componentId = savedProject.getComponents().get(0).getId();
+
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+        Flux.range(0, INCIDENTS)
+                // a few incidents share a start date or have none, to cross pages on equal and missing keys
+                .map(i -> new Incident(componentId, null, "Incident " + i, "Description", IncidentStatus.OPENED,
+                        i % 5 == 0 ? null : start.minusMinutes(i / 3), null))
+                .flatMap(reactiveMongoTemplate::insert)
+                .blockLast();
+        return savedProject.getId();
+    }
+}
@@ -0,0 +1,73 @@
+package backend.service;
+
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+public class IncidentStateCacheTest {
+
+    private IncidentStateCache cache;
+
+    private JobPartitionService jobPartitionService;
+
+    private Runnable rebalanceListener;
+
+    @Before
+    public void setUp() {
+        ReactiveMongoTemplate reactiveMongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+        Mockito.when(reactiveMongoTemplate.find(Mockito.any(Query.class), Mockito.eq(Incident.class)))
+                .thenReturn(Flux.empty());
+        jobPartitionService = Mockito.mock(JobPartitionService.class);
+
+        cache = new IncidentStateCache();
+        ReflectionTestUtils.setField(cache, "logger", LoggerFactory.getLogger(IncidentStateCache.class));
+        ReflectionTestUtils.setField(cache, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(cache, "jobPartitionService", jobPartitionService);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300);
+        cache.warmUp();
+
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(jobPartitionService).addRebalanceListener(listener.capture());
+        rebalanceListener = listener.getValue();
+    }
+
+    @Test
+    public void shouldNotCacheStateReadBeforeInvalidation() {
+        long generation = cache.generation();
+        // the incident is updated through the API while the check still works with what it read
+        cache.invalidate("job");
+        cache.put("job", incident("incident", IncidentStatus.OPENED), generation);
+        Assert.assertNull(cache.get("job"));
+
+        cache.putNone("job", cache.generation());
+        Assert.assertFalse(cache.get("job").hasIncident());
+    }
+
+    @Test
+    public void shouldForgetOnlyJobsMovedByRebalance() {
+        cache.putNone("kept", cache.generation());
+        cache.put("moved", incident("incident", IncidentStatus.OPENED), cache.generation());
+        Mockito.when(jobPartitionService.isMovedByLastRebalance("moved")).thenReturn(true);
+
+        rebalanceListener.run();
+
+        Assert.assertNotNull(cache.get("kept"));
+        Assert.assertNull(cache.get("moved"));
+    }
+
+    private Incident incident(String id, IncidentStatus status) {
+        Incident incident = new Incident();
+        ReflectionTestUtils.setField(incident, "id", id);
+        incident.setStatus(status);
+        return incident;
+    }
+}
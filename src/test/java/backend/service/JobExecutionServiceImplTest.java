@@ -2,22 +2,34 @@ package backend.service;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.AdditionalAnswers;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JobExecutionServiceImplTest extends AbstractSpringTest {
 
@@ -30,6 +42,9 @@ public class JobExecutionServiceImplTest extends AbstractSpringTest {
     @Autowired
     private JobRepository jobRepository;
 
+    @Autowired
+    private IncidentStateCache incidentStateCache;
+
     @MockBean
     private WebClient webClient;
 
@@ -126,6 +141,91 @@ public class JobExecutionServiceImplTest extends AbstractSpringTest {
                 .verifyComplete();
     }
 
+    @Test
+    public void responseLargerThanLimitTest() {
+        Job job = new Job("FindJSON", JobType.ENDPOINT, JobStatus.PENDING,
+                "url", null, "$[0].address.zipcode", null,
+                EndpointResponseType.JSON, null, "123", LocalDateTime.now(), null);
+        job.setMaxResponseBytes(100L);
+
+        mockWebClientResponseBody("json/users.json");
+
+        StepVerifier.create(jobExecutionService.executeJob(job))
+                .assertNext(metricsStats -> {
+                    Assert.assertEquals(MetricsStatus.FAIL, metricsStats.getStatus());
+                    Assert.assertTrue(metricsStats.getDetailedInfo().contains("larger than 100 bytes"));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void findValueInResponseCharsetTest() {
+        Job job = new Job("FindJSON", JobType.ENDPOINT, JobStatus.PENDING,
+                "url", null, "$[0].name", null,
+                EndpointResponseType.JSON, null, "123", LocalDateTime.now(), null);
+
+        mockWebClientResponse(MediaType.APPLICATION_JSON, ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json;charset=ISO-8859-1")
+                .body(Flux.just(new DefaultDataBufferFactory()
+                        .wrap("[{\"name\": \"caf\u00e9\"}]".getBytes(StandardCharsets.ISO_8859_1))))
+                .build());
+
+        StepVerifier.create(jobExecutionService.executeJob(job))
+                .assertNext(metricsStats -> {
+                    Assert.assertEquals(MetricsStatus.SUCCESS, metricsStats.getStatus());
+                    Assert.assertEquals("Extracted value: caf\u00e9", metricsStats.getDetailedInfo());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldCancelBodyBeyondDiscardCapOnStatusCodeJob() {
+        Job job = new Job("TestJob", JobType.STATUS_CODE, JobStatus.RUNNING,
+                "testLink", HttpStatus.OK.value(), null,
+                null, null, null, "123", LocalDateTime.now(), null);
+
+        AtomicLong readBuffers = new AtomicLong();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+        // endless body
+        Flux<DataBuffer> body = Flux.<DataBuffer>generate(sink -> sink.next(bufferFactory.wrap(new byte[8192])))
+                .doOnNext(buffer -> readBuffers.incrementAndGet())
+                .doOnCancel(() -> cancelled.set(true));
+        mockWebClientResponse(MediaType.ALL, ClientResponse.create(HttpStatus.OK).body(body).build());
+
+        StepVerifier.create(jobRepository.save(job)
+                .flatMap(j -> jobExecutionService.executeJob(j)))
+                .assertNext(metricsStats -> Assert.assertEquals(MetricsStatus.SUCCESS, metricsStats.getStatus()))
+                .verifyComplete();
+        // 64 KB are drained, reading ahead stays within a few small requests
+        Assert.assertTrue(readBuffers.get() >= 8 && readBuffers.get() <= 16);
+        Assert.assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void shouldDrainBoundedBodyOnStatusCodeJob() {
+        Job job = new Job("TestJob", JobType.STATUS_CODE, JobStatus.RUNNING,
+                "testLink", HttpStatus.OK.value(), null,
+                null, null, null, "123", LocalDateTime.now(), null);
+
+        AtomicLong readBuffers = new AtomicLong();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> body = Flux.range(0, 3)
+                .map(i -> (DataBuffer) bufferFactory.wrap(new byte[1024]))
+                .doOnNext(buffer -> readBuffers.incrementAndGet())
+                .doOnCancel(() -> cancelled.set(true));
+        mockWebClientResponse(MediaType.ALL, ClientResponse.create(HttpStatus.OK).body(body).build());
+
+        StepVerifier.create(jobRepository.save(job)
+                .flatMap(j -> jobExecutionService.executeJob(j)))
+                .assertNext(metricsStats -> Assert.assertEquals(MetricsStatus.SUCCESS, metricsStats.getStatus()))
+                .verifyComplete();
+        // read to the end, the connection goes back to the pool
+        Assert.assertEquals(3, readBuffers.get());
+        Assert.assertFalse(cancelled.get());
+    }
+
     @Test
     public void shouldCreateSuccessMetricOnStatusCodeJob() {
         HttpStatus expectedStatus = HttpStatus.OK;
@@ -245,32 +345,101 @@ public class JobExecutionServiceImplTest extends AbstractSpringTest {
                 .verify();
     }
 
-    private void mockWebClientResponseStatus(HttpStatus expectedStatus) {
-        WebClient.RequestHeadersUriSpec<?> requestUriSpecMock = Mockito.mock(WebClient.RequestHeadersUriSpec.class);
-        Mockito.doReturn(requestUriSpecMock).when(webClient).get();
-        Mockito.doReturn(requestUriSpecMock).when(requestUriSpecMock).uri(Mockito.anyString());
-        Mockito.doReturn(requestUriSpecMock).when(requestUriSpecMock).accept(MediaType.ALL);
-        Mockito.when(requestUriSpecMock.exchange()).thenReturn(Mono.just(ClientResponse.create(expectedStatus).build()));
+    @Test
+    public void healthyChecksOfWarmedJobDoNotReadIncidentsTest() {
+        Job job = jobRepository.save(new Job("Healthy", JobType.ENDPOINT, JobStatus.PENDING,
+                "url", null, "$[0].address.zipcode", null,
+                EndpointResponseType.JSON, null, "123", LocalDateTime.now(), null)).block();
+        // warm up found no open incident of the job
+        incidentStateCache.putNone(job.getId(), incidentStateCache.generation());
+
+        Object service = AopTestUtils.getTargetObject(jobExecutionService);
+        IncidentRepository incidents = Mockito.mock(IncidentRepository.class,
+                AdditionalAnswers.delegatesTo(incidentRepository));
+        ReflectionTestUtils.setField(service, "incidentRepository", incidents);
+        try {
+            for (int i = 0; i < 3; i++) {
+                mockWebClientResponseBody("json/users.json");
+                StepVerifier.create(jobExecutionService.executeJob(job))
+                        .assertNext(metricsStats -> Assert.assertEquals(MetricsStatus.SUCCESS, metricsStats.getStatus()))
+                        .verifyComplete();
+            }
+            Mockito.verifyZeroInteractions(incidents);
+        } finally {
+            ReflectionTestUtils.setField(service, "incidentRepository", incidentRepository);
+        }
     }
 
+    @Test
+    public void shouldSkipDomRunWithoutWorkerOrSessionTest() {
+        Job job = jobRepository.save(domJob()).block();
+
+        Object service = AopTestUtils.getTargetObject(jobExecutionService);
+        Object blockingJobScheduler = ReflectionTestUtils.getField(service, "blockingJobScheduler");
+        BlockingJobScheduler overloaded = Mockito.mock(BlockingJobScheduler.class);
+        ReflectionTestUtils.setField(service, "blockingJobScheduler", overloaded);
+        try {
+            Mockito.when(overloaded.execute(Mockito.any(), Mockito.any()))
+                    .thenReturn(Mono.error(new RejectedExecutionException("Blocking job queue is full")))
+                    .thenReturn(Mono.error(new SessionUnavailableException("No Selenium session available")));
+            StepVerifier.create(jobExecutionService.executeJob(job)).verifyComplete();
+            StepVerifier.create(jobExecutionService.executeJob(job)).verifyComplete();
+
+            // our own overload says nothing about the target
+            StepVerifier.create(incidentRepository.findByJobId(job.getId())).verifyComplete();
+        } finally {
+            ReflectionTestUtils.setField(service, "blockingJobScheduler", blockingJobScheduler);
+        }
+    }
 
-    private void mockWebClientResponseBody(String responseFile) {
-        String response = getResourceAsString(responseFile);
+    @Test
+    public void shouldFailDomRunExceedingTotalTimeTest() {
+        Job job = domJob();
+        job.setMaxTotalTimeMillis(500L);
+        Job savedJob = jobRepository.save(job).block();
+
+        Object service = AopTestUtils.getTargetObject(jobExecutionService);
+        Object blockingJobScheduler = ReflectionTestUtils.getField(service, "blockingJobScheduler");
+        BlockingJobScheduler slow = Mockito.mock(BlockingJobScheduler.class);
+        ReflectionTestUtils.setField(service, "blockingJobScheduler", slow);
+        try {
+            Mockito.when(slow.execute(Mockito.any(), Mockito.any()))
+                    .thenReturn(Mono.error(new TimeoutException("Did not observe any item")));
+            StepVerifier.create(jobExecutionService.executeJob(savedJob))
+                    .assertNext(metricsStats -> {
+                        Assert.assertEquals(MetricsStatus.FAIL, metricsStats.getStatus());
+                        Assert.assertTrue(metricsStats.getDetailedInfo().contains("did not finish within 500 ms"));
+                    })
+                    .verifyComplete();
+        } finally {
+            ReflectionTestUtils.setField(service, "blockingJobScheduler", blockingJobScheduler);
+        }
+    }
 
-        WebClient.RequestHeadersUriSpec requestHeadersUriSpecMock = Mockito.mock(WebClient.RequestHeadersUriSpec.class);
-        WebClient.ResponseSpec responseSpecMock = Mockito.mock(WebClient.ResponseSpec.class);
+    private Job domJob() {
+        return new Job("TestDomJob", JobType.DOM_NODE, JobStatus.RUNNING,
+                "testLink", null, "//div", null, null, null, "123", LocalDateTime.now(), null);
+    }
 
-        Mockito.doReturn(requestHeadersUriSpecMock).when(webClient).get();
-        Mockito.doReturn(requestHeadersUriSpecMock).when(requestHeadersUriSpecMock).uri(Mockito.anyString());
+    private void mockWebClientResponseStatus(HttpStatus expectedStatus) {
+        mockWebClientResponse(MediaType.ALL, ClientResponse.create(expectedStatus).build());
+    }
 
-        if (responseFile.endsWith(".json")) {
-            Mockito.doReturn(requestHeadersUriSpecMock).when(requestHeadersUriSpecMock).accept(MediaType.APPLICATION_JSON);
-        } else if (responseFile.endsWith(".xml")) {
-            Mockito.doReturn(requestHeadersUriSpecMock).when(requestHeadersUriSpecMock).accept(MediaType.APPLICATION_XML);
-        }
+    private void mockWebClientResponseBody(String responseFile) {
+        String response = getResourceAsString(responseFile);
+        MediaType mediaType = responseFile.endsWith(".json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_XML;
+        mockWebClientResponse(mediaType, ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, mediaType.toString())
+                .body(Flux.just(new DefaultDataBufferFactory().wrap(response.getBytes(Charset.forName("UTF-8")))))
+                .build());
+    }
 
-        Mockito.doReturn(responseSpecMock).when(requestHeadersUriSpecMock).retrieve();
-        Mockito.doReturn(Mono.just(response)).when(responseSpecMock).bodyToMono(String.class);
+    private void mockWebClientResponse(MediaType accept, ClientResponse response) {
+        WebClient.RequestHeadersUriSpec<?> requestUriSpecMock = Mockito.mock(WebClient.RequestHeadersUriSpec.class);
+        Mockito.doReturn(requestUriSpecMock).when(webClient).get();
+        Mockito.doReturn(requestUriSpecMock).when(requestUriSpecMock).uri(Mockito.anyString());
+        Mockito.doReturn(requestUriSpecMock).when(requestUriSpecMock).accept(accept);
+        Mockito.when(requestUriSpecMock.exchange()).thenReturn(Mono.just(response));
     }
 
     private String getResourceAsString(String resourcePath) {
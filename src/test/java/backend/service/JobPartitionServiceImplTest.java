@@ -0,0 +1,129 @@
+package backend.service;
+
+import backend.model.JobRunClaim;
+import backend.model.NodeLease;
+import com.mongodb.client.result.UpdateResult;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+public class JobPartitionServiceImplTest {
+
+    private JobPartitionServiceImpl partitionService;
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Before
+    public void setUp() {
+        reactiveMongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+        Mockito.when(reactiveMongoTemplate.upsert(Mockito.any(Query.class), Mockito.any(Update.class),
+                Mockito.eq(JobRunClaim.class))).thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+
+        partitionService = new JobPartitionServiceImpl();
+        ReflectionTestUtils.setField(partitionService, "logger", LoggerFactory.getLogger(JobPartitionServiceImpl.class));
+        ReflectionTestUtils.setField(partitionService, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(partitionService, "partitionEnabled", true);
+        ReflectionTestUtils.setField(partitionService, "configuredNodeId", "node1");
+        ReflectionTestUtils.setField(partitionService, "leaseSeconds", 15);
+        ReflectionTestUtils.setField(partitionService, "lastHeartbeatMillis", System.currentTimeMillis());
+        partitionService.init();
+    }
+
+    @Test
+    public void shouldNotClaimRunsOfSingleNode() {
+        partitionService.updateMembership(Collections.singletonList(lease("node1", null)));
+
+        Assert.assertTrue(partitionService.isHandedOver());
+        Assert.assertTrue(partitionService.isOwnedByCurrentNode("job"));
+        Assert.assertTrue(partitionService.claimRun("job", 60000).block());
+        Mockito.verify(reactiveMongoTemplate, Mockito.never()).upsert(Mockito.any(Query.class),
+                Mockito.any(Update.class), Mockito.eq(JobRunClaim.class));
+    }
+
+    @Test
+    public void shouldClaimRunsAndDeferMovedJobsUntilHandedOver() {
+        partitionService.updateMembership(Arrays.asList(lease("node1", null), lease("node2", null),
+                lease("node3", null)));
+        String threeNodeVersion = (String) ReflectionTestUtils.getField(partitionService, "ringVersion");
+        partitionService.updateMembership(Arrays.asList(lease("node1", threeNodeVersion),
+                lease("node2", threeNodeVersion), lease("node3", threeNodeVersion)));
+        Assert.assertTrue(partitionService.isHandedOver());
+
+        ConsistentHashRing threeNodes = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"), 128);
+        ConsistentHashRing twoNodes = new ConsistentHashRing(Arrays.asList("node1", "node3"), 128);
+        String keptJob = jobOwnedBy(threeNodes, twoNodes, "node1", "node1");
+        String movedJob = jobOwnedBy(threeNodes, twoNodes, "node2", "node1");
+
+        // node2 left, node3 has not seen it yet and may still run node2's jobs
+        partitionService.updateMembership(Arrays.asList(lease("node1", threeNodeVersion),
+                lease("node3", threeNodeVersion)));
+        Assert.assertFalse(partitionService.isHandedOver());
+        Assert.assertTrue(partitionService.isOwnedByCurrentNode(keptJob));
+        Assert.assertFalse(partitionService.isOwnedByCurrentNode(movedJob));
+        Assert.assertTrue(partitionService.claimRun(keptJob, 60000).block());
+        Mockito.verify(reactiveMongoTemplate).upsert(Mockito.any(Query.class), Mockito.any(Update.class),
+                Mockito.eq(JobRunClaim.class));
+
+        // node3 uses the same ring now, node2's jobs are taken over and claims stop
+        String twoNodeVersion = (String) ReflectionTestUtils.getField(partitionService, "ringVersion");
+        partitionService.updateMembership(Arrays.asList(lease("node1", threeNodeVersion),
+                lease("node3", twoNodeVersion)));
+        Assert.assertTrue(partitionService.isHandedOver());
+        Assert.assertTrue(partitionService.isOwnedByCurrentNode(movedJob));
+        Assert.assertTrue(partitionService.claimRun(keptJob, 60000).block());
+        Mockito.verify(reactiveMongoTemplate, Mockito.times(1)).upsert(Mockito.any(Query.class),
+                Mockito.any(Update.class), Mockito.eq(JobRunClaim.class));
+    }
+
+    @Test
+    public void shouldTakeOverJobsOfLeavingNodeOnceHandedOver() {
+        partitionService.updateMembership(Arrays.asList(lease("node1", null), lease("node2", null)));
+        String twoNodeVersion = (String) ReflectionTestUtils.getField(partitionService, "ringVersion");
+        partitionService.updateMembership(Arrays.asList(lease("node1", twoNodeVersion), lease("node2", twoNodeVersion)));
+        Assert.assertTrue(partitionService.isHandedOver());
+
+        ConsistentHashRing twoNodes = new ConsistentHashRing(Arrays.asList("node1", "node2"), 128);
+        ConsistentHashRing oneNode = new ConsistentHashRing(Collections.singletonList("node1"), 128);
+        String node2Job = jobOwnedBy(twoNodes, oneNode, "node2", "node1");
+        Assert.assertFalse(partitionService.isOwnedByCurrentNode(node2Job));
+
+        // node2 left, no other node has to agree on the new ring
+        partitionService.updateMembership(Collections.singletonList(lease("node1", twoNodeVersion)));
+        Assert.assertTrue(partitionService.isHandedOver());
+        Assert.assertTrue(partitionService.isOwnedByCurrentNode(node2Job));
+    }
+
+    @Test
+    public void shouldNotOwnJobsWithStaleLease() {
+        partitionService.updateMembership(Collections.singletonList(lease("node1", null)));
+        ReflectionTestUtils.setField(partitionService, "lastHeartbeatMillis", System.currentTimeMillis() - 16000);
+        Assert.assertFalse(partitionService.isOwnedByCurrentNode("job"));
+    }
+
+    private String jobOwnedBy(ConsistentHashRing before, ConsistentHashRing after, String ownerBefore,
+                              String ownerAfter) {
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> "job" + i)
+                .filter(jobId -> ownerBefore.equals(before.ownerOf(jobId)) && ownerAfter.equals(after.ownerOf(jobId)))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    private NodeLease lease(String nodeId, String ringVersion) {
+        NodeLease lease = new NodeLease();
+        lease.setId(nodeId);
+        lease.setRingVersion(ringVersion);
+        return lease;
+    }
+}
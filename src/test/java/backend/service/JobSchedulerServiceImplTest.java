@@ -0,0 +1,208 @@
+package backend.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class JobSchedulerServiceImplTest {
+
+    private JobSchedulerServiceImpl scheduler;
+
+    private JobExecutionService jobExecutionService;
+
+    private HostRateLimiter hostRateLimiter;
+
+    private JobRepository jobRepository;
+
+    private SelectorCache selectorCache;
+
+    @Before
+    public void setUp() {
+        jobExecutionService = Mockito.mock(JobExecutionService.class);
+        Mockito.when(jobExecutionService.executeJob(Mockito.any(Job.class))).thenReturn(Mono.empty());
+        jobRepository = Mockito.mock(JobRepository.class);
+        Mockito.when(jobRepository.findAll()).thenReturn(Flux.empty());
+        JobPartitionService jobPartitionService = Mockito.mock(JobPartitionService.class);
+        Mockito.when(jobPartitionService.isOwnedByCurrentNode(Mockito.anyString())).thenReturn(true);
+        Mockito.when(jobPartitionService.claimRun(Mockito.anyString(), Mockito.anyLong())).thenReturn(Mono.just(true));
+
+        hostRateLimiter = new HostRateLimiter();
+        ReflectionTestUtils.setField(hostRateLimiter, "logger", LoggerFactory.getLogger(HostRateLimiter.class));
+        ReflectionTestUtils.setField(hostRateLimiter, "enabled", true);
+        ReflectionTestUtils.setField(hostRateLimiter, "defaultRatePerSecond", 100.0);
+        ReflectionTestUtils.setField(hostRateLimiter, "defaultBurst", 100.0);
+        ReflectionTestUtils.setField(hostRateLimiter, "hostLimits", "slow.example.com=1:1");
+        ReflectionTestUtils.setField(hostRateLimiter, "maxWaitMillis", 30000L);
+        hostRateLimiter.init();
+
+        scheduler = new JobSchedulerServiceImpl();
+        ReflectionTestUtils.setField(scheduler, "logger", LoggerFactory.getLogger(JobSchedulerServiceImpl.class));
+        ReflectionTestUtils.setField(scheduler, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(scheduler, "jobExecutionService", jobExecutionService);
+        ReflectionTestUtils.setField(scheduler, "jobPartitionService", jobPartitionService);
+        selectorCache = Mockito.mock(SelectorCache.class);
+        ReflectionTestUtils.setField(scheduler, "selectorCache", selectorCache);
+        ReflectionTestUtils.setField(scheduler, "hostRateLimiter", hostRateLimiter);
+        ReflectionTestUtils.setField(scheduler, "schedulerEnabled", true);
+        ReflectionTestUtils.setField(scheduler, "tickMillis", 10L);
+        ReflectionTestUtils.setField(scheduler, "wheelSize", 512);
+        ReflectionTestUtils.setField(scheduler, "defaultIntervalSeconds", 60);
+        ReflectionTestUtils.setField(scheduler, "jitterMillis", 200L);
+        ReflectionTestUtils.setField(scheduler, "retryDelayMillis", 20L);
+        ReflectionTestUtils.setField(scheduler, "domConcurrency", 1);
+        ReflectionTestUtils.setField(scheduler, "httpConcurrency", 4);
+        ReflectionTestUtils.setField(scheduler, "loadBatchSize", 100);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void shouldRearmEveryIntervalWithJitter() {
+        Job job = job("interval", JobType.STATUS, "http://api.example.com/health", 1);
+        scheduler.scheduleJob(job);
+
+        // the first run is spread over the interval, every next one comes after interval plus up to jitter
+        Mockito.verify(jobExecutionService, Mockito.timeout(5000).times(3)).executeJob(job);
+        Assert.assertEquals(1, scheduler.getScheduledJobsCount());
+
+        Set<Long> delays = IntStream.range(0, 50)
+                .mapToObj(i -> (Long) ReflectionTestUtils.invokeMethod(scheduler, "nextDelayMillis", job))
+                .collect(Collectors.toSet());
+        Assert.assertTrue(delays.stream().allMatch(delay -> delay >= 1000 && delay <= 1200));
+        Assert.assertTrue(delays.size() > 1);
+    }
+
+    @Test
+    public void shouldRetryWithoutPermitKeepingExpectedStart() throws InterruptedException {
+        Job job = job("dom", JobType.DOM_NODE, "http://api.example.com/page", 60);
+        job.setStartOn(LocalDateTime.now().plusHours(1));
+        scheduler.scheduleJob(job);
+        Semaphore domPermits = permits().get(JobType.DOM_NODE);
+        domPermits.acquire();
+
+        long expectedStartMillis = System.currentTimeMillis();
+        fire(job, expectedStartMillis);
+        Thread.sleep(300);
+        Mockito.verify(jobExecutionService, Mockito.never()).executeJob(job);
+
+        domPermits.release();
+        Mockito.verify(jobExecutionService, Mockito.timeout(2000)).executeJob(job);
+        // the lag counts from the first attempt, not from the last retry
+        Assert.assertTrue(scheduler.getMaxStartLagMillis() >= 300);
+        Assert.assertEquals(1, domPermits.availablePermits());
+    }
+
+    @Test
+    public void shouldDropPendingReservationWhenCancelled() throws InterruptedException {
+        Job job = job("slow", JobType.STATUS, "http://slow.example.com/health", 60);
+        job.setStartOn(LocalDateTime.now().plusHours(1));
+        scheduler.scheduleJob(job);
+        // takes the only token, the job has to wait about a second for its slot
+        hostRateLimiter.reserve("http://slow.example.com/other");
+
+        fire(job, System.currentTimeMillis());
+        Assert.assertEquals(1, hostRateLimiter.getHostStats().get("slow.example.com").getQueueDepth());
+
+        scheduler.cancelJob(job.getId());
+        Assert.assertEquals(0, hostRateLimiter.getHostStats().get("slow.example.com").getQueueDepth());
+        Assert.assertEquals(0, scheduler.getScheduledJobsCount());
+        Thread.sleep(1500);
+        Mockito.verify(jobExecutionService, Mockito.never()).executeJob(job);
+    }
+
+    @Test
+    public void shouldRemoveJobThatIsNoLongerActive() {
+        Job job = job("ended", JobType.STATUS, "http://api.example.com/health", 60);
+        job.setStartOn(LocalDateTime.now().plusHours(1));
+        scheduler.scheduleJob(job);
+        Assert.assertEquals(1, scheduler.getScheduledJobsCount());
+
+        job.setEndOn(LocalDateTime.now().minusMinutes(1));
+        fire(job, System.currentTimeMillis());
+
+        Assert.assertEquals(0, scheduler.getScheduledJobsCount());
+        Mockito.verify(jobExecutionService, Mockito.never()).executeJob(job);
+    }
+
+    @Test
+    public void shouldNotScheduleInactiveJob() {
+        Job job = job("ended", JobType.STATUS, "http://api.example.com/health", 60);
+        job.setEndOn(LocalDateTime.now().minusMinutes(1));
+        scheduler.scheduleJob(job);
+
+        Assert.assertEquals(0, scheduler.getScheduledJobsCount());
+    }
+
+    @Test
+    public void shouldReconcileWithStoredJobs() {
+        Job unchanged = job("unchanged", JobType.STATUS, "http://api.example.com/health", 60);
+        Job edited = job("edited", JobType.ENDPOINT, "http://api.example.com/users", 60);
+        Job deleted = job("deleted", JobType.STATUS, "http://api.example.com/old", 60);
+        Job ended = job("ended", JobType.STATUS, "http://api.example.com/ended", 60);
+        Arrays.asList(unchanged, edited, deleted, ended).forEach(scheduler::scheduleJob);
+        Object unchangedScheduledJob = scheduledJobs().get("unchanged");
+
+        Job editedStored = job("edited", JobType.ENDPOINT, "http://api.example.com/users", 60);
+        editedStored.setSelector("$.users[0].name");
+        Job endedStored = job("ended", JobType.STATUS, "http://api.example.com/ended", 60);
+        endedStored.setEndOn(LocalDateTime.now().minusMinutes(1));
+        Job created = job("created", JobType.STATUS, "http://api.example.com/new", 60);
+        Mockito.when(jobRepository.findAll()).thenReturn(Flux.just(
+                job("unchanged", JobType.STATUS, "http://api.example.com/health", 60), editedStored, endedStored,
+                created));
+
+        scheduler.reconcile();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("unchanged", "edited", "created")),
+                scheduledJobs().keySet());
+        Assert.assertSame(unchangedScheduledJob, scheduledJobs().get("unchanged"));
+        Assert.assertEquals("$.users[0].name", ((Job) ReflectionTestUtils.getField(scheduledJobs().get("edited"),
+                "job")).getSelector());
+        // the compiled selectors of the edited job are dropped with its old schedule
+        Mockito.verify(selectorCache, Mockito.atLeastOnce()).invalidate("edited");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> scheduledJobs() {
+        return (Map<String, Object>) ReflectionTestUtils.getField(scheduler, "scheduledJobs");
+    }
+
+    private void fire(Job job, long expectedStartMillis) {
+        ReflectionTestUtils.invokeMethod(scheduler, "fire", scheduledJobs().get(job.getId()), expectedStartMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<JobType, Semaphore> permits() {
+        return (Map<JobType, Semaphore>) ReflectionTestUtils.getField(scheduler, "permitsByType");
+    }
+
+    /**
+     * Job that started a minute ago, scheduled jobs fire within their first interval unless moved later.
+     */
+    private Job job(String id, JobType type, String url, int intervalSeconds) {
+        Job job = new Job(id, type, JobStatus.RUNNING, url, null, null, null, null, null, (String) null,
+                LocalDateTime.now().minusMinutes(1), null);
+        ReflectionTestUtils.setField(job, "id", id);
+        job.setIntervalSeconds(intervalSeconds);
+        return job;
+    }
+}
@@ -0,0 +1,882 @@
+package backend.service;
+
+import backend.config.LocalTokenVerifier;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jayway.jsonpath.JsonPath;
+import org.bson.Document;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.xml.sax.InputSource;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+import java.io.File;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the load fixtures against the embedded Mongo and a local stub target and writes
+ * {@code target/benchmark-report[-label].json} with checks/sec, p50/p99 of API requests and Mongo ops/sec. API
+ * requests go through {@link WebTestClient} as a generated user, so the security filters (validating against the
+ * stub, which also acts as auth server), the controllers and JSON serialization are part of the measurement.
+ * The benchmark is skipped unless started with {@code -Dbenchmark=true}; the size is set with
+ * {@code -Dbenchmark.companies}, {@code -Dbenchmark.projects}, {@code -Dbenchmark.components}, {@code -Dbenchmark.jobs}
+ * and {@code -Dbenchmark.days}. Reports of two runs with the same size and seed are comparable. The report also has
+ * the start lag of the job scheduler with {@code -Dbenchmark.scheduler.jobs} jobs, 10,000, 50,000 and 100,000 by
+ * default, the token cache under {@code -Dbenchmark.token.threads} concurrent requests, 64 by default, API requests per
+ * second with tokens validated by the auth server against {@code auth.token.verification=local}, and ENDPOINT
+ * selectors compiled per check against cached ones, and the bytes a single ENDPOINT check allocates with and without
+ * streaming for 1 KB, 1 MB and 50 MB bodies, component tree walks of 10, 1,000 and 10,000 components, and page 1
+ * against page 5,000 of a million incidents, by offset and by cursor, metrics written through the buffered
+ * writer against one insert per document, and Mongo operations per healthy check with a cold and a warm incident
+ * state cache.
+ * <p>
+ * {@code /api/incident} is also measured, on every run and in the report, while DOM checks going through
+ * {@link JobExecutionService#executeJob(Job)} hang in a stand-in browser, hold every {@link BlockingJobScheduler}
+ * worker and fill its queue; it has to stay about as fast as without them.
+ */
+public class LoadBenchmarkTest extends AbstractSpringTest {
+
+    private static final int API_ITERATIONS = Integer.getInteger("benchmark.api.iterations", 200);
+
+    private static final String AUTH_VALIDATE_PATH = "/api/auth/validate/";
+
+    @Autowired
+    private LoadFixtureGenerator loadFixtureGenerator;
+
+    @Autowired
+    private JobExecutionService jobExecutionService;
+
+    @Autowired
+    private StatusSnapshotService statusSnapshotService;
+
+    @Autowired
+    private TenantContextService tenantContextService;
+
+    @Autowired
+    private ServerSecurityContextRepository securityContextRepository;
+
+    @Autowired
+    private LocalTokenVerifier localTokenVerifier;
+
+    @Autowired
+    private BlockingJobScheduler blockingJobScheduler;
+
+    @Autowired
+    private WebDriverSessionPool webDriverSessionPool;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private SelectorCache selectorCache;
+
+    @Autowired
+    private StreamingSelectorEvaluator streamingSelectorEvaluator;
+
+    @Autowired
+    private ComponentService componentService;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private IncidentScrollService incidentScrollService;
+
+    @Autowired
+    private MetricsStatsWriter metricsStatsWriter;
+
+    @Autowired
+    private IncidentStateCache incidentStateCache;
+
+    @MockBean
+    private WebDriverFactory webDriverFactory;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private NettyContext stubTarget;
+
+    private Object authServer;
+
+    @Before
+    public void setUp() {
+        // the token in the validation path is the id of the user it belongs to, up to an optional ~suffix that
+        // makes it a new token for the same user
+        stubTarget = HttpServer.create(0)
+                .newHandler((request, response) -> request.uri().startsWith(AUTH_VALIDATE_PATH) ?
+                        response.status(200)
+                                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                                .sendString(Mono.just(String.format("{\"id\":\"%s\",\"roles\":[\"USER\"]}",
+                                        request.uri().substring(AUTH_VALIDATE_PATH.length()).split("~")[0]))) :
+                        response.status(200).sendString(Mono.just("OK")))
+                .block();
+        authServer = ReflectionTestUtils.getField(securityContextRepository, "authServer");
+        ReflectionTestUtils.setField(securityContextRepository, "authServer",
+                String.format("http://localhost:%s", stubTarget.address().getPort()));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "targetUrl",
+                String.format("http://localhost:%s/status", stubTarget.address().getPort()));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "companies", Integer.getInteger("benchmark.companies", 2));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "projectsPerCompany", Integer.getInteger("benchmark.projects", 3));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "componentsPerProject", Integer.getInteger("benchmark.components", 4));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "jobsPerComponent", Integer.getInteger("benchmark.jobs", 2));
+        ReflectionTestUtils.setField(loadFixtureGenerator, "historyDays", Integer.getInteger("benchmark.days", 30));
+    }
+
+    @After
+    public void tearDown() {
+        if (stubTarget != null) {
+            ReflectionTestUtils.setField(securityContextRepository, "authServer", authServer);
+            stubTarget.dispose();
+        }
+    }
+
+    @Test
+    public void incidentLatencyUnderBlockingDomChecks() {
+        ReflectionTestUtils.setField(loadFixtureGenerator, "companies", 1);
+        ReflectionTestUtils.setField(loadFixtureGenerator, "projectsPerCompany", 1);
+        ReflectionTestUtils.setField(loadFixtureGenerator, "historyDays", 1);
+        LoadFixtureGenerator.LoadFixtureReport fixtures = loadFixtureGenerator.generate().block();
+
+        incidentLatencyUnderBlockingLoad(apiClient(fixtures.getUserIds().get(0)));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", System.getProperty("benchmark.label", ""));
+
+        Map<String, Long> opsBefore = mongoOpCounters();
+        LoadFixtureGenerator.LoadFixtureReport fixtures = loadFixtureGenerator.generate().block();
+        report.put("fixtures", fixtures);
+        report.put("fixtureMongoOpsPerSecond", perSecond(totalOps(opsBefore, mongoOpCounters()), fixtures.getElapsedMillis()));
+
+        List<Job> jobs = reactiveMongoTemplate.find(Query.query(Criteria.where("url")
+                .is(ReflectionTestUtils.getField(loadFixtureGenerator, "targetUrl"))), Job.class)
+                .collectList()
+                .block();
+        opsBefore = mongoOpCounters();
+        long startedAt = System.currentTimeMillis();
+        Long checks = Flux.fromIterable(jobs)
+                .flatMap(jobExecutionService::executeJob, 64)
+                .count()
+                .block();
+        long checksMillis = System.currentTimeMillis() - startedAt;
+        Assert.assertEquals(Long.valueOf(jobs.size()), checks);
+        report.put("checks", checks);
+        report.put("checksPerSecond", perSecond(checks, checksMillis));
+        report.put("checksMongoOpsPerSecond", perSecond(totalOps(opsBefore, mongoOpCounters()), checksMillis));
+        report.put("healthyCheckMongoOps", healthyCheckMongoOps());
+
+        // the generated user sees the projects of its company, the API works on the first one of them
+        String userId = fixtures.getUserIds().get(0);
+        String projectId = tenantContextService.resolveCurrentTenant()
+                .subscriberContext(ReactiveSecurityContextHolder.withAuthentication(
+                        new UsernamePasswordAuthenticationToken(userId, null, Collections.emptyList())))
+                .map(TenantContext::getFirstProjectId)
+                .block();
+        Assert.assertTrue(fixtures.getProjectIds().contains(projectId));
+        statusSnapshotService.setPublished(projectId, true).block();
+
+        WebTestClient client = apiClient(userId);
+        Map<String, Object> api = new LinkedHashMap<>();
+        api.put("incidentScroll", latencies(() -> get(client,
+                "/api/incident/scroll?pageSize=20&sortField=dateStart&sortDirection=desc")));
+        api.put("incidentScrollFiltered", latencies(() -> get(client,
+                "/api/incident/scroll?pageSize=20&sortField=dateStart&sortDirection=desc&withCount=true" +
+                        "&filters=status:eq:RESOLVED")));
+        api.put("publicStatus", latencies(() -> get(client, "/api/status/public/" + projectId)));
+        report.put("apiLatencyMillis", api);
+        report.put("incidentLatencyUnderBlockingLoadMillis", incidentLatencyUnderBlockingLoad(client));
+        report.put("tokenCache", tokenCacheContention());
+        report.put("tokenVerificationRequestsPerSecond", tokenVerificationRemoteVsLocal(userId));
+        report.put("selectorMicros", selectorCompiledVsCached());
+        report.put("endpointAllocatedBytes", endpointAllocatedBytes());
+        report.put("componentTreeMicros", componentTreeWalk());
+        report.put("incidentPageMicros", incidentDeepPages());
+        report.put("metricsWrites", metricsBufferedVsPerDocument());
+
+        Map<String, Object> schedulerStartLag = new LinkedHashMap<>();
+        for (String jobs : System.getProperty("benchmark.scheduler.jobs", "10000,50000,100000").split(",")) {
+            schedulerStartLag.put(jobs.trim(), schedulerStartLag(Integer.parseInt(jobs.trim())));
+        }
+        report.put("schedulerStartLag", schedulerStartLag);
+
+        File file = new File("target", "benchmark-report" + (report.get("label").toString().isEmpty() ? "" :
+                "-" + report.get("label")) + ".json");
+        file.getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+    }
+
+    /**
+     * p50/p99 of {@code /api/incident} alone and while DOM checks take every session of the Selenium pool, every
+     * worker and queue slot of the blocking scheduler, plus the DOM checks it rejected meanwhile.
+     */
+    private Map<String, Object> incidentLatencyUnderBlockingLoad(WebTestClient client) {
+        Runnable incidentPage = () -> get(client, "/api/incident?page=2&pageSize=20&sortFields=name&sortDirection=asc");
+        Map<String, Double> idle = latencies(incidentPage);
+
+        int workers = blockingJobScheduler.getWorkers();
+        // more DOM checks than workers and queue together, like a burst of slow pages
+        List<Job> domJobs = new ArrayList<>();
+        for (int i = 0; i < workers + blockingJobScheduler.getQueueSize() + workers; i++) {
+            Job job = new Job("Slow DOM check " + i, JobType.DOM_NODE, JobStatus.RUNNING,
+                    "http://localhost/slow-page", null, "//body", null, null, null, (String) null,
+                    LocalDateTime.now(), null);
+            job.setMaxTotalTimeMillis(TimeUnit.MINUTES.toMillis(5));
+            domJobs.add(job);
+        }
+        domJobs = jobRepository.saveAll(domJobs).collectList().block();
+
+        CountDownLatch pageLoad = new CountDownLatch(1);
+        Mockito.when(webDriverFactory.createDriver()).thenAnswer(invocation -> slowPageDriver(pageLoad));
+        long rejectedBefore = blockingJobScheduler.getRejectedTasks();
+        Disposable.Composite checks = Disposables.composite();
+        Map<String, Double> loaded;
+        try {
+            domJobs.forEach(job -> checks.add(jobExecutionService.executeJob(job).subscribe()));
+            for (int attempt = 0; attempt < 100 && webDriverSessionPool.getSessionsInUse() < workers; attempt++) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(workers, blockingJobScheduler.getActiveWorkers());
+            Assert.assertEquals(workers, webDriverSessionPool.getSessionsInUse());
+            Assert.assertEquals(workers, blockingJobScheduler.getRejectedTasks() - rejectedBefore);
+            loaded = latencies(incidentPage);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            // cancelled checks interrupt their workers and drop their sessions
+            checks.dispose();
+            pageLoad.countDown();
+        }
+
+        Assert.assertTrue(String.format("/api/incident p99 went from %s ms to %s ms under blocking load",
+                idle.get("p99"), loaded.get("p99")), loaded.get("p99") <= idle.get("p99") * 2 + 50);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("idle", idle);
+        result.put("blockingWorkersBusy", loaded);
+        result.put("rejectedBlockingTasks", blockingJobScheduler.getRejectedTasks() - rejectedBefore);
+        return result;
+    }
+
+    /**
+     * Security context loads from {@code benchmark.token.threads} threads at once over a set of
+     * {@code benchmark.token.count} tokens, with the hits, misses and evictions of the token cache meanwhile.
+     */
+    private Map<String, Object> tokenCacheContention() throws InterruptedException {
+        int threads = Integer.getInteger("benchmark.token.threads", 64);
+        int tokens = Integer.getInteger("benchmark.token.count", 1000);
+        int loadsPerThread = Integer.getInteger("benchmark.token.loads", 5000);
+        CacheStats before = (CacheStats) ReflectionTestUtils.invokeMethod(securityContextRepository, "getTokenCacheStats");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Long> nanos = Collections.synchronizedList(new ArrayList<>(threads * loadsPerThread));
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                long[] threadNanos = new long[loadsPerThread];
+                try {
+                    start.await();
+                    for (int i = 0; i < loadsPerThread; i++) {
+                        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/incident")
+                                .header(HttpHeaders.AUTHORIZATION, "Bearer user-" + ThreadLocalRandom.current().nextInt(tokens)));
+                        long startedAt = System.nanoTime();
+                        securityContextRepository.load(exchange).block();
+                        threadNanos[i] = System.nanoTime() - startedAt;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    for (long value : threadNanos) {
+                        nanos.add(value);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        long startedAt = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        long millis = System.currentTimeMillis() - startedAt;
+        executor.shutdown();
+
+        CacheStats stats = ((CacheStats) ReflectionTestUtils.invokeMethod(securityContextRepository, "getTokenCacheStats"))
+                .minus(before);
+        Collections.sort(nanos);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threads", threads);
+        result.put("loadsPerSecond", perSecond(nanos.size(), millis));
+        result.put("p50Micros", nanos.get((int) Math.ceil(nanos.size() * 0.50) - 1) / 1_000.0);
+        result.put("p99Micros", nanos.get((int) Math.ceil(nanos.size() * 0.99) - 1) / 1_000.0);
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    /**
+     * Requests per second of {@code benchmark.token.requests} sequential {@code /api/incident/scroll} calls, 1,000 by
+     * default, with tokens validated by the auth server, a new token on every request and the same cached one, and
+     * with {@code auth.token.verification=local}, RS256 tokens verified against a generated key.
+     */
+    private Map<String, Object> tokenVerificationRemoteVsLocal(String userId) throws GeneralSecurityException {
+        int requests = Integer.getInteger("benchmark.token.requests", 1000);
+        WebTestClient client = WebTestClient.bindToApplicationContext(applicationContext)
+                .configureClient()
+                .responseTimeout(Duration.ofSeconds(30))
+                .build();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("remoteNewToken", requestsPerSecond(client, requests, i -> userId + "~" + i));
+        result.put("remoteCachedToken", requestsPerSecond(client, requests, i -> userId));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String token = signedToken(userId, keyPair.getPrivate());
+        Map<String, Object> remoteFields = new LinkedHashMap<>();
+        for (String field : Arrays.asList("verificationMode", "publicKeys", "revokedTokenIds",
+                "revocationsFetchedAtMillis")) {
+            remoteFields.put(field, ReflectionTestUtils.getField(localTokenVerifier, field));
+        }
+        try {
+            ReflectionTestUtils.setField(localTokenVerifier, "verificationMode", "local");
+            ReflectionTestUtils.setField(localTokenVerifier, "publicKeys",
+                    Collections.singletonMap("default", keyPair.getPublic()));
+            ReflectionTestUtils.setField(localTokenVerifier, "revokedTokenIds", Collections.emptySet());
+            ReflectionTestUtils.setField(localTokenVerifier, "revocationsFetchedAtMillis", System.currentTimeMillis());
+            Assert.assertTrue(localTokenVerifier.isReady());
+            result.put("local", requestsPerSecond(client, requests, i -> token));
+        } finally {
+            remoteFields.forEach((field, value) -> ReflectionTestUtils.setField(localTokenVerifier, field, value));
+        }
+        return result;
+    }
+
+    /**
+     * Sequential requests per second with the token of each request, after a warm up of the same size.
+     */
+    private double requestsPerSecond(WebTestClient client, int requests, IntFunction<String> token) {
+        String uri = "/api/incident/scroll?pageSize=1&sortField=dateStart&sortDirection=desc";
+        long startedAt = 0;
+        for (int i = 0; i < requests * 2; i++) {
+            if (i == requests) {
+                startedAt = System.currentTimeMillis();
+            }
+            client.get().uri(uri)
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + token.apply(i))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody()
+                    .returnResult();
+        }
+        return perSecond(requests, System.currentTimeMillis() - startedAt);
+    }
+
+    private String signedToken(String userId, PrivateKey privateKey) throws GeneralSecurityException {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        String signingInput = encoder.encodeToString("{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"default\"}"
+                .getBytes(StandardCharsets.UTF_8)) + "." + encoder.encodeToString(String.format(
+                "{\"sub\":\"%s\",\"roles\":[\"USER\"],\"exp\":%s,\"nbf\":%s,\"jti\":\"benchmark\"}",
+                userId, nowSeconds + 3600, nowSeconds - 60).getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + encoder.encodeToString(signature.sign());
+    }
+
+    /**
+     * Average time of extracting the value of a JSON and an XML ENDPOINT job from {@code json/users.json} and
+     * {@code xml/weather.xml}, compiling the selector and creating the parser factories on every check as before
+     * the selector cache, and with the compiled selectors and parsers of {@link SelectorCache}.
+     */
+    private Map<String, Object> selectorCompiledVsCached() throws Exception {
+        int iterations = Integer.getInteger("benchmark.selector.iterations", 20000);
+        String json = new String(Files.readAllBytes(new ClassPathResource("json/users.json").getFile().toPath()),
+                StandardCharsets.UTF_8);
+        String xml = new String(Files.readAllBytes(new ClassPathResource("xml/weather.xml").getFile().toPath()),
+                StandardCharsets.UTF_8);
+        Job jsonJob = new Job("JSON selector", JobType.ENDPOINT, JobStatus.RUNNING, "http://localhost/users", null,
+                "$[0].address.zipcode", null, EndpointResponseType.JSON, null, (String) null, LocalDateTime.now(), null);
+        ReflectionTestUtils.setField(jsonJob, "id", "json-selector");
+        Job xmlJob = new Job("XML selector", JobType.ENDPOINT, JobStatus.RUNNING, "http://localhost/weather", null,
+                "/current/temperature/@value", null, EndpointResponseType.XML, null, (String) null, LocalDateTime.now(),
+                null);
+        ReflectionTestUtils.setField(xmlJob, "id", "xml-selector");
+
+        Map<String, Object> jsonMicros = new LinkedHashMap<>();
+        jsonMicros.put("compiledPerCheck", averageMicros(iterations, () ->
+                JsonPath.parse(json).read(JsonPath.compile(jsonJob.getSelector()))));
+        jsonMicros.put("cached", averageMicros(iterations, () ->
+                JsonPath.parse(json).read(selectorCache.getJsonPath(jsonJob))));
+        Map<String, Object> xmlMicros = new LinkedHashMap<>();
+        xmlMicros.put("compiledPerCheck", averageMicros(iterations, () -> XPathFactory.newInstance().newXPath()
+                .compile(xmlJob.getSelector())
+                .evaluate(DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                        .parse(new InputSource(new StringReader(xml))))));
+        xmlMicros.put("cached", averageMicros(iterations, () -> {
+            org.w3c.dom.Document document = selectorCache.getDocumentBuilder()
+                    .parse(new InputSource(new StringReader(xml)));
+            XPathExpression expression = selectorCache.getXPathExpression(xmlJob);
+            synchronized (expression) {
+                return expression.evaluate(document);
+            }
+        }));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("json", jsonMicros);
+        result.put("xml", xmlMicros);
+        return result;
+    }
+
+    /**
+     * Bytes allocated by a single ENDPOINT check of 1 KB, 1 MB and 50 MB JSON and XML bodies, streaming and reading
+     * the whole body into a String and a tree, for a value at the start and at the end of the body.
+     */
+    private Map<String, Object> endpointAllocatedBytes() throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (EndpointResponseType type : new EndpointResponseType[]{EndpointResponseType.JSON, EndpointResponseType.XML}) {
+            for (int size : new int[]{1 << 10, 1 << 20, 50 << 20}) {
+                byte[] payload = endpointPayload(type, size);
+                Map<String, Object> sizeResult = new LinkedHashMap<>();
+                for (String position : new String[]{"first", "last"}) {
+                    String selector = EndpointResponseType.JSON == type ? "$." + position : "/current/" + position + "/@value";
+                    Job job = new Job("Allocations", JobType.ENDPOINT, JobStatus.RUNNING, "http://localhost/payload",
+                            null, selector, null, type, null, (String) null, LocalDateTime.now(), null);
+                    ReflectionTestUtils.setField(job, "id", "allocations-" + type + "-" + position);
+                    Assert.assertTrue(streamingSelectorEvaluator.supports(job));
+
+                    Map<String, Object> positionResult = new LinkedHashMap<>();
+                    positionResult.put("streaming", allocatedBytes(() -> Assert.assertEquals("UP",
+                            streamingSelectorEvaluator.extract(job, chunks(payload)).block())));
+                    positionResult.put("wholeBody", allocatedBytes(() -> Assert.assertEquals("UP",
+                            extractFromWholeBody(job, chunks(payload)))));
+                    sizeResult.put(position, positionResult);
+                }
+                result.put(type + "-" + payload.length, sizeResult);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Body of at least {@code size} bytes with the value "UP" in its first and in its last field.
+     */
+    private byte[] endpointPayload(EndpointResponseType type, int size) {
+        StringBuilder payload = new StringBuilder(size + 100);
+        boolean json = EndpointResponseType.JSON == type;
+        payload.append(json ? "{\"first\":\"UP\",\"items\":[" : "<current><first value=\"UP\"/>");
+        for (int i = 0; payload.length() < size; i++) {
+            payload.append(json ? (i == 0 ? "" : ",") + "{\"id\":" + i + ",\"name\":\"item " + i + "\"}" :
+                    "<item id=\"" + i + "\">item " + i + "</item>");
+        }
+        payload.append(json ? "],\"last\":\"UP\"}" : "<last value=\"UP\"/></current>");
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The body in 8 KB buffers wrapping the payload, as the HTTP client hands it over.
+     */
+    private Flux<DataBuffer> chunks(byte[] payload) {
+        DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+        int chunkSize = 8 << 10;
+        return Flux.range(0, (payload.length + chunkSize - 1) / chunkSize)
+                .map(i -> bufferFactory.wrap(ByteBuffer.wrap(payload, i * chunkSize,
+                        Math.min(chunkSize, payload.length - i * chunkSize)).slice()));
+    }
+
+    /**
+     * How a check evaluates selectors the streaming evaluator does not support.
+     */
+    private String extractFromWholeBody(Job job, Flux<DataBuffer> body) {
+        String text = DataBufferUtils.join(body)
+                .map(buffer -> StandardCharsets.UTF_8.decode(buffer.asByteBuffer()).toString())
+                .block();
+        try {
+            if (EndpointResponseType.JSON == job.getEndpointResponseType()) {
+                return JsonPath.parse(text).read(selectorCache.getJsonPath(job));
+            }
+            org.w3c.dom.Document document = selectorCache.getDocumentBuilder()
+                    .parse(new InputSource(new StringReader(text)));
+            XPathExpression expression = selectorCache.getXPathExpression(job);
+            synchronized (expression) {
+                return expression.evaluate(document);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread while running the check, after running it once to warm it up.
+     */
+    private long allocatedBytes(Runnable check) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        check.run();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        check.run();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    }
+
+    /**
+     * Walks of a project with 10, 1,000 and 10,000 components, ten roots with random parents below them: the whole
+     * tree and the subtree of one root, reading the project again for every walk and from the cached tree.
+     */
+    private Map<String, Object> componentTreeWalk() throws Exception {
+        Object service = AopTestUtils.getTargetObject(componentService);
+        Random random = new Random(42);
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int size : new int[]{10, 1000, 10000}) {
+            Project project = new Project("benchmark", "Tree of " + size, "Description");
+            List<Component> components = project.getComponents();
+            for (int i = 0; i < size; i++) {
+                String parentId = i < 10 ? null : components.get(random.nextInt(i)).getId();
+                components.add(new Component(parentId, "Component " + i, "Description"));
+            }
+            String projectId = projectRepository.save(project).block().getId();
+            String rootId = components.get(0).getId();
+            int iterations = Math.max(10, 100000 / size);
+
+            Map<String, Object> sizeResult = new LinkedHashMap<>();
+            sizeResult.put("treeRead", averageMicros(iterations, () -> {
+                ReflectionTestUtils.invokeMethod(service, "invalidateTree", projectId);
+                return componentService.getAllComponentsWithChilds(projectId).count().block();
+            }));
+            sizeResult.put("treeCached", averageMicros(iterations, () ->
+                    componentService.getAllComponentsWithChilds(projectId).count().block()));
+            sizeResult.put("subtreeRead", averageMicros(iterations, () -> {
+                ReflectionTestUtils.invokeMethod(service, "invalidateTree", projectId);
+                return componentService.getAllComponentsByIdWithChilds(projectId, rootId).count().block();
+            }));
+            sizeResult.put("subtreeCached", averageMicros(iterations, () ->
+                    componentService.getAllComponentsByIdWithChilds(projectId, rootId).count().block()));
+            result.put(String.valueOf(size), sizeResult);
+        }
+        return result;
+    }
+
+    /**
+     * Page 1 and page 5,000 of 20 incidents of a project with {@code benchmark.scroll.incidents} incidents, a million
+     * by default, sorted by start date: as offset page, served that deep only for this measurement, and by cursor.
+     */
+    private Map<String, Object> incidentDeepPages() throws Exception {
+        int incidents = Integer.getInteger("benchmark.scroll.incidents", 1_000_000);
+        int pageSize = 20;
+        int deepPage = 5000;
+        Project project = new Project("benchmark", "Incidents", "Description");
+        project.getComponents().add(new Component(null, "Component", "Description"));
+        Project savedProject = projectRepository.save(project).block();
+        String projectId = savedProject.getId();
+        String componentId = savedProject.getComponents().get(0).getId();
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+        Flux.range(0, incidents)
+                .map(i -> new Incident(componentId, null, "Incident " + i, "Description",
+                        i % 10 == 0 ? IncidentStatus.OPENED : IncidentStatus.RESOLVED, start.minusSeconds(i), null))
+                .buffer(10000)
+                .concatMap(batch -> reactiveMongoTemplate.insertAll(batch))
+                .blockLast();
+
+        String deepCursor = null;
+        for (int page = 1; page < deepPage; page++) {
+            deepCursor = incidentScrollService.scroll(projectId, null, deepCursor, pageSize, "dateStart", "desc", false)
+                    .block()
+                    .getNextCursor();
+        }
+        String cursor = deepCursor;
+        int iterations = Integer.getInteger("benchmark.scroll.iterations", 20);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("incidents", incidents);
+        result.put("cursorFirstPage", averageMicros(iterations, () -> incidentScrollService.scroll(projectId, null,
+                null, pageSize, "dateStart", "desc", false).block()));
+        result.put("cursorPage" + deepPage, averageMicros(iterations, () -> incidentScrollService.scroll(projectId,
+                null, cursor, pageSize, "dateStart", "desc", false).block()));
+        Object maxOffset = ReflectionTestUtils.getField(incidentScrollService, "maxOffset");
+        ReflectionTestUtils.setField(incidentScrollService, "maxOffset", Long.MAX_VALUE);
+        try {
+            result.put("offsetFirstPage", averageMicros(iterations, () -> incidentScrollService.findPage(projectId,
+                    null, 1, pageSize, "dateStart", "desc").collectList().block()));
+            result.put("offsetPage" + deepPage, averageMicros(iterations, () -> incidentScrollService.findPage(projectId,
+                    null, deepPage, pageSize, "dateStart", "desc").collectList().block()));
+        } finally {
+            ReflectionTestUtils.setField(incidentScrollService, "maxOffset", maxOffset);
+        }
+        result.put("countCached", averageMicros(iterations, () ->
+                incidentScrollService.countIncidents(projectId, null).block()));
+        return result;
+    }
+
+    /**
+     * Mongo operations per healthy STATUS_CODE check of {@code benchmark.healthy.jobs} jobs against the stub, with
+     * the incident state of the jobs unknown and once it is cached. Metric writes are part of both.
+     */
+    private Map<String, Object> healthyCheckMongoOps() {
+        int jobCount = Integer.getInteger("benchmark.healthy.jobs", 1000);
+        String url = String.format("http://localhost:%s/status", stubTarget.address().getPort());
+        List<Job> healthyJobs = Flux.range(0, jobCount)
+                .map(i -> new Job("Healthy " + i, JobType.STATUS_CODE, JobStatus.RUNNING, url, 200, null, null, null,
+                        null, "benchmark", LocalDateTime.now(), null))
+                .collectList()
+                .flatMapMany(jobs -> reactiveMongoTemplate.insertAll(jobs))
+                .collectList()
+                .block();
+        healthyJobs.forEach(job -> incidentStateCache.invalidate(job.getId()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobs", jobCount);
+        result.put("cold", mongoOpsPerCheck(healthyJobs));
+        result.put("warm", mongoOpsPerCheck(healthyJobs));
+        return result;
+    }
+
+    private Map<String, Double> mongoOpsPerCheck(List<Job> healthyJobs) {
+        Map<String, Long> before = mongoOpCounters();
+        Flux.fromIterable(healthyJobs)
+                .flatMap(jobExecutionService::executeJob, 64)
+                .blockLast();
+        Map<String, Long> after = mongoOpCounters();
+        Map<String, Double> perCheck = new LinkedHashMap<>();
+        perCheck.put("total", totalOps(before, after) / (double) healthyJobs.size());
+        perCheck.put("query", (after.get("query") - before.get("query")) / (double) healthyJobs.size());
+        return perCheck;
+    }
+
+    /**
+     * {@code benchmark.metrics.writes} check results written by 256 concurrent checks, through the buffered bulk
+     * writer and as one insert per document as before it: writes per second and p99 of a single write.
+     */
+    private Map<String, Object> metricsBufferedVsPerDocument() {
+        int writes = Integer.getInteger("benchmark.metrics.writes", 100_000);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("writes", writes);
+        result.put("buffered", metricsWriteRate(writes, metricsStats -> metricsStatsWriter.write(metricsStats, 10)));
+        result.put("perDocument", metricsWriteRate(writes, metricsStats -> reactiveMongoTemplate.insert(metricsStats)));
+        return result;
+    }
+
+    private Map<String, Object> metricsWriteRate(int writes, Function<MetricsStats, Mono<?>> write) {
+        List<Long> nanos = Collections.synchronizedList(new ArrayList<>(writes));
+        long startedAt = System.currentTimeMillis();
+        Flux.range(0, writes)
+                .flatMap(i -> Mono.defer(() -> {
+                    long writeStartedAt = System.nanoTime();
+                    return write.apply(new MetricsStats("benchmark-job-" + (i % 1000), MetricsStatus.SUCCESS, "OK"))
+                            .doOnSuccess(stored -> nanos.add(System.nanoTime() - writeStartedAt));
+                }), 256)
+                .blockLast();
+        long millis = System.currentTimeMillis() - startedAt;
+        Collections.sort(nanos);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("writesPerSecond", perSecond(writes, millis));
+        result.put("p50Millis", nanos.get((int) Math.ceil(nanos.size() * 0.50) - 1) / 1_000_000.0);
+        result.put("p99Millis", nanos.get((int) Math.ceil(nanos.size() * 0.99) - 1) / 1_000_000.0);
+        return result;
+    }
+
+    /**
+     * Average of {@code iterations} sequential calls, after a warm up of the same size.
+     */
+    private double averageMicros(int iterations, Callable<?> call) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            call.call();
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.call();
+        }
+        return (System.nanoTime() - startedAt) / 1_000.0 / iterations;
+    }
+
+    /**
+     * Average and max start lag of a scheduler alone running {@code jobs} one second jobs for
+     * {@code benchmark.scheduler.seconds}, with checks that complete at once and no host limits, so only the time
+     * wheel, the permits and the re-arming are measured.
+     */
+    private Map<String, Object> schedulerStartLag(int jobs) throws InterruptedException {
+        LongAdder runs = new LongAdder();
+        JobExecutionService checks = Mockito.mock(JobExecutionService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(checks.executeJob(Mockito.any(Job.class))).thenAnswer(invocation -> {
+            runs.increment();
+            return Mono.empty();
+        });
+        JobRepository repository = Mockito.mock(JobRepository.class, Mockito.withSettings().stubOnly());
+        Mockito.when(repository.findAll()).thenReturn(Flux.empty());
+        JobPartitionService partitions = Mockito.mock(JobPartitionService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(partitions.isOwnedByCurrentNode(Mockito.anyString())).thenReturn(true);
+        Mockito.when(partitions.claimRun(Mockito.anyString(), Mockito.anyLong())).thenReturn(Mono.just(true));
+        HostRateLimiter hostRateLimiter = new HostRateLimiter();
+        ReflectionTestUtils.setField(hostRateLimiter, "enabled", false);
+
+        JobSchedulerServiceImpl scheduler = new JobSchedulerServiceImpl();
+        ReflectionTestUtils.setField(scheduler, "logger", LoggerFactory.getLogger(JobSchedulerServiceImpl.class));
+        ReflectionTestUtils.setField(scheduler, "jobRepository", repository);
+        ReflectionTestUtils.setField(scheduler, "jobExecutionService", checks);
+        ReflectionTestUtils.setField(scheduler, "jobPartitionService", partitions);
+        ReflectionTestUtils.setField(scheduler, "selectorCache", Mockito.mock(SelectorCache.class));
+        ReflectionTestUtils.setField(scheduler, "hostRateLimiter", hostRateLimiter);
+        ReflectionTestUtils.setField(scheduler, "schedulerEnabled", true);
+        ReflectionTestUtils.setField(scheduler, "tickMillis", 100L);
+        ReflectionTestUtils.setField(scheduler, "wheelSize", 1024);
+        ReflectionTestUtils.setField(scheduler, "defaultIntervalSeconds", 1);
+        ReflectionTestUtils.setField(scheduler, "jitterMillis", 100L);
+        ReflectionTestUtils.setField(scheduler, "retryDelayMillis", 500L);
+        ReflectionTestUtils.setField(scheduler, "domConcurrency", 8);
+        ReflectionTestUtils.setField(scheduler, "httpConcurrency", 256);
+        ReflectionTestUtils.setField(scheduler, "loadBatchSize", 500);
+        scheduler.start();
+        long seconds = Long.getLong("benchmark.scheduler.seconds", 10);
+        try {
+            for (int i = 0; i < jobs; i++) {
+                Job job = new Job("Scheduled " + i, JobType.STATUS_CODE, JobStatus.RUNNING, "http://localhost/" + i,
+                        200, null, null, null, null, (String) null, LocalDateTime.now(), null);
+                ReflectionTestUtils.setField(job, "id", "scheduled-" + i);
+                scheduler.scheduleJob(job);
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        } finally {
+            scheduler.stop();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("runsPerSecond", perSecond(runs.sum(), TimeUnit.SECONDS.toMillis(seconds)));
+        result.put("averageStartLagMillis", scheduler.getAverageStartLagMillis());
+        result.put("maxStartLagMillis", scheduler.getMaxStartLagMillis());
+        return result;
+    }
+
+    /**
+     * Browser whose page loads hang until released.
+     */
+    private WebDriver slowPageDriver(CountDownLatch pageLoad) {
+        WebDriver driver = Mockito.mock(WebDriver.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.doAnswer(invocation -> pageLoad.await(5, TimeUnit.MINUTES)).when(driver).get(Mockito.anyString());
+        return driver;
+    }
+
+    private WebTestClient apiClient(String userId) {
+        return WebTestClient.bindToApplicationContext(applicationContext)
+                .configureClient()
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + userId)
+                .responseTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    /**
+     * Reads the whole response body, so serialization is part of the measured time.
+     */
+    private void get(WebTestClient client, String uri) {
+        client.get().uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult();
+    }
+
+    /**
+     * p50 and p99 of {@link #API_ITERATIONS} sequential calls, after a warm up of the same size.
+     */
+    private Map<String, Double> latencies(Runnable call) {
+        for (int i = 0; i < API_ITERATIONS; i++) {
+            call.run();
+        }
+        List<Long> nanos = new ArrayList<>();
+        for (int i = 0; i < API_ITERATIONS; i++) {
+            long startedAt = System.nanoTime();
+            call.run();
+            nanos.add(System.nanoTime() - startedAt);
+        }
+        Collections.sort(nanos);
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", nanos.get((int) Math.ceil(nanos.size() * 0.50) - 1) / 1_000_000.0);
+        percentiles.put("p99", nanos.get((int) Math.ceil(nanos.size() * 0.99) - 1) / 1_000_000.0);
+        return percentiles;
+    }
+
+    private Map<String, Long> mongoOpCounters() {
+        Document opcounters = (Document) reactiveMongoTemplate.executeCommand(new Document("serverStatus", 1))
+                .block()
+                .get("opcounters");
+        Map<String, Long> counters = new LinkedHashMap<>();
+        opcounters.forEach((operation, count) -> counters.put(operation, ((Number) count).longValue()));
+        return counters;
+    }
+
+    private long totalOps(Map<String, Long> before, Map<String, Long> after) {
+        // the serverStatus commands of the measurement itself are not worth subtracting
+        return after.entrySet().stream()
+                .mapToLong(entry -> entry.getValue() - before.getOrDefault(entry.getKey(), 0L))
+                .sum();
+    }
+
+    private double perSecond(long count, long millis) {
+        return millis == 0 ? count : count * 1000.0 / millis;
+    }
+}
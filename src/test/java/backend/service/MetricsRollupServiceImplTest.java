@@ -0,0 +1,144 @@
+package backend.service;
+
+import backend.model.MetricsBucket;
+import backend.model.MetricsRollup;
+import backend.model.RollupResolution;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class MetricsRollupServiceImplTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2018, 6, 1, 10, 0);
+
+    private MetricsRollupServiceImpl rollupService;
+
+    @Before
+    public void setUp() {
+        rollupService = new MetricsRollupServiceImpl();
+        ReflectionTestUtils.setField(rollupService, "minuteRollupEnabled", true);
+        ReflectionTestUtils.setField(rollupService, "minuteRetentionDays", 2);
+        ReflectionTestUtils.setField(rollupService, "hourRetentionDays", 30);
+        ReflectionTestUtils.setField(rollupService, "dayRetentionDays", 400);
+    }
+
+    @Test
+    public void shouldTakeNearestRankPercentile() {
+        List<Long> values = LongStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
+        Assert.assertEquals(50, MetricsRollupServiceImpl.percentile(values, 50));
+        Assert.assertEquals(95, MetricsRollupServiceImpl.percentile(values, 95));
+        Assert.assertEquals(99, MetricsRollupServiceImpl.percentile(values, 99));
+        Assert.assertEquals(7, MetricsRollupServiceImpl.percentile(Collections.singletonList(7L), 99));
+        Assert.assertEquals(0, MetricsRollupServiceImpl.percentile(Collections.emptyList(), 50));
+    }
+
+    @Test
+    public void shouldRollupSamplesOfPeriodOnly() {
+        MetricsBucket bucket = bucket(
+                sample(0, MetricsBucket.STATUS_SUCCESS, 100),
+                sample(30, MetricsBucket.STATUS_SUCCESS, 300),
+                sample(59, MetricsBucket.STATUS_FAIL, -1),
+                sample(60, MetricsBucket.STATUS_FAIL, 900));
+
+        MetricsRollup minute = rollupService.rollupSamples(bucket, RollupResolution.MINUTE, HOUR);
+        Assert.assertEquals(3, minute.getTotal());
+        Assert.assertEquals(2, minute.getSuccess());
+        Assert.assertEquals(2.0 / 3, minute.getSuccessRatio(), 0.0001);
+        // unknown latencies are counted in totals but not in percentiles
+        Assert.assertEquals(100, minute.getLatencyP50());
+        Assert.assertEquals(300, minute.getLatencyP99());
+        Assert.assertEquals(HOUR.plusDays(2), minute.getExpireAt());
+        Assert.assertEquals(MetricsRollup.buildId("job", RollupResolution.MINUTE, HOUR), minute.getId());
+
+        MetricsRollup hour = rollupService.rollupSamples(bucket, RollupResolution.HOUR, HOUR);
+        Assert.assertEquals(4, hour.getTotal());
+        Assert.assertEquals(2, hour.getSuccess());
+        Assert.assertEquals(300, hour.getLatencyP50());
+        Assert.assertEquals(900, hour.getLatencyP95());
+        Assert.assertEquals(HOUR.plusDays(30), hour.getExpireAt());
+    }
+
+    @Test
+    public void shouldRollupBucketIntoHourAndMinutesWithSamples() {
+        MetricsBucket bucket = bucket(
+                sample(0, MetricsBucket.STATUS_SUCCESS, 100),
+                sample(5, MetricsBucket.STATUS_SUCCESS, 100),
+                sample(60 * 42, MetricsBucket.STATUS_FAIL, 200));
+
+        List<MetricsRollup> rollups = rollupService.rollupBucket(bucket);
+        Assert.assertEquals(3, rollups.size());
+        Assert.assertEquals(RollupResolution.HOUR, rollups.get(0).getResolution());
+        Assert.assertEquals(3, rollups.get(0).getTotal());
+        Assert.assertEquals(HOUR, rollups.get(1).getPeriodStart());
+        Assert.assertEquals(2, rollups.get(1).getTotal());
+        Assert.assertEquals(HOUR.plusMinutes(42), rollups.get(2).getPeriodStart());
+        Assert.assertEquals(0, rollups.get(2).getSuccess());
+
+        ReflectionTestUtils.setField(rollupService, "minuteRollupEnabled", false);
+        Assert.assertEquals(1, rollupService.rollupBucket(bucket).size());
+    }
+
+    @Test
+    public void shouldWeightPercentilesOfRollupsBySamples() {
+        MetricsRollup busyHour = rollup(90, 90, 100, 200, 300);
+        MetricsRollup quietHour = rollup(10, 0, 1100, 1200, 1300);
+
+        LocalDateTime day = HOUR.toLocalDate().atStartOfDay();
+        MetricsRollup dayRollup = rollupService.rollupRollups(Arrays.asList(busyHour, quietHour),
+                RollupResolution.DAY, day);
+        Assert.assertEquals(100, dayRollup.getTotal());
+        Assert.assertEquals(90, dayRollup.getSuccess());
+        Assert.assertEquals(0.9, dayRollup.getSuccessRatio(), 0.0001);
+        Assert.assertEquals(200, dayRollup.getLatencyP50());
+        Assert.assertEquals(300, dayRollup.getLatencyP95());
+        Assert.assertEquals(400, dayRollup.getLatencyP99());
+        Assert.assertEquals(day.plusDays(400), dayRollup.getExpireAt());
+    }
+
+    @Test
+    public void shouldKeepZeroPercentilesOfEmptyRollups() {
+        MetricsRollup dayRollup = rollupService.rollupRollups(Collections.singletonList(rollup(0, 0, 0, 0, 0)),
+                RollupResolution.DAY, HOUR.toLocalDate().atStartOfDay());
+        Assert.assertEquals(0, dayRollup.getTotal());
+        Assert.assertEquals(0, dayRollup.getSuccessRatio(), 0);
+        Assert.assertEquals(0, dayRollup.getLatencyP99());
+    }
+
+    private MetricsBucket bucket(long[]... samples) {
+        MetricsBucket bucket = new MetricsBucket();
+        bucket.setId(MetricsBucket.buildId("job", HOUR));
+        bucket.setJobId("job");
+        bucket.setBucketStart(HOUR);
+        long hourMillis = HOUR.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        for (long[] sample : samples) {
+            bucket.getTimestamps().add(hourMillis + sample[0] * 1000);
+            bucket.getStatuses().add((int) sample[1]);
+            bucket.getLatencies().add(sample[2]);
+        }
+        return bucket;
+    }
+
+    private long[] sample(long secondOfHour, int status, long latency) {
+        return new long[]{secondOfHour, status, latency};
+    }
+
+    private MetricsRollup rollup(long total, long success, long p50, long p95, long p99) {
+        MetricsRollup rollup = new MetricsRollup();
+        rollup.setJobId("job");
+        rollup.setTotal(total);
+        rollup.setSuccess(success);
+        rollup.setLatencyP50(p50);
+        rollup.setLatencyP95(p95);
+        rollup.setLatencyP99(p99);
+        return rollup;
+    }
+}
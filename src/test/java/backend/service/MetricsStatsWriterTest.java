@@ -0,0 +1,182 @@
+package backend.service;
+
+import backend.model.MetricsBucket;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.Success;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MetricsStatsWriterTest {
+
+    private MetricsStatsWriter writer;
+
+    private MongoCollection<Document> metrics;
+
+    private MongoCollection<Document> buckets;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        metrics = Mockito.mock(MongoCollection.class);
+        Mockito.when(metrics.insertMany(Mockito.anyList(), Mockito.any(InsertManyOptions.class)))
+                .thenReturn(Mono.just(Success.SUCCESS));
+        buckets = Mockito.mock(MongoCollection.class);
+        Mockito.when(buckets.bulkWrite(Mockito.anyList(), Mockito.any(BulkWriteOptions.class)))
+                .thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+        ReactiveMongoTemplate reactiveMongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+        Mockito.when(reactiveMongoTemplate.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        Mockito.when(reactiveMongoTemplate.getCollectionName(MetricsStats.class)).thenReturn("metricsStats");
+        Mockito.when(reactiveMongoTemplate.getCollectionName(MetricsBucket.class)).thenReturn("metricsBucket");
+        Mockito.when(reactiveMongoTemplate.getCollection("metricsStats")).thenReturn(metrics);
+        Mockito.when(reactiveMongoTemplate.getCollection("metricsBucket")).thenReturn(buckets);
+
+        writer = new MetricsStatsWriter();
+        ReflectionTestUtils.setField(writer, "logger", LoggerFactory.getLogger(MetricsStatsWriter.class));
+        ReflectionTestUtils.setField(writer, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(writer, "batchSize", 3);
+        ReflectionTestUtils.setField(writer, "bufferSize", 10);
+        ReflectionTestUtils.setField(writer, "concurrentFlushes", 1);
+        ReflectionTestUtils.setField(writer, "overflowConcurrency", 1);
+        ReflectionTestUtils.setField(writer, "overflowRetryMillis", 20L);
+        ReflectionTestUtils.setField(writer, "overflowMaxWaitMillis", 200L);
+        ReflectionTestUtils.setField(writer, "rawRetentionDays", 7);
+        writer.init();
+    }
+
+    @Test
+    public void shouldWriteFullBatchInOneInsert() {
+        Mono<MetricsStats> first = started(writer.write(metricsStats("job1")));
+        Mono<MetricsStats> second = started(writer.write(metricsStats("job2")));
+        Mockito.verify(metrics, Mockito.never()).insertMany(Mockito.anyList(), Mockito.any(InsertManyOptions.class));
+
+        StepVerifier.create(writer.write(metricsStats("job3")))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(first).expectNextCount(1).verifyComplete();
+        Assert.assertEquals(3, insertedDocuments().size());
+        Assert.assertEquals(1, writer.getWrittenBatches());
+        Assert.assertEquals(3, writer.getWrittenDocuments());
+    }
+
+    @Test
+    public void shouldFailOnlyDocumentsRejectedByMongo() {
+        // the second document is invalid, the third was stored by an earlier attempt
+        Mockito.when(metrics.insertMany(Mockito.anyList(), Mockito.any(InsertManyOptions.class)))
+                .thenReturn(Mono.error(new MongoBulkWriteException(BulkWriteResult.unacknowledged(), Arrays.asList(
+                        new BulkWriteError(121, "Document failed validation", new BsonDocument(), 1),
+                        new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 2)),
+                        null, new ServerAddress())));
+
+        Mono<MetricsStats> first = started(writer.write(metricsStats("job1")));
+        Mono<MetricsStats> second = started(writer.write(metricsStats("job2")));
+        Mono<MetricsStats> third = started(writer.write(metricsStats("job3")));
+
+        StepVerifier.create(third).expectNextCount(1).verifyComplete();
+        StepVerifier.create(first).expectNextCount(1).verifyComplete();
+        StepVerifier.create(second)
+                .expectErrorMatches(e -> e.getMessage().contains("Document failed validation"))
+                .verify();
+        Assert.assertEquals(2, writer.getWrittenDocuments());
+        Assert.assertEquals(2, bucketUpdates().size());
+    }
+
+    @Test
+    public void shouldCompleteStoredWritesWhenBucketsCannotBeUpdated() {
+        Mockito.when(buckets.bulkWrite(Mockito.anyList(), Mockito.any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(new IllegalStateException("bucket update failed")));
+
+        Mono<MetricsStats> first = started(writer.write(metricsStats("job1")));
+        Mono<MetricsStats> second = started(writer.write(metricsStats("job2")));
+        StepVerifier.create(writer.write(metricsStats("job3"))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(first).expectNextCount(1).verifyComplete();
+        StepVerifier.create(second).expectNextCount(1).verifyComplete();
+        Assert.assertEquals(3, writer.getWrittenDocuments());
+        Assert.assertEquals(3, writer.getFailedBucketWrites());
+    }
+
+    @Test
+    public void shouldBypassFullBufferAndRejectOnceMaxWaitPassed() {
+        ReflectionTestUtils.setField(writer, "batchSize", 100);
+        ReflectionTestUtils.setField(writer, "bufferSize", 1);
+        writer.init();
+        // the buffer holds one write, the only overflow write never finishes
+        started(writer.write(metricsStats("buffered")));
+        Mockito.when(metrics.insertMany(Mockito.anyList(), Mockito.any(InsertManyOptions.class)))
+                .thenReturn(Mono.never());
+        started(writer.write(metricsStats("overflow")));
+
+        StepVerifier.create(writer.write(metricsStats("rejected")))
+                .expectError(IllegalStateException.class)
+                .verify();
+        Assert.assertEquals(1, writer.getOverflowWrites());
+        Assert.assertEquals(1, writer.getRejectedWrites());
+        Assert.assertEquals(1, writer.getBufferedDocuments());
+    }
+
+    @Test
+    public void shouldFlushBufferOnShutdown() {
+        Mono<MetricsStats> first = started(writer.write(metricsStats("job1")));
+        Mono<MetricsStats> second = started(writer.write(metricsStats("job2")));
+        Assert.assertEquals(2, writer.getBufferedDocuments());
+
+        writer.flushOnShutdown();
+
+        StepVerifier.create(first).expectNextCount(1).verifyComplete();
+        StepVerifier.create(second).expectNextCount(1).verifyComplete();
+        Assert.assertEquals(2, insertedDocuments().size());
+        Assert.assertEquals(0, writer.getBufferedDocuments());
+    }
+
+    /**
+     * Subscribes once, a write is enqueued again by every subscription.
+     */
+    private Mono<MetricsStats> started(Mono<MetricsStats> write) {
+        Mono<MetricsStats> result = write.cache();
+        result.subscribe(metricsStats -> {
+        }, throwable -> {
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Document> insertedDocuments() {
+        ArgumentCaptor<List> documents = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(metrics).insertMany(documents.capture(), Mockito.any(InsertManyOptions.class));
+        return documents.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<?> bucketUpdates() {
+        ArgumentCaptor<List> updates = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(buckets).bulkWrite(updates.capture(), Mockito.any(BulkWriteOptions.class));
+        return updates.getValue();
+    }
+
+    private MetricsStats metricsStats(String jobId) {
+        return new MetricsStats(jobId, MetricsStatus.SUCCESS, "OK");
+    }
+}
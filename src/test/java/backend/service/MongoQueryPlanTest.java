@@ -0,0 +1,208 @@
+package backend.service;
+
+import backend.model.Account;
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.Job;
+import backend.model.MetricsBucket;
+import backend.model.MetricsRollup;
+import backend.model.NodeLease;
+import backend.model.ScrollResponse;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Explains every hot query shape against the embedded Mongo, with the indexes created at startup, and fails when
+ * one of them would scan a whole collection. Incident queries are the ones the services actually send, recorded by
+ * the Mongo profiler while the listings are walked; listings must also come out of an index already sorted. A new
+ * query belongs here together with its index.
+ */
+public class MongoQueryPlanTest extends AbstractSpringTest {
+
+    private static final List<String> PLANNED_COMMAND_FIELDS = Arrays.asList("find", "filter", "sort", "skip",
+            "limit", "count", "query");
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private IncidentScrollService incidentScrollService;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Test
+    public void incidentQueriesShouldUseIndexes() {
+        String projectId = createProjectWithIncidents();
+
+        List<Document> commands = recordCommands(Incident.class, () -> {
+            for (String sortField : Arrays.asList("name", "status", "dateStart", "dateEnd", "updatedAt")) {
+                for (String direction : Arrays.asList("asc", "desc")) {
+                    // walking every page crosses cursors on equal, present and missing sort values
+                    String cursor = null;
+                    do {
+                        ScrollResponse<Incident> page = incidentScrollService.scroll(projectId, null, cursor, 4,
+                                sortField, direction, false).block();
+                        cursor = page.getNextCursor();
+                    } while (cursor != null);
+                    incidentScrollService.findPage(projectId, null, 2, 4, sortField, direction).blockLast();
+                }
+            }
+            incidentScrollService.scroll(projectId, "status:eq:RESOLVED", null, 4, "name", "asc", true).block();
+            incidentScrollService.scroll(projectId, "name:prefix:Incident 1", null, 4, "name", "desc", true).block();
+            incidentScrollService.scroll(projectId, "dateStart:gte:2018-01-01", null, 4, "dateStart", "desc", true)
+                    .block();
+            incidentScrollService.findPage(projectId, "status:in:OPENED,RESOLVED", 1, 4, "updatedAt", "asc")
+                    .blockLast();
+            incidentRepository.findByJobId("job1").blockLast();
+        });
+
+        Assert.assertFalse("No incident query was recorded", commands.isEmpty());
+        for (Document command : commands) {
+            List<String> stages = explain(command);
+            Assert.assertFalse(String.format("Query %s scans the collection: %s", command.toJson(), stages),
+                    stages.contains("COLLSCAN"));
+            if (command.containsKey("sort")) {
+                Assert.assertFalse(String.format("Listing %s is sorted in memory: %s", command.toJson(), stages),
+                        stages.contains("SORT"));
+            }
+        }
+    }
+
+    @Test
+    public void jobAndAccountQueriesShouldUseIndexes() {
+        assertIndexed(Job.class, new Document("componentIds", new Document("$in", Arrays.asList("component1"))), null);
+        assertIndexed(Account.class, new Document("userId", "user"), null);
+        assertIndexed(Account.class, new Document("companyId", "company"), null);
+        assertIndexed(NodeLease.class, new Document("expiresAt", new Document("$gt", new Date())), null);
+    }
+
+    @Test
+    public void metricsQueriesShouldUseIndexes() {
+        Date now = new Date();
+        Document period = new Document("$gte", new Date(now.getTime() - 86_400_000L)).append("$lt", now);
+        assertIndexed(MetricsBucket.class, new Document("bucketStart", now), null);
+        assertIndexed(MetricsBucket.class, new Document("jobId", "job").append("bucketStart", period), null);
+        assertIndexed(MetricsRollup.class, new Document("jobId", "job").append("resolution", "DAY")
+                .append("periodStart", period), new Document("periodStart", 1));
+        assertIndexed(MetricsRollup.class, new Document("jobId", new Document("$in", Arrays.asList("job1", "job2")))
+                .append("resolution", "DAY").append("periodStart", period), null);
+        assertIndexed(MetricsRollup.class, new Document("resolution", "HOUR").append("periodStart", period),
+                new Document("jobId", 1));
+        assertIndexed(MetricsBucket.class, new Document("rolledUp", new Document("$ne", true))
+                .append("bucketStart", new Document("$lt", now)), null);
+        assertIndexed(MetricsRollup.class, new Document("resolution", "HOUR")
+                .append("rolledUp", new Document("$ne", true))
+                .append("periodStart", new Document("$lt", now)), null);
+        assertIndexed(MetricsStats.class, new Document("jobId", "job"), new Document("_id", -1));
+    }
+
+    private void assertIndexed(Class<?> type, Document filter, Document sort) {
+        String collection = reactiveMongoTemplate.getCollectionName(type);
+        Document find = new Document("find", collection).append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        List<String> stages = explain(find);
+        Assert.assertFalse(String.format("Query on %s with filter %s and sort %s scans the collection: %s",
+                collection, filter.toJson(), sort == null ? "{}" : sort.toJson(), stages), stages.contains("COLLSCAN"));
+    }
+
+    private List<String> explain(Document command) {
+        Document explained = reactiveMongoTemplate.executeCommand(new Document("explain", command)
+                .append("verbosity", "queryPlanner"))
+                .block();
+
+        Document winningPlan = (Document) ((Document) explained.get("queryPlanner")).get("winningPlan");
+        List<String> stages = new ArrayList<>();
+        collectStages(winningPlan, stages);
+        return stages;
+    }
+
+    /**
+     * Runs the calls with the profiler on and returns the find and count commands they sent to the collection of
+     * the type, stripped down to what the query planner looks at.
+     */
+    private List<Document> recordCommands(Class<?> type, Runnable calls) {
+        String namespace = reactiveMongoTemplate.getMongoDatabase().getName() + "."
+                + reactiveMongoTemplate.getCollectionName(type);
+        Date startedAt = new Date();
+        reactiveMongoTemplate.executeCommand(new Document("profile", 2)).block();
+        try {
+            calls.run();
+        } finally {
+            reactiveMongoTemplate.executeCommand(new Document("profile", 0)).block();
+        }
+
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("ns").is(namespace).and("ts").gte(startedAt)),
+                Document.class, "system.profile")
+                .map(entry -> {
+                    // newer servers keep the command under "command", older ones under "query"
+                    Document command = entry.get("command", Document.class);
+                    if (command == null || !(command.containsKey("find") || command.containsKey("count"))) {
+                        command = entry.get("query", Document.class);
+                    }
+                    return command == null ? new Document() : command;
+                })
+                .filter(command -> command.containsKey("find") || command.containsKey("count"))
+                .map(command -> {
+                    Document planned = new Document();
+                    command.forEach((field, value) -> {
+                        if (PLANNED_COMMAND_FIELDS.contains(field)) {
+                            planned.append(field, value);
+                        }
+                    });
+                    return planned;
+                })
+                .collectList()
+                .block();
+    }
+
+    /**
+     * Two components, so the project criteria is a real $in, and incidents with missing end and update dates.
+     */
+    private String createProjectWithIncidents() {
+        Project project = new Project("123", "Query plan project", "Description");
+        project.getComponents().add(new Component(null, "Component 1", "Description"));
+        project.getComponents().add(new Component(null, "Component 2", "Description"));
+        Project savedProject = projectRepository.save(project).block();
+
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+        Flux.range(0, 20)
+                .map(i -> new Incident(savedProject.getComponents().get(i % 2).getId(), "job" + i % 3,
+                        "Incident " + i, "Description", i % 4 == 0 ? IncidentStatus.OPENED : IncidentStatus.RESOLVED,
+                        start.minusMinutes(i / 2), i % 4 == 0 ? null : start.plusMinutes(i)))
+                .flatMap(reactiveMongoTemplate::insert)
+                .blockLast();
+        return savedProject.getId();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectStages(Document plan, List<String> stages) {
+        stages.add(plan.getString("stage"));
+        if (plan.get("inputStage") != null) {
+            collectStages((Document) plan.get("inputStage"), stages);
+        }
+        if (plan.get("inputStages") != null) {
+            for (Document inputStage : (List<Document>) plan.get("inputStages")) {
+                collectStages(inputStage, stages);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package backend.service;
+
+import backend.model.Component;
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import backend.model.RelayedStatusEvent;
+import backend.model.StatusEvent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+
+public class StatusEventBusTest {
+
+    private StatusEventBus statusEventBus;
+
+    private ComponentService componentService;
+
+    private Component projectComponent = new Component(null, "Api", "Description");
+
+    @Before
+    public void setUp() {
+        componentService = Mockito.mock(ComponentService.class);
+        Mockito.when(componentService.getAllComponentsWithChilds(Mockito.anyString()))
+                .thenAnswer(invocation -> "project".equals(invocation.getArgument(0)) ?
+                        Flux.just(projectComponent) : Flux.empty());
+
+        statusEventBus = new StatusEventBus();
+        ReflectionTestUtils.setField(statusEventBus, "logger", LoggerFactory.getLogger(StatusEventBus.class));
+        ReflectionTestUtils.setField(statusEventBus, "componentService", componentService);
+        ReflectionTestUtils.setField(statusEventBus, "subscriberBufferSize", 2);
+        ReflectionTestUtils.setField(statusEventBus, "relayEnabled", false);
+    }
+
+    @Test
+    public void shouldDeliverOnlyEventsOfTheProject() {
+        StepVerifier.create(statusEventBus.subscribe("project"))
+                .then(() -> {
+                    statusEventBus.publishIncident(incident("other component"));
+                    statusEventBus.publishComponent("other", new Component(null, "Other", "Description"));
+                    statusEventBus.publishIncident(incident(projectComponent.getId()));
+                    statusEventBus.publishComponent("project", projectComponent);
+                })
+                .assertNext(event -> Assert.assertEquals(StatusEvent.Type.INCIDENT, event.getType()))
+                .assertNext(event -> Assert.assertEquals(projectComponent.getId(), event.getComponent().getId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void shouldRouteIncidentsWithoutReadingComponentTrees() {
+        Component newComponent = new Component(null, "Web", "Description");
+        StepVerifier.create(statusEventBus.subscribe("project"))
+                .then(() -> {
+                    statusEventBus.publishComponent("project", newComponent);
+                    for (int i = 0; i < 10; i++) {
+                        statusEventBus.publishIncident(incident(projectComponent.getId()));
+                    }
+                    statusEventBus.publishIncident(incident(newComponent.getId()));
+                })
+                .expectNextCount(11)
+                .assertNext(event -> Assert.assertEquals(newComponent.getId(),
+                        event.getIncident().getComponentIds().iterator().next()))
+                .thenCancel()
+                .verify();
+
+        // the tree is read once, when the project stream is opened
+        Mockito.verify(componentService, Mockito.times(1)).getAllComponentsWithChilds("project");
+    }
+
+    @Test
+    public void shouldDropOldestEventsOfSlowSubscriberOnly() {
+        StepVerifier.create(statusEventBus.subscribe("project"), 0)
+                .then(() -> {
+                    for (int i = 0; i < 5; i++) {
+                        statusEventBus.publishComponent("project", new Component(null, "Component " + i, "Description"));
+                    }
+                })
+                .thenRequest(10)
+                .assertNext(event -> Assert.assertEquals("Component 3", event.getComponent().getName()))
+                .assertNext(event -> Assert.assertEquals("Component 4", event.getComponent().getName()))
+                .thenCancel()
+                .verify();
+
+        Assert.assertEquals(3, statusEventBus.getDroppedCount());
+        Assert.assertEquals(5, statusEventBus.getPublishedCount());
+    }
+
+    @Test
+    public void shouldDeliverEventsRelayedByOtherNodesAndRelayOwnOnes() {
+        ReactiveMongoTemplate reactiveMongoTemplate = Mockito.mock(ReactiveMongoTemplate.class);
+        Mockito.when(reactiveMongoTemplate.collectionExists(RelayedStatusEvent.class)).thenReturn(Mono.just(true));
+        DirectProcessor<RelayedStatusEvent> otherNodes = DirectProcessor.create();
+        Mockito.when(reactiveMongoTemplate.tail(Mockito.any(Query.class), Mockito.eq(RelayedStatusEvent.class)))
+                .thenReturn(otherNodes);
+        Mockito.when(reactiveMongoTemplate.insert(Mockito.any(RelayedStatusEvent.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        JobPartitionService jobPartitionService = Mockito.mock(JobPartitionService.class);
+        Mockito.when(jobPartitionService.getNodeId()).thenReturn("node-a");
+        ReflectionTestUtils.setField(statusEventBus, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(statusEventBus, "jobPartitionService", jobPartitionService);
+        ReflectionTestUtils.setField(statusEventBus, "relayEnabled", true);
+        ReflectionTestUtils.setField(statusEventBus, "relayRetryMillis", 1000L);
+        statusEventBus.startRelay();
+        try {
+            StepVerifier.create(statusEventBus.subscribe("project"))
+                    .then(() -> {
+                        Assert.assertEquals(1, statusEventBus.getSubscriberCount());
+                        // an incident of a check that ran on the node owning its job
+                        otherNodes.onNext(new RelayedStatusEvent("node-b", StatusEvent.Type.INCIDENT, null,
+                                incident(projectComponent.getId()), null));
+                        statusEventBus.publishComponent("project", projectComponent);
+                    })
+                    .assertNext(event -> Assert.assertEquals(StatusEvent.Type.INCIDENT, event.getType()))
+                    .assertNext(event -> Assert.assertEquals(StatusEvent.Type.COMPONENT, event.getType()))
+                    .thenCancel()
+                    .verify();
+        } finally {
+            statusEventBus.stopRelay();
+        }
+
+        Assert.assertEquals(0, statusEventBus.getSubscriberCount());
+        Assert.assertEquals(1, statusEventBus.getRelayedCount());
+        ArgumentCaptor<RelayedStatusEvent> relayed = ArgumentCaptor.forClass(RelayedStatusEvent.class);
+        Mockito.verify(reactiveMongoTemplate).insert(relayed.capture());
+        Assert.assertEquals("node-a", relayed.getValue().getNodeId());
+        Assert.assertEquals("project", relayed.getValue().getProjectId());
+    }
+
+    private Incident incident(String componentId) {
+        return new Incident(componentId, "job", "Incident", "Description", IncidentStatus.OPENED,
+                LocalDateTime.now(), null);
+    }
+}
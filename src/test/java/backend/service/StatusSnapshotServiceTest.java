@@ -0,0 +1,97 @@
+package backend.service;
+
+import backend.model.Incident;
+import backend.model.IncidentStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+public class StatusSnapshotServiceTest extends AbstractSpringTest {
+
+    @Autowired
+    private StatusSnapshotService statusSnapshotService;
+
+    @Autowired
+    private StatusEventBus statusEventBus;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void shouldRollUpIncidentsAndFollowChanges() throws IOException, InterruptedException {
+        Project project = new Project("123", "Status project", "Description");
+        Component parent = new Component(null, "Api", "Description");
+        Component child = new Component(parent.getId(), "Database", "Description");
+        project.getComponents().add(parent);
+        project.getComponents().add(child);
+        String projectId = projectRepository.save(project).block().getId();
+        statusSnapshotService.setPublished(projectId, true).block();
+
+        StatusSnapshotService.RenderedSnapshot initial = statusSnapshotService.getSnapshot(projectId).block();
+        JsonNode initialJson = objectMapper.readTree(initial.getBody());
+        Assert.assertEquals("OPERATIONAL", initialJson.get("status").asText());
+        Assert.assertEquals(child.getId(), initialJson.get("components").get(0).get("children").get(0).get("id").asText());
+
+        Incident incident = new Incident(child.getId(), "job", "Incident", "Check detail", IncidentStatus.OPENED,
+                LocalDateTime.now(), null);
+        statusEventBus.publishIncident(incident);
+
+        // events are routed asynchronously
+        StatusSnapshotService.RenderedSnapshot changed = initial;
+        for (int attempt = 0; attempt < 50 && changed.getETag().equals(initial.getETag()); attempt++) {
+            Thread.sleep(100);
+            changed = statusSnapshotService.getSnapshot(projectId).block();
+        }
+        Assert.assertNotEquals(initial.getETag(), changed.getETag());
+        JsonNode root = objectMapper.readTree(changed.getBody()).get("components").get(0);
+        Assert.assertEquals("DEGRADED", root.get("status").asText());
+        Assert.assertEquals("OUTAGE", root.get("children").get(0).get("status").asText());
+        JsonNode openIncident = objectMapper.readTree(changed.getBody()).get("openIncidents").get(0);
+        Assert.assertEquals("Incident", openIncident.get("name").asText());
+        Assert.assertNull(openIncident.get("description"));
+        Assert.assertNull(openIncident.get("jobId"));
+
+        // served from memory, the very same buffer until something visible changes
+        Assert.assertSame(changed, statusSnapshotService.getSnapshot(projectId).block());
+        statusEventBus.publishComponent(projectId, child);
+        Thread.sleep(300);
+        Assert.assertSame(changed, statusSnapshotService.getSnapshot(projectId).block());
+    }
+
+    @Test
+    public void shouldServeOnlyPublishedProjects() {
+        Project project = new Project("123", "Private project", "Description");
+        project.getComponents().add(new Component(null, "Api", "Description"));
+        String projectId = projectRepository.save(project).block().getId();
+
+        StepVerifier.create(statusSnapshotService.getSnapshot(projectId))
+                .verifyComplete();
+
+        statusSnapshotService.setPublished(projectId, true).block();
+        StepVerifier.create(statusSnapshotService.getSnapshot(projectId))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        statusSnapshotService.setPublished(projectId, false).block();
+        StepVerifier.create(statusSnapshotService.getSnapshot(projectId))
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldBeEmptyForUnknownProject() {
+        StepVerifier.create(statusSnapshotService.getSnapshot("missing"))
+                .verifyComplete();
+        // remembered, the second lookup is answered from memory
+        StepVerifier.create(statusSnapshotService.getSnapshot("missing"))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,144 @@
+package backend.service;
+
+import backend.model.EndpointResponseType;
+import backend.model.Job;
+import com.jayway.jsonpath.PathNotFoundException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamingSelectorEvaluatorTest {
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private StreamingSelectorEvaluator evaluator;
+
+    @Before
+    public void setUp() {
+        evaluator = new StreamingSelectorEvaluator();
+    }
+
+    @Test
+    public void shouldSupportOnlySimpleSelectors() {
+        Assert.assertTrue(evaluator.supports(job(EndpointResponseType.JSON, "$.[0].name")));
+        Assert.assertTrue(evaluator.supports(job(EndpointResponseType.JSON, "$.address['zip code']")));
+        Assert.assertFalse(evaluator.supports(job(EndpointResponseType.JSON, "$..name")));
+        Assert.assertFalse(evaluator.supports(job(EndpointResponseType.JSON, "$[?(@.age > 1)].name")));
+        Assert.assertTrue(evaluator.supports(job(EndpointResponseType.XML, "/current/temperature/@value")));
+        Assert.assertTrue(evaluator.supports(job(EndpointResponseType.XML, "/a/b[2]/c/text()")));
+        Assert.assertFalse(evaluator.supports(job(EndpointResponseType.XML, "//temperature")));
+        Assert.assertFalse(evaluator.supports(job(EndpointResponseType.XML, "count(/a/b)")));
+    }
+
+    @Test
+    public void shouldExtractJsonValueSplitAcrossBuffers() {
+        Flux<DataBuffer> body = chunks("[{\"name\":\"Le", "anne\",\"address\":{\"zip\":\"92998\"}},{\"name\":\"Er", "vin\"}]");
+
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$[1].name"), body))
+                .expectNext("Ervin")
+                .verifyComplete();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.[0].address.zip"),
+                chunks("[{\"name\":\"Leanne\",\"address\":{\"zip\":\"92998\"}}]")))
+                .expectNext("92998")
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldStopReadingWhenJsonValueIsFound() {
+        AtomicInteger read = new AtomicInteger();
+        Flux<DataBuffer> body = chunks("{\"status\":\"UP\",", "\"details\":[1,2,3]", ",\"more\":true}")
+                .doOnNext(buffer -> read.incrementAndGet());
+
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.status"), body))
+                .expectNext("UP")
+                .verifyComplete();
+        Assert.assertEquals(1, read.get());
+    }
+
+    @Test
+    public void shouldFailWhenJsonPathIsMissing() {
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.missing"), chunks("{\"a\":1}")))
+                .expectError(PathNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    public void shouldFailLikeTreeEvaluationWhenJsonValueIsNotString() {
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.count"), chunks("{\"count\":42}")))
+                .expectError(ClassCastException.class)
+                .verify();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.up"), chunks("{\"up\":true}")))
+                .expectError(ClassCastException.class)
+                .verify();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.details"),
+                chunks("{\"details\":{\"a\":\"b\"}}")))
+                .expectError(ClassCastException.class)
+                .verify();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.JSON, "$.value"), chunks("{\"value\":null}")))
+                .expectNext("null")
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldExtractFirstXmlTextNode() {
+        String xml = "<current><item>a</item><item>b<i>c</i>d</item><empty><i>x</i></empty>" +
+                "<empty>later</empty></current>";
+
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/item[2]/text()"),
+                chunks(xml.substring(0, 30), xml.substring(30))))
+                .expectNext("b")
+                .verifyComplete();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/empty/text()"), chunks(xml)))
+                .expectNext("later")
+                .verifyComplete();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/item/text()"),
+                chunks("<current><item><i>c</i>after</item></current>")))
+                .expectNext("after")
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldFindXmlAttributeOnLaterElement() {
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/item/@id"),
+                chunks("<current><item>a</item><item id=\"2\">b</item></current>")))
+                .expectNext("2")
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldExtractXmlAttributeAndText() {
+        String xml = "<current><city id=\"1\"><name>Kyiv</name></city>" +
+                "<temperature value=\"289.5\" unit=\"kelvin\"/><item>a</item><item>b<i>c</i></item></current>";
+
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/temperature/@value"),
+                chunks(xml.substring(0, 40), xml.substring(40))))
+                .expectNext("289.5")
+                .verifyComplete();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/item[2]"), chunks(xml)))
+                .expectNext("bc")
+                .verifyComplete();
+        StepVerifier.create(evaluator.extract(job(EndpointResponseType.XML, "/current/notToBeFound/@value"),
+                chunks(xml)))
+                .expectNext("")
+                .verifyComplete();
+    }
+
+    private Flux<DataBuffer> chunks(String... parts) {
+        return Flux.fromArray(parts)
+                .map(part -> bufferFactory.wrap(part.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Job job(EndpointResponseType responseType, String selector) {
+        Job job = new Job();
+        job.setEndpointResponseType(responseType);
+        job.setSelector(selector);
+        return job;
+    }
+}
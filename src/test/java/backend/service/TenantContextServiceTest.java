@@ -0,0 +1,51 @@
+package backend.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+
+public class TenantContextServiceTest {
+
+    private TenantContextService tenantContextService;
+
+    private ProjectService projectService;
+
+    @Before
+    public void setUp() {
+        AccountService accountService = Mockito.mock(AccountService.class);
+        Mockito.when(accountService.getCurrentUserAccount()).thenReturn(Mono.empty());
+        projectService = Mockito.mock(ProjectService.class);
+        Mockito.when(projectService.getCurrentUserProjects()).thenReturn(Flux.empty());
+
+        tenantContextService = new TenantContextService();
+        ReflectionTestUtils.setField(tenantContextService, "accountService", accountService);
+        ReflectionTestUtils.setField(tenantContextService, "projectService", projectService);
+        ReflectionTestUtils.setField(tenantContextService, "cacheSize", 100L);
+        ReflectionTestUtils.setField(tenantContextService, "cacheTtlSeconds", 30L);
+        tenantContextService.init();
+    }
+
+    @Test
+    public void shouldNotCacheTenantWithoutProjects() {
+        Assert.assertNull(resolve().getFirstProjectId());
+        Assert.assertNull(resolve().getFirstProjectId());
+
+        // the projects of a user who has none yet are read again, so a created project shows up right away
+        Mockito.verify(projectService, Mockito.times(2)).getCurrentUserProjects();
+    }
+
+    private TenantContext resolve() {
+        return tenantContextService.resolveCurrentTenant()
+                .subscriberContext(ReactiveSecurityContextHolder.withAuthentication(
+                        new UsernamePasswordAuthenticationToken("user", null, Collections.emptyList())))
+                .block();
+    }
+}
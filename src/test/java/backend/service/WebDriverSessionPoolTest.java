@@ -0,0 +1,102 @@
+package backend.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WebDriverSessionPoolTest {
+
+    private final List<WebDriver> createdDrivers = new ArrayList<>();
+
+    private WebDriverSessionPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new WebDriverSessionPool();
+        ReflectionTestUtils.setField(pool, "logger", LoggerFactory.getLogger(WebDriverSessionPool.class));
+        ReflectionTestUtils.setField(pool, "webDriverFactory", (WebDriverFactory) this::createStandInDriver);
+        ReflectionTestUtils.setField(pool, "maxSessions", 2);
+        ReflectionTestUtils.setField(pool, "maxUsesPerSession", 3);
+        ReflectionTestUtils.setField(pool, "maxIdleSeconds", 60);
+        ReflectionTestUtils.setField(pool, "borrowTimeoutSeconds", 1);
+        pool.init();
+    }
+
+    @Test
+    public void shouldReuseReleasedSessionAndResetIt() throws InterruptedException {
+        WebDriverSessionPool.PooledSession first = pool.borrow();
+        pool.release(first, false);
+        WebDriverSessionPool.PooledSession second = pool.borrow();
+
+        Assert.assertSame(first.getDriver(), second.getDriver());
+        Assert.assertEquals(1, createdDrivers.size());
+        Mockito.verify(first.getDriver().manage()).deleteAllCookies();
+        Mockito.verify((JavascriptExecutor) first.getDriver()).executeScript(Mockito.anyString());
+    }
+
+    @Test
+    public void shouldRecycleSessionAfterMaxUses() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            pool.release(pool.borrow(), false);
+        }
+        WebDriverSessionPool.PooledSession session = pool.borrow();
+
+        Assert.assertEquals(2, createdDrivers.size());
+        Assert.assertNotSame(createdDrivers.get(0), session.getDriver());
+        Assert.assertEquals(1, pool.getRecycledSessions());
+        Mockito.verify(createdDrivers.get(0)).quit();
+    }
+
+    @Test
+    public void shouldDropBrokenAndUnhealthySessions() throws InterruptedException {
+        pool.release(pool.borrow(), true);
+        Mockito.verify(createdDrivers.get(0)).quit();
+
+        WebDriverSessionPool.PooledSession session = pool.borrow();
+        pool.release(session, false);
+        Mockito.when(session.getDriver().getWindowHandle()).thenThrow(new WebDriverException("session is gone"));
+
+        Assert.assertNotSame(session.getDriver(), pool.borrow().getDriver());
+        Assert.assertEquals(3, createdDrivers.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWhenAllSessionsAreInUse() throws InterruptedException {
+        pool.borrow();
+        pool.borrow();
+        Assert.assertEquals(2, pool.getSessionsInUse());
+        pool.borrow();
+    }
+
+    @Test
+    public void shouldNotTakePermitWhenInterrupted() throws InterruptedException {
+        Thread.currentThread().interrupt();
+        try {
+            pool.borrow();
+            Assert.fail("Borrow should stop on interrupt");
+        } catch (InterruptedException e) {
+            Assert.assertFalse(Thread.currentThread().isInterrupted());
+        }
+
+        pool.borrow();
+        pool.borrow();
+        Assert.assertEquals(2, pool.getSessionsInUse());
+    }
+
+    private WebDriver createStandInDriver() {
+        WebDriver driver = Mockito.mock(WebDriver.class, Mockito.withSettings()
+                .extraInterfaces(JavascriptExecutor.class)
+                .defaultAnswer(Mockito.RETURNS_DEEP_STUBS));
+        createdDrivers.add(driver);
+        return driver;
+    }
+}